@@ -9,6 +9,7 @@ plugins {
     `maven-publish`
     signing
     alias(pluginLibs.plugins.test.logger)
+    alias(pluginLibs.plugins.jmh)
 }
 
 repositories {
@@ -149,6 +150,30 @@ testing {
     }
 }
 
+// Startup and configuration cost benchmarks (src/jmh) - `./gradlew jmh`. Results (including the JDK) are written to
+// build/results/jmh/results.json. Examples:
+//   ./gradlew jmh -Pjmh.includes=PluginConfigurationBenchmark
+//   ./gradlew jmh -Pjmh.jvm=/usr/lib/jvm/java-17/bin/java -Pjmh.cassandraVersions=4.1.3,4.0.11
+//   ./gradlew jmh -Pjmh.smoke (one short iteration of the benchmarks which don't start Cassandra - used by the CI)
+jmh {
+    jmhVersion.set(testLibs.versions.jmh)
+    resultFormat.set("JSON")
+    if (hasProperty("jmh.smoke")) {
+        includes.set(listOf("PluginConfigurationBenchmark", "DistributionBenchmark"))
+        benchmarkParameters.put("cassandraVersion", objects.listProperty<String>().value(listOf("4.1.3")))
+        fork.set(1)
+        warmupIterations.set(0)
+        iterations.set(1)
+        timeOnIteration.set("1s")
+        failOnError.set(true)
+    }
+    findProperty("jmh.includes")?.let { includes.set(listOf(it.toString())) }
+    findProperty("jmh.jvm")?.let { jvm.set(it.toString()) }
+    findProperty("jmh.cassandraVersions")?.let {
+        benchmarkParameters.put("cassandraVersion", objects.listProperty<String>().value(it.toString().split(",")))
+    }
+}
+
 tasks {
 
     named<Jar>("jar") {
@@ -167,6 +192,11 @@ tasks {
         finalizedBy(named("publishToMavenLocal"))
     }
 
+    // The benchmarks are not executed by the build, but they must keep compiling (including the generated JMH code).
+    named<Task>("check") {
+        dependsOn(named("jmhJar"))
+    }
+
     withType<Sign>() {
         onlyIf {
             (project.extra["isReleaseVersion"] as Boolean) && gradle.taskGraph.hasTask("publish")
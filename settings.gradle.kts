@@ -28,6 +28,8 @@ dependencyResolutionManagement {
         create("testLibs") {
             version("junit", "5.8.2")
             version("junit-engine", "1.8.2")
+            // JMH used by the benchmarks in src/jmh (applied through the jmh plugin below)
+            version("jmh", "1.36")
             library("junit-bom", "org.junit", "junit-bom").versionRef("junit")
             library("junit-jupiter", "org.junit.jupiter", "junit-jupiter").versionRef("junit")
             library("junit-jupiter-api", "org.junit.jupiter", "junit-jupiter-api").versionRef("junit")
@@ -49,6 +51,10 @@ dependencyResolutionManagement {
             // https://docs.freefair.io/gradle-plugins/6.5.0.2/reference/
             // https://plugins.gradle.org/plugin/io.freefair.lombok
             plugin("lombok", "io.freefair.lombok").version("6.5.0.3")
+
+            // JMH Gradle Plugin (0.6.x is the last line supporting Gradle 7)
+            // https://github.com/melix/jmh-gradle-plugin
+            plugin("jmh", "me.champeau.jmh").version("0.6.8")
         }
     }
 }
@@ -0,0 +1,75 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.benchmarks;
+
+import org.carlspring.gradle.plugins.embedded.cassandra.EmbeddedCassandraExtension;
+import org.carlspring.gradle.plugins.embedded.cassandra.EmbeddedCassandraPlugin;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Throwaway projects applying the plugin, like a build script would.
+ */
+final class BenchmarkProjects
+{
+
+    /**
+     * The distribution cache of the plugin, so distributions are downloaded only once (and not per project - every
+     * ProjectBuilder project has its own Gradle user home).
+     */
+    static final Path DISTRIBUTIONS = Path.of(System.getProperty("user.home"), ".gradle/caches/embedded-cassandra/distributions");
+
+    private BenchmarkProjects()
+    {
+    }
+
+    static Project create(Path directory)
+    {
+        return ProjectBuilder.builder().withProjectDir(directory.toFile()).build();
+    }
+
+    /**
+     * Applies the plugin the way {@code plugins { id 'java'; id '...embedded.cassandra' }} does and configures it.
+     *
+     * @param settings {@code defaults}, {@code defaultTestSettings} or {@code minimalFootprint}.
+     */
+    static EmbeddedCassandraExtension apply(Project project, String settings)
+    {
+        project.getPluginManager().apply("java");
+        project.getPluginManager().apply(EmbeddedCassandraPlugin.class);
+
+        EmbeddedCassandraExtension extension = project.getExtensions().getByType(EmbeddedCassandraExtension.class);
+        switch (settings) {
+            case "defaults":
+                break;
+            case "defaultTestSettings":
+                extension.defaultTestSettings();
+                break;
+            case "minimalFootprint":
+                extension.defaultTestSettings();
+                extension.minimalFootprint();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown settings " + settings);
+        }
+
+        return extension;
+    }
+
+    static void delete(Path directory)
+            throws IOException
+    {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.benchmarks;
+
+import com.github.nosan.embedded.cassandra.Cassandra;
+import org.carlspring.gradle.plugins.embedded.cassandra.EmbeddedCassandraExtension;
+import org.carlspring.gradle.plugins.embedded.cassandra.EmbeddedCassandraPlugin;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraBuildService;
+import org.gradle.api.Project;
+import org.gradle.api.internal.project.ProjectInternal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The start of Cassandra through the build service, exactly as startCassandra does it - {@code build} is
+ * CassandraBuilder.build() (plus the working directory layout and ports), {@code startUntilCqlReady} is the whole start
+ * until the node answers CQL requests. The phases of every start are in the {@code build/reports/cassandra/startup.json}
+ * of the (temporary) project.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class CassandraStartupBenchmark
+{
+
+    @Param({ "defaults", "defaultTestSettings" })
+    public String settings;
+
+    private Path directory;
+
+    private CassandraBuildService service;
+
+    @Setup(Level.Invocation)
+    public void createService()
+            throws IOException
+    {
+        directory = Files.createTempDirectory("embedded-cassandra-jmh");
+        Project project = BenchmarkProjects.create(directory);
+        EmbeddedCassandraExtension extension = BenchmarkProjects.apply(project, settings);
+        extension.getDistributionCacheDirectory().set(BenchmarkProjects.DISTRIBUTIONS);
+        ((ProjectInternal) project).evaluate();
+
+        service = project.getPlugins().getPlugin(EmbeddedCassandraPlugin.class).getService().get();
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopService()
+            throws IOException
+    {
+        service.close();
+        BenchmarkProjects.delete(directory);
+    }
+
+    @Benchmark
+    public List<Cassandra> build()
+    {
+        return service.getInstances();
+    }
+
+    @Benchmark
+    public Cassandra startUntilCqlReady()
+    {
+        return service.acquire();
+    }
+
+}
@@ -0,0 +1,85 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.benchmarks;
+
+import com.github.nosan.embedded.cassandra.DefaultWorkingDirectoryInitializer;
+import com.github.nosan.embedded.cassandra.Version;
+import com.github.nosan.embedded.cassandra.WebCassandraDirectoryProvider;
+import com.github.nosan.embedded.cassandra.WorkingDirectoryInitializer;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.LinkingWorkingDirectoryInitializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Preparing the working directory from an (already downloaded) distribution - linking the shared distribution
+ * (what the plugin does) versus copying it (embedded-cassandra's default).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+public class DistributionBenchmark
+{
+
+    @Param({ "4.1.3", "4.0.11" })
+    public String cassandraVersion;
+
+    @Param({ "link", "copy" })
+    public String initializer;
+
+    private Version version;
+
+    private WorkingDirectoryInitializer workingDirectoryInitializer;
+
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void downloadDistribution()
+            throws IOException
+    {
+        version = Version.parse(cassandraVersion);
+        WebCassandraDirectoryProvider distributions = new WebCassandraDirectoryProvider(BenchmarkProjects.DISTRIBUTIONS);
+        distributions.getDirectory(version);
+        workingDirectoryInitializer = "link".equals(initializer) ? new LinkingWorkingDirectoryInitializer(distributions)
+                                                                 : new DefaultWorkingDirectoryInitializer(distributions);
+    }
+
+    @Setup(Level.Invocation)
+    public void createDirectory()
+            throws IOException
+    {
+        directory = Files.createTempDirectory("embedded-cassandra-jmh");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteDirectory()
+            throws IOException
+    {
+        BenchmarkProjects.delete(directory);
+    }
+
+    @Benchmark
+    public Path prepareWorkingDirectory()
+            throws IOException
+    {
+        workingDirectoryInitializer.init(directory, version);
+        return directory;
+    }
+
+}
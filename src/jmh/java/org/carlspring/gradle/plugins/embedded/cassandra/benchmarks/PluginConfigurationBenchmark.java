@@ -0,0 +1,78 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.benchmarks;
+
+import org.carlspring.gradle.plugins.embedded.cassandra.EmbeddedCassandraPlugin;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraBuildService;
+import org.gradle.api.Project;
+import org.gradle.api.internal.project.ProjectInternal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the plugin costs every build, even when Cassandra is not started - applying it, evaluating the project
+ * (afterEvaluate / taskGraph hooks) and resolving the service parameters (when the first task using the service runs).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class PluginConfigurationBenchmark
+{
+
+    @Param({ "defaults", "defaultTestSettings", "minimalFootprint" })
+    public String settings;
+
+    private Path directory;
+
+    private Project project;
+
+    @Setup(Level.Invocation)
+    public void createProject()
+            throws IOException
+    {
+        directory = Files.createTempDirectory("embedded-cassandra-jmh");
+        project = BenchmarkProjects.create(directory);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteProject()
+            throws IOException
+    {
+        BenchmarkProjects.delete(directory);
+    }
+
+    @Benchmark
+    public void apply()
+    {
+        BenchmarkProjects.apply(project, settings);
+    }
+
+    @Benchmark
+    public List<String> applyAndEvaluate()
+    {
+        BenchmarkProjects.apply(project, settings);
+        ((ProjectInternal) project).evaluate();
+
+        CassandraBuildService service = project.getPlugins().getPlugin(EmbeddedCassandraPlugin.class).getService().get();
+        return service.getParameters().getJvmOptions().get();
+    }
+
+}
@@ -0,0 +1,78 @@
+package org.carlspring.gradle.plugins.embedded.cassandra;
+
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraBuildService;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraCoordinatesArgumentProvider;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.UseCassandraAction;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.testing.Test;
+
+import javax.inject.Inject;
+
+/**
+ * Added to every {@code Test} task as {@code cassandra}. Nothing is changed on the task until it calls
+ * {@link #useCassandra()} - then it starts the shared instance right before its tests are executed and releases it when
+ * it has finished. A test task which is up-to-date or loaded from the build cache never starts Cassandra. No
+ * {@code dependsOn("startCassandra")} / {@code finalizedBy("stopCassandra")} is needed.
+ */
+public abstract class CassandraTestExtension
+{
+
+    public static final String NAME = "cassandra";
+
+    private final Test task;
+
+    private final Provider<CassandraBuildService> sharedService;
+
+    private final FileCollection testClient;
+
+    private boolean wired;
+
+    @Inject
+    public CassandraTestExtension(Test task, Provider<CassandraBuildService> sharedService, FileCollection testClient)
+    {
+        this.task = task;
+        this.sharedService = sharedService;
+        this.testClient = testClient;
+
+        getEnabled().convention(false);
+    }
+
+    public abstract Property<Boolean> getEnabled();
+
+    /**
+     * The instance the task uses - the shared instance, or the one of a version of the matrix.
+     */
+    public abstract Property<CassandraBuildService> getService();
+
+    /**
+     * Version of the matrix the task runs against - empty for the shared instance.
+     */
+    public abstract Property<String> getVersion();
+
+    public void useCassandra()
+    {
+        useCassandra(sharedService);
+    }
+
+    /**
+     * Uses another instance than the shared one (i.e. the one of a version of the matrix). The task gets the coordinates
+     * of the instance and, with {@code testClient} or a pool, the client classes (not the plugin) on its classpath.
+     */
+    public void useCassandra(Provider<CassandraBuildService> service)
+    {
+        getEnabled().set(true);
+        getService().set(service);
+        task.usesService(service);
+        if (wired) {
+            return;
+        }
+
+        wired = true;
+        task.doFirst(new UseCassandraAction(getService(), getEnabled()));
+        task.getJvmArgumentProviders().add(new CassandraCoordinatesArgumentProvider(getService()));
+        task.setClasspath(task.getClasspath().plus(testClient));
+    }
+
+}
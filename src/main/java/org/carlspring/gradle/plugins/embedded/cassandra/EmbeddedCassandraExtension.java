@@ -1,141 +1,331 @@
 package org.carlspring.gradle.plugins.embedded.cassandra;
 
-import org.gradle.api.Project;
-import org.gradle.api.tasks.Input;
-import org.gradle.api.tasks.Optional;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraBackend;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.ClusterTopology;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.MinimalFootprintProfile;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.PortAllocator;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.ShutdownPolicy;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.TuningPreset;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.ProjectLayout;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
 
 import javax.inject.Inject;
-import java.io.IOException;
-import java.net.ServerSocket;
 import java.nio.file.Path;
 import java.security.SecureRandom;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Random;
 
+/**
+ * All settings are lazy properties, so nothing is resolved before Cassandra is actually started and the configuration
+ * can be reused by the configuration cache. Defaults which depend on the Gradle user home are set as conventions by
+ * {@link EmbeddedCassandraPlugin}.
+ */
 public abstract class EmbeddedCassandraExtension
 {
 
-    private final String name;
-
-    private final Project project;
-
-    private Path workingDirectory;
-
-    private HashMap<String, Object> configProperties = new HashMap<>();
+    private static final Random RANDOM = new SecureRandom();
 
-    private HashMap<String, Object> systemProperties = new HashMap<>();
-
-    private List<String> jvmOptions = new ArrayList<>();
-
-    private Duration startupTimeout = Duration.ofMillis(120000L);
+    private final String name;
 
-    // Apply JVM option fixes to Cassandra when running on JDK >= 15
-    private boolean cassandra4JVMAutoFix = true;
+    /**
+     * Not a managed property - Gradle doesn't implement an abstract getter which has setters next to it.
+     */
+    private final Property<Path> workingDirectory;
 
     @Inject
-    public EmbeddedCassandraExtension(String name, Project project)
+    public EmbeddedCassandraExtension(String name)
     {
         this.name = name;
-        this.project = project;
+
+        workingDirectory = getObjects().property(Path.class);
+        workingDirectory.convention(getLayout().getBuildDirectory().dir("cassandra").map(d -> d.getAsFile().toPath()));
 
         // Default config properties.
-        configProperties.put("authenticator", "PasswordAuthenticator");
-        configProperties.put("authorizer", "CassandraAuthorizer");
+        getConfigProperties().put("authenticator", "PasswordAuthenticator");
+        getConfigProperties().put("authorizer", "CassandraAuthorizer");
 
         // Default system properties.
-        systemProperties.put("cassandra.superuser_setup_delay_ms", 0);
+        getSystemProperties().put("cassandra.superuser_setup_delay_ms", 0);
 
         // Add default jvm options
-        jvmOptions.add("-Xms1024m");
-        jvmOptions.add("-Xmx1024m");
+        getJvmOptions().add("-Xms1024m");
+        getJvmOptions().add("-Xmx1024m");
+
+        getStartupTimeout().convention(Duration.ofMillis(120000L));
+        // Apply JVM option fixes to Cassandra when running on JDK >= 15
+        getCassandra4JVMAutoFix().convention(true);
+        getWarmStart().convention(false);
+        getPoolSize().convention(1);
+        getAsyncStart().convention(false);
+        getCqlUsername().convention("cassandra");
+        getCqlPassword().convention("cassandra");
+        getTestClient().convention(false);
+        getMinimalFootprint().convention(false);
+        getRandomPorts().convention(false);
+        getRamDisk().convention(false);
+        getRamDiskDirectory().convention(Path.of("/dev/shm"));
+        getRamDiskRequiredSpace().convention(512L);
+        getKeepAlive().convention(false);
+        getKeepAliveIdleTimeout().convention(Duration.ofMinutes(30));
+        getNodes().convention(1);
+        getClusterLoopbackAliases().convention(getProviders().provider(ClusterTopology::supportsLoopbackAliases));
+        getMetrics().convention(false);
+        getMetricsInterval().convention(Duration.ofSeconds(5));
+        getTunedLogging().convention(false);
+        getLogLevel().convention("WARN");
+        getLogTailLines().convention(50);
+        getBackend().convention(CassandraBackend.EMBEDDED);
+        getShutdownTimeout().convention(Duration.ofSeconds(30));
     }
 
+    @Inject
+    protected abstract ProjectLayout getLayout();
+
+    @Inject
+    protected abstract ProviderFactory getProviders();
+
+    @Inject
+    protected abstract ObjectFactory getObjects();
+
     public String getName()
     {
         return this.name;
     }
 
-    public Path getWorkingDirectory()
+    public Property<Path> getWorkingDirectory()
     {
-        if (workingDirectory == null) {
-            workingDirectory = project.getBuildDir().toPath().resolve("cassandra");
-        }
-
-        return this.workingDirectory;
+        return workingDirectory;
     }
 
-    @Input
+    /**
+     * @deprecated use {@code workingDirectory.set(...)} instead.
+     */
+    @Deprecated
     public void setWorkingDirectory(Path path)
     {
-        this.workingDirectory = path;
+        getWorkingDirectory().set(path);
     }
 
-    @Input
+    /**
+     * @deprecated use {@code workingDirectory.set(...)} instead.
+     */
+    @Deprecated
     public void setWorkingDirectory(String path)
     {
-        this.workingDirectory = Path.of(path);
+        getWorkingDirectory().set(Path.of(path));
     }
 
-    public HashMap<String, Object> getConfigProperties()
-    {
-        return configProperties;
-    }
+    // Cassandra version - defaults to the one embedded-cassandra defaults to.
+    public abstract Property<String> getVersion();
+
+    /**
+     * Versions the tests are additionally run against (i.e. {@code versions = ["4.0.11", "5.0.2"]}) - every version gets
+     * its own instance (working directory, ports) and a {@code testCassandra<version>} task, so they can run in parallel.
+     */
+    public abstract ListProperty<String> getVersions();
+
+    public abstract MapProperty<String, Object> getConfigProperties();
+
+    public abstract MapProperty<String, Object> getSystemProperties();
+
+    public abstract ListProperty<String> getJvmOptions();
+
+    public abstract Property<Boolean> getCassandra4JVMAutoFix();
+
+    public abstract Property<Duration> getStartupTimeout();
+
+    // Restore a pre-initialized data directory instead of bootstrapping from scratch.
+    public abstract Property<Boolean> getWarmStart();
+
+    public abstract Property<Path> getSnapshotCacheDirectory();
+
+    // Extracted distributions shared between builds and working directories.
+    public abstract Property<Path> getDistributionCacheDirectory();
+
+    // Number of isolated instances pre-started for parallel test forks.
+    public abstract Property<Integer> getPoolSize();
 
-    @Input
-    @Optional
-    public void setConfigProperties(HashMap<String, Object> configProperties)
+    // Start in the background and only block when Cassandra is actually needed.
+    public abstract Property<Boolean> getAsyncStart();
+
+    // CQL scripts (files or directories with *.cql files) applied after the start.
+    public abstract ConfigurableFileCollection getCqlScripts();
+
+    /**
+     * Adds a CQL script file or a directory with *.cql files (resolved relative to the project directory).
+     */
+    public void cqlScript(Object path)
     {
-        this.configProperties = configProperties;
+        getCqlScripts().from(path);
     }
 
-    public HashMap<String, Object> getSystemProperties()
+    public abstract Property<String> getCqlUsername();
+
+    public abstract Property<String> getCqlPassword();
+
+    // Add the client helpers (CassandraReset, CassandraPoolLease) to the test runtime classpath.
+    public abstract Property<Boolean> getTestClient();
+
+    // Size the heap (and GC) from the available memory - see minimalFootprint().
+    public abstract Property<Boolean> getMinimalFootprint();
+
+    // Set by defaultTestSettings(true) - the ports are reserved when Cassandra is started and replaced when they are taken.
+    public abstract Property<Boolean> getRandomPorts();
+
+    /**
+     * Lock files coordinating the port allocation between concurrent builds on this machine.
+     */
+    public abstract Property<Path> getPortLockDirectory();
+
+    // Keep the data directory on a memory backed file system - the data is deleted when Cassandra is stopped.
+    public abstract Property<Boolean> getRamDisk();
+
+    public abstract Property<Path> getRamDiskDirectory();
+
+    // Free space (in MB) required on the RAM disk per instance, otherwise the data stays on the disk.
+    public abstract Property<Long> getRamDiskRequiredSpace();
+
+    // Keep Cassandra running after the build and reuse it in the next one, as long as the configuration is the same.
+    public abstract Property<Boolean> getKeepAlive();
+
+    // A kept alive instance is stopped after being unused for this long.
+    public abstract Property<Duration> getKeepAliveIdleTimeout();
+
+    // Number of nodes of a local cluster - nodes are started concurrently once the seed is up.
+    public abstract Property<Integer> getNodes();
+
+    // Give every node its own loopback address (127.0.0.<n>) instead of distinct ports - defaults to true on Linux.
+    public abstract Property<Boolean> getClusterLoopbackAliases();
+
+    // Sample latencies, compactions, dropped messages and GC over JMX while Cassandra runs - reported in build/reports/cassandra.
+    public abstract Property<Boolean> getMetrics();
+
+    public abstract Property<Duration> getMetricsInterval();
+
+    /**
+     * Maximum values of the summary metrics (i.e. {@code metricsThresholds.put("gcPauseMaxMillis", 500)}) - the build fails
+     * when one of them has been exceeded once Cassandra is stopped.
+     */
+    public abstract MapProperty<String, Number> getMetricsThresholds();
+
+    // Asynchronous logging at logLevel without debug.log, instead of the (synchronous, DEBUG) logging of the distribution.
+    public abstract Property<Boolean> getTunedLogging();
+
+    public abstract Property<String> getLogLevel();
+
+    // Lines of Cassandra's output printed when it fails to start or a test task using it fails.
+    public abstract Property<Integer> getLogTailLines();
+
+    // EMBEDDED starts Cassandra, REMOTE attaches to the node at remoteHost:remotePort - see remote(host, port).
+    public abstract Property<CassandraBackend> getBackend();
+
+    public abstract Property<String> getRemoteHost();
+
+    public abstract Property<Integer> getRemotePort();
+
+    // DRAIN (flush, then kill after shutdownTimeout) or KILL (no flush) - defaults to KILL with ramDisk, DRAIN otherwise.
+    public abstract Property<ShutdownPolicy> getShutdownPolicy();
+
+    public abstract Property<Duration> getShutdownTimeout();
+
+    // See writeHeavy(), readHeavy() and lowLatency().
+    public abstract ListProperty<TuningPreset> getTuningPresets();
+
+    /**
+     * Attaches to an already running node instead of starting one - startCassandra waits until it passes the health check
+     * (see {@link org.carlspring.gradle.plugins.embedded.cassandra.services.RemoteCassandra}), stopCassandra leaves it
+     * running.
+     */
+    public void remote(String host, int port)
     {
-        return systemProperties;
+        getBackend().set(CassandraBackend.REMOTE);
+        getRemoteHost().set(host);
+        getRemotePort().set(port);
     }
 
-    @Input
-    @Optional
-    public void setSystemProperties(HashMap<String, Object> systemProperties)
+    /**
+     * Tunes memtables, write threads, compaction and batch size thresholds for write heavy tests and enables materialized
+     * views - see {@link TuningPreset#WRITE_HEAVY}. Explicitly configured properties win over the presets.
+     */
+    public void writeHeavy()
     {
-        this.systemProperties = systemProperties;
+        getTuningPresets().add(TuningPreset.WRITE_HEAVY);
     }
 
-    public List<String> getJvmOptions()
+    /**
+     * Tunes read threads, caches and compaction for read heavy tests and enables SASI indexes - see
+     * {@link TuningPreset#READ_HEAVY}.
+     */
+    public void readHeavy()
     {
-        return jvmOptions;
+        getTuningPresets().add(TuningPreset.READ_HEAVY);
     }
 
-    @Input
-    @Optional
-    public void setJvmOptions(List<String> jvmOptions)
+    /**
+     * Tunes commit log syncing, memtables and background work for latency sensitive tests - see
+     * {@link TuningPreset#LOW_LATENCY}.
+     */
+    public void lowLatency()
     {
-        this.jvmOptions = jvmOptions;
+        getTuningPresets().add(TuningPreset.LOW_LATENCY);
     }
 
-    public boolean getCassandra4JVMAutoFix()
+    /**
+     * Replaces the -Xms/-Xmx options (i.e. {@code heapSize("512m")}).
+     */
+    public void heapSize(String size)
     {
-        return cassandra4JVMAutoFix;
+        removeHeapOptions();
+        getJvmOptions().add("-Xms" + size);
+        getJvmOptions().add("-Xmx" + size);
     }
 
-    @Input
-    @Optional
-    public void setCassandra4JVMAutoFix(boolean cassandra4JVMAutoFix)
+    private void removeHeapOptions()
     {
-        this.cassandra4JVMAutoFix = cassandra4JVMAutoFix;
+        List<String> options = new ArrayList<>(getJvmOptions().getOrElse(List.of()));
+        options.removeIf(option -> option.startsWith("-Xms") || option.startsWith("-Xmx") || option.startsWith("-Xmn"));
+        getJvmOptions().set(options);
     }
 
-    public Duration getStartupTimeout()
+    /**
+     * Applies settings for running several instances on a memory constrained machine - small memtables, no caches, small
+     * thread pools, no hints and auto snapshots and the serial GC. The heap is sized when Cassandra starts from the
+     * memory available to the build divided by {@link #getPoolSize()}, unless -Xmx is set after calling this method.
+     */
+    public void minimalFootprint()
     {
-        return startupTimeout;
+        removeHeapOptions();
+        getConfigProperties().putAll(MinimalFootprintProfile.CONFIG_PROPERTIES);
+        getSystemProperties().putAll(MinimalFootprintProfile.SYSTEM_PROPERTIES);
+        getMinimalFootprint().set(true);
     }
 
-    @Input
-    @Optional
-    public void setStartupTimeout(Duration startupTimeout)
+    /**
+     * @return the configured JVM options with the options of the {@link #minimalFootprint()} profile.
+     */
+    public Provider<List<String>> getEffectiveJvmOptions()
     {
-        this.startupTimeout = startupTimeout;
+        return getProviders().provider(() -> {
+            List<String> options = new ArrayList<>(getJvmOptions().getOrElse(List.of()));
+            if (getMinimalFootprint().get()) {
+                boolean heapConfigured = options.stream().anyMatch(option -> option.startsWith("-Xmx"));
+                for (String option : MinimalFootprintProfile.jvmOptions(Math.max(1, getPoolSize().get()))) {
+                    if (!heapConfigured || !(option.startsWith("-Xms") || option.startsWith("-Xmx"))) {
+                        options.add(option);
+                    }
+                }
+            }
+
+            return options;
+        });
     }
 
     public void defaultTestSettings()
@@ -145,19 +335,18 @@ public abstract class EmbeddedCassandraExtension
 
     public void defaultTestSettings(boolean randomPorts)
     {
-        jvmOptions.addAll(List.of("-Xms2048m", "-Xmx2048m"));
+        heapSize("2048m");
 
+        MapProperty<String, Object> configProperties = getConfigProperties();
         configProperties.put("authenticator", "PasswordAuthenticator");
         configProperties.put("authorizer", "CassandraAuthorizer");
         configProperties.put("num_tokens", 1);
 
-        // Setting random cassandra ports to enable parallel tests.
-        Integer storagePort = randomPorts ? findRandomOpenPort() : 7000;
-        Integer storagePortSsl = randomPorts ? findRandomOpenPort() : 7001;
-        Integer nativeTransportPort = randomPorts ? findRandomOpenPort() : 9042;
-        configProperties.put("storage_port", storagePort); // default is 7000
-        configProperties.put("ssl_storage_port", storagePortSsl); // default is 7001
-        configProperties.put("native_transport_port", nativeTransportPort); // default is 9042
+        // Setting random cassandra ports to enable parallel tests - they are reserved when Cassandra is started.
+        getRandomPorts().set(randomPorts);
+        configProperties.put("storage_port", 7000); // default is 7000
+        configProperties.put("ssl_storage_port", 7001); // default is 7001
+        configProperties.put("native_transport_port", 9042); // default is 9042
         // /Setting random cassandra ports to enable parallel tests.
 
         configProperties.put("hints_flush_period_in_ms", 5000); // defaults to 10000
@@ -173,6 +362,7 @@ public abstract class EmbeddedCassandraExtension
         //  gh/saidbouras/cassandra-docker-unit
         //  gh/asarkar/url-shortener/blob/master/src/test/kotlin/org/asarkar/urlshortener/ApplicationTest.kt#L54
         //  gh/datastax/cassandra-quarkus/pull/7
+        MapProperty<String, Object> systemProperties = getSystemProperties();
         systemProperties.put("cassandra.skip_wait_for_gossip_to_settle", 0);
         systemProperties.put("cassandra.load_ring_state", false);
         systemProperties.put("cassandra.initial_token", 1);
@@ -182,17 +372,26 @@ public abstract class EmbeddedCassandraExtension
         systemProperties.put("allocate_tokens_for_local_replication_factor", 1);
 
         // Cassandra takes longer on machines with less than 4 CPUS (i.e. Github Actions)
-        startupTimeout = Duration.ofMillis(240000L);
+        getStartupTimeout().set(Duration.ofMillis(240000L));
     }
 
-    public synchronized Integer findRandomOpenPort()
+    /**
+     * @return a port between 35000 and 65000 which is free right now. Nothing reserves it, so another process may take it
+     * before Cassandra binds it.
+     * @deprecated use {@code defaultTestSettings(true)} - its ports are reserved (see {@link PortAllocator}) when
+     * Cassandra is started, instead of being picked when the build is configured.
+     */
+    @Deprecated
+    public Integer findRandomOpenPort()
     {
-        try (java.net.ServerSocket socket = new ServerSocket(new SecureRandom().nextInt(65000 - 35000 + 1) + 35000)) {
-            return socket.getLocalPort();
-        }
-        catch (IOException e) {
-            throw new RuntimeException(e);
+        for (int attempt = 0; attempt < 100; attempt++) {
+            int port = PortAllocator.MIN_PORT + RANDOM.nextInt(PortAllocator.MAX_PORT - PortAllocator.MIN_PORT + 1);
+            if (PortAllocator.isFree(port)) {
+                return port;
+            }
         }
+
+        throw new IllegalStateException("Could not find a free port between " + PortAllocator.MIN_PORT + " and " + PortAllocator.MAX_PORT);
     }
 
 }
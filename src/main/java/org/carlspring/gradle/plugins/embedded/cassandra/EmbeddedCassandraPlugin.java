@@ -1,13 +1,44 @@
 package org.carlspring.gradle.plugins.embedded.cassandra;
 
-import com.github.nosan.embedded.cassandra.Cassandra;
 import com.github.nosan.embedded.cassandra.CassandraBuilder;
-import com.github.nosan.embedded.cassandra.SimpleSeedProviderConfigurator;
-import com.github.nosan.embedded.cassandra.commons.ClassPathResource;
+import org.carlspring.gradle.plugins.embedded.cassandra.benchmark.BenchmarkWorkload;
+import org.carlspring.gradle.plugins.embedded.cassandra.client.CassandraPoolLease;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraBackend;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraBuildService;
+import org.carlspring.gradle.plugins.embedded.cassandra.tasks.AwaitCassandraTask;
+import org.carlspring.gradle.plugins.embedded.cassandra.tasks.BenchmarkCassandraTask;
+import org.carlspring.gradle.plugins.embedded.cassandra.tasks.GenerateCassandraSSTablesTask;
+import org.carlspring.gradle.plugins.embedded.cassandra.tasks.PrepareCassandraTask;
+import org.carlspring.gradle.plugins.embedded.cassandra.tasks.ResetCassandraTask;
+import org.carlspring.gradle.plugins.embedded.cassandra.tasks.StartCassandraNodeTask;
 import org.carlspring.gradle.plugins.embedded.cassandra.tasks.StartCassandraTask;
+import org.carlspring.gradle.plugins.embedded.cassandra.tasks.StopCassandraNodeTask;
 import org.carlspring.gradle.plugins.embedded.cassandra.tasks.StopCassandraTask;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.plugins.ExtraPropertiesExtension;
+import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.bundling.Jar;
+import org.gradle.api.tasks.testing.Test;
+import org.gradle.api.tasks.testing.junitplatform.JUnitPlatformOptions;
+import org.gradle.build.event.BuildEventsListenerRegistry;
+
+import javax.inject.Inject;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 public class EmbeddedCassandraPlugin
         implements Plugin<Project>
@@ -18,72 +49,354 @@ public class EmbeddedCassandraPlugin
 
     public final String EXTENSION_NAME = "cassandra";
 
-    private volatile Cassandra instance;
+    private static final String PREPARE_TASK_PATH = "embeddedCassandraPrepareTaskPath";
+
+    /**
+     * The client helpers with the CQL connection they use - nothing else of the plugin.
+     */
+    private static final List<String> TEST_CLIENT_CLASSES = List.of("org/carlspring/gradle/plugins/embedded/cassandra/client/**",
+                                                                    "org/carlspring/gradle/plugins/embedded/cassandra/cql/CqlConnection*",
+                                                                    "org/carlspring/gradle/plugins/embedded/cassandra/cql/CqlException*");
+
+    private Provider<CassandraBuildService> service;
+
+    private final AtomicInteger expectedConsumers = new AtomicInteger(0);
+
+    /**
+     * Paths of the test tasks with useCassandra() in the task graph per version of the matrix ("" for the shared instance).
+     */
+    private final Map<String, List<String>> testConsumers = new ConcurrentHashMap<>();
+
+    private final BuildEventsListenerRegistry listeners;
+
+    @Inject
+    public EmbeddedCassandraPlugin(BuildEventsListenerRegistry listeners)
+    {
+        this.listeners = listeners;
+    }
 
     @Override
     public void apply(final Project project)
     {
 
         EmbeddedCassandraExtension container = project.getExtensions()
-                                                      .create(EXTENSION_NAME, EmbeddedCassandraExtension.class, EXTENSION_NAME, project);
-
-        project.afterEvaluate(p -> {
-            CassandraBuilder builder = new CassandraBuilder();
-            builder.workingDirectory(container::getWorkingDirectory);
-            builder.registerShutdownHook(true);
-
-            // Named as jvm15 but copied as jvm11 on purpose, because Cassandra doesn't know anything about JDK >= 11 yet so naming it differently
-            // will not work.
-            int jdkVersion = Runtime.version().feature();
-            if (jdkVersion >= 15 && jdkVersion < 18) {
-                if (builder.getVersion().getMajor() <= 4 && container.getCassandra4JVMAutoFix()) {
-                    builder.addWorkingDirectoryResource(new ClassPathResource("cassandra/server/jvm17-clients.options"), "conf/jvm11-clients.options")
-                           .addWorkingDirectoryResource(new ClassPathResource("cassandra/server/jvm17-server.options"), "conf/jvm11-server.options");
-                }
-            }
-            else if (jdkVersion == 18) {
-                String msg = "Cassandra needs SecurityManager which has been removed in JDK >= 18 -- your version is " + Runtime.version().toString();
-                throw new RuntimeException(msg);
-            }
+                                                      .create(EXTENSION_NAME, EmbeddedCassandraExtension.class, EXTENSION_NAME);
+
+        // The service is shared by the whole build - the first project applying the plugin provides the configuration.
+        boolean owner = project.getGradle().getSharedServices().getRegistrations().findByName(CassandraBuildService.SERVICE_NAME) == null;
+        service = project.getGradle()
+                         .getSharedServices()
+                         .registerIfAbsent(CassandraBuildService.SERVICE_NAME, CassandraBuildService.class, spec -> {
+                             CassandraBuildService.Params params = spec.getParameters();
+                             configureParameters(project, container, params);
+                             params.getWorkingDirectory().set(project.getLayout().dir(container.getWorkingDirectory().map(Path::toFile)));
+                             params.getVersion().set(container.getVersion());
+                             params.getExpectedConsumers().set(project.provider(() -> expectedConsumers.get() + getTestConsumers("").size()));
+                             params.getTestConsumers().set(project.provider(() -> getTestConsumers("")));
+                             params.getPoolSize().set(container.getPoolSize());
+                             params.getReportsDirectory().set(project.getLayout().getBuildDirectory().dir("reports/cassandra"));
+                             params.getNodes().set(container.getNodes());
+                         });
+
+        // Releases the test tasks with useCassandra() - registered by every project, the service ignores duplicate events.
+        listeners.onTaskCompletion(service);
 
-            builder.jvmOptions(container.getJvmOptions());
-            builder.configProperties(container.getConfigProperties());
-            builder.systemProperties(container.getSystemProperties());
+        // Count the start tasks (and test tasks with useCassandra() per version) in the whole graph so the services are not
+        // stopped by the first project which finishes.
+        project.getGradle().getTaskGraph().whenReady(graph -> {
+            Map<String, List<String>> tests = graph.getAllTasks()
+                                                   .stream()
+                                                   .filter(EmbeddedCassandraPlugin::usesCassandra)
+                                                   .collect(Collectors.groupingBy(EmbeddedCassandraPlugin::getMatrixVersion,
+                                                                                  Collectors.mapping(Task::getPath, Collectors.toList())));
+            testConsumers.clear();
+            testConsumers.putAll(tests);
+            expectedConsumers.set((int) graph.getAllTasks()
+                                             .stream()
+                                             .filter(StartCassandraTask.class::isInstance)
+                                             .count());
+        });
 
-            builder.configure(new SimpleSeedProviderConfigurator("127.0.0.1:" + container.getConfigProperties()
-                                                                                         .getOrDefault("storage_port", 7000)));
+        int jdkVersion = Runtime.version().feature();
+        if (jdkVersion == 18) {
+            String msg = "Cassandra needs SecurityManager which has been removed in JDK >= 18 -- your version is " + Runtime.version().toString();
+            throw new RuntimeException(msg);
+        }
 
-            Integer storagePort = (Integer) container.getConfigProperties().getOrDefault("storage_port", 7000);
-            Integer storagePortSsl = (Integer) container.getConfigProperties().getOrDefault("ssl_storage_port", 7001);
-            Integer nativeTransportPort = (Integer) container.getConfigProperties().getOrDefault("native_transport_port", 9042);
+        // Shared by all builds on this machine - see PortAllocator.
+        Path caches = project.getGradle().getGradleUserHomeDir().toPath().resolve("caches/embedded-cassandra");
+        container.getSnapshotCacheDirectory().convention(caches.resolve("snapshots"));
+        container.getDistributionCacheDirectory().convention(caches.resolve("distributions"));
+        container.getPortLockDirectory().convention(caches.resolve("ports"));
 
-            System.getProperties().put("cassandra.storage.port", String.valueOf(storagePort));
-            System.getProperties().put("cassandra.storage.port.ssl", String.valueOf(storagePortSsl));
-            System.getProperties().put("cassandra.native.transport.port", String.valueOf(nativeTransportPort));
+        // The client helpers (CassandraReset, CassandraPoolLease) are packaged on their own - test runtime classpaths don't
+        // get the plugin with its dependencies.
+        TaskProvider<Jar> testClientJar = project.getTasks().register("cassandraTestClientJar", Jar.class, jar -> {
+            jar.setDescription("Packages the client helpers (CassandraReset, CassandraPoolLease) for the test runtime classpath.");
+            File classes = getPluginClasses();
+            jar.from(classes.isDirectory() ? project.fileTree(classes) : project.zipTree(classes), spec -> spec.include(TEST_CLIENT_CLASSES));
+            jar.getArchiveFileName().set("embedded-cassandra-test-client.jar");
+            jar.getDestinationDirectory().set(project.getLayout().getBuildDirectory().dir("cassandra-client"));
+        });
+        FileCollection testClient = project.files(testClientJar)
+                                           .filter(new TestClientRequired(container.getTestClient()
+                                                                                   .zip(container.getPoolSize(), (client, poolSize) -> client || poolSize > 1)));
 
-            builder.startupTimeout(container.getStartupTimeout());
+        // Test tasks are only changed when they call useCassandra() - their forks then get the coordinates of the running
+        // instance(s). Pools are leased with CassandraPoolLease.
+        project.getTasks().withType(Test.class).configureEach(test -> test.getExtensions().create(CassandraTestExtension.NAME,
+                                                                                                   CassandraTestExtension.class,
+                                                                                                   test,
+                                                                                                   service,
+                                                                                                   testClient));
 
-            if (instance == null) {
-                instance = builder.build();
-            }
+        project.getTasks().withType(GenerateCassandraSSTablesTask.class).configureEach(task -> {
+            task.setGroup("cassandra");
+            task.getCassandraVersion().convention(container.getVersion().orElse(project.provider(() -> new CassandraBuilder().getVersion().toString())));
+            task.getDistributionCacheDirectory().convention(project.getLayout().dir(container.getDistributionCacheDirectory().map(Path::toFile)));
+            task.getOutputDirectory().convention(project.getLayout().getBuildDirectory().dir("cassandra-sstables/" + task.getName()));
+            task.getNodes().convention(container.getNodes());
         });
 
+        // Registered once, by the project which configures the build service - it installs the one working directory which
+        // is started, the start tasks of all projects depend on it.
+        ExtraPropertiesExtension extra = project.getGradle().getExtensions().getExtraProperties();
+        if (owner) {
+            project.getTasks()
+                   .register("prepareCassandra", PrepareCassandraTask.class, task -> {
+                       task.setGroup("cassandra");
+                       task.setDescription("Installs the Cassandra distribution into the working directory, unless it is up-to-date.");
+                       task.getCassandraVersion().convention(container.getVersion().orElse(project.provider(() -> new CassandraBuilder().getVersion().toString())));
+                       task.getDistributionCacheDirectory().convention(project.getLayout().dir(container.getDistributionCacheDirectory().map(Path::toFile)));
+                       task.getWorkingDirectory().convention(project.getLayout().dir(container.getWorkingDirectory().map(Path::toFile)));
+                       task.getPreparedFile().convention(task.getWorkingDirectory().file(PrepareCassandraTask.FILE_NAME));
+                       task.getBackend().convention(container.getBackend());
+                   });
+            extra.set(PREPARE_TASK_PATH, project.absoluteProjectPath("prepareCassandra"));
+        }
+        String prepareTaskPath = (String) extra.get(PREPARE_TASK_PATH);
+
         project.getTasks()
                .register("startCassandra", StartCassandraTask.class, task -> {
                    task.setGroup("cassandra");
-                   task.getInstance().set(instance);
+                   task.dependsOn(prepareTaskPath);
+                   task.dependsOn(project.getTasks().withType(GenerateCassandraSSTablesTask.class));
+                   task.getService().set(service);
+                   task.getAsync().set(container.getAsyncStart());
+                   task.usesService(service);
+               });
+
+        project.getTasks()
+               .register("awaitCassandra", AwaitCassandraTask.class, task -> {
+                   task.setGroup("cassandra");
+                   task.dependsOn("startCassandra");
+                   task.getService().set(service);
+                   task.usesService(service);
+               });
+
+        project.getTasks()
+               .register("resetCassandra", ResetCassandraTask.class, task -> {
+                   task.setGroup("cassandra");
+                   task.mustRunAfter("startCassandra");
+                   task.getMode().convention("truncate");
+                   task.getService().set(service);
+                   task.usesService(service);
+               });
+
+        project.getTasks()
+               .register("startCassandraNode", StartCassandraNodeTask.class, task -> {
+                   task.setGroup("cassandra");
+                   task.mustRunAfter("startCassandra");
+                   task.getService().set(service);
+                   task.usesService(service);
+               });
+
+        project.getTasks()
+               .register("stopCassandraNode", StopCassandraNodeTask.class, task -> {
+                   task.setGroup("cassandra");
+                   task.mustRunAfter("startCassandra");
+                   task.getService().set(service);
+                   task.usesService(service);
+               });
+
+        project.getTasks()
+               .register("benchmarkCassandra", BenchmarkCassandraTask.class, task -> {
+                   task.setGroup("cassandra");
+                   task.setDescription("Runs a CQL workload against the running instance and reports throughput and latencies.");
+                   task.dependsOn("startCassandra");
+                   task.finalizedBy("stopCassandra");
+                   task.getWriteStatement().convention(BenchmarkWorkload.DEFAULT_WRITE);
+                   task.getReadStatement().convention(BenchmarkWorkload.DEFAULT_READ);
+                   task.getReadRatio().convention(0.5);
+                   task.getConcurrency().convention(64);
+                   task.getConnections().convention(4);
+                   task.getWarmup().convention(Duration.ofSeconds(5));
+                   task.getDuration().convention(Duration.ofSeconds(30));
+                   task.getKeys().convention(100_000L);
+                   task.getValueSize().convention(100);
+                   task.getMaxRegression().convention(0.2);
+                   task.getUpdateBaseline().convention(false);
+                   task.getReportsDirectory().convention(project.getLayout().getBuildDirectory().dir("reports/cassandra"));
+                   task.getService().set(service);
+                   task.usesService(service);
                });
 
         project.getTasks()
                .register("stopCassandra", StopCassandraTask.class, task -> {
                    task.setGroup("cassandra");
-                   task.getInstance().set(instance);
+                   task.getService().set(service);
+                   task.usesService(service);
                });
+
+        // The versions are known once the build script has been evaluated.
+        project.afterEvaluate(evaluated -> evaluated.getPluginManager().withPlugin("java", java -> registerVersionMatrix(evaluated, container)));
+    }
+
+    /**
+     * Registers a build service, a {@code testCassandra<version>} task (a copy of {@code test} which uses the service) per
+     * version of the matrix and {@code testCassandraMatrix} running all of them.
+     */
+    private void registerVersionMatrix(Project project, EmbeddedCassandraExtension container)
+    {
+        List<String> versions = container.getVersions().getOrElse(List.of());
+        if (versions.isEmpty()) {
+            return;
+        }
+
+        TaskProvider<Task> matrix = project.getTasks().register("testCassandraMatrix", task -> {
+            task.setGroup("verification");
+            task.setDescription("Runs the tests against all Cassandra versions of the matrix (" + String.join(", ", versions) + ").");
+        });
+
+        for (String version : versions) {
+            // Shared by all projects with the same version in their matrix, like the default service.
+            Provider<CassandraBuildService> versionService = project.getGradle().getSharedServices().registerIfAbsent(
+                    CassandraBuildService.SERVICE_NAME + "-" + version, CassandraBuildService.class, spec -> {
+                        CassandraBuildService.Params params = spec.getParameters();
+                        configureParameters(project, container, params);
+                        params.getWorkingDirectory().set(project.getLayout().dir(container.getWorkingDirectory().map(
+                                directory -> directory.resolveSibling(directory.getFileName() + "-" + version).toFile())));
+                        params.getVersion().set(version);
+                        params.getAllocatePorts().set(true);
+                        params.getExpectedConsumers().set(project.provider(() -> getTestConsumers(version).size()));
+                        params.getTestConsumers().set(project.provider(() -> getTestConsumers(version)));
+                        // A single started node per version - pools, clusters and remote nodes are for the shared instance.
+                        params.getPoolSize().set(1);
+                        params.getNodes().set(1);
+                        params.getBackend().set(CassandraBackend.EMBEDDED);
+                        params.getReportsDirectory().set(project.getLayout().getBuildDirectory().dir("reports/cassandra/" + version));
+                    });
+            listeners.onTaskCompletion(versionService);
+
+            TaskProvider<Test> test = project.getTasks().register("testCassandra" + version.replaceAll("[^A-Za-z0-9]", "_"), Test.class, task -> {
+                Test defaults = project.getTasks().named(JavaPlugin.TEST_TASK_NAME, Test.class).get();
+                task.setGroup("verification");
+                task.setDescription("Runs the tests against Cassandra " + version + ".");
+                task.setTestClassesDirs(defaults.getTestClassesDirs());
+                task.setClasspath(defaults.getClasspath());
+                if (defaults.getOptions() instanceof JUnitPlatformOptions) {
+                    task.useJUnitPlatform();
+                }
+
+                CassandraTestExtension cassandra = task.getExtensions().getByType(CassandraTestExtension.class);
+                cassandra.getVersion().set(version);
+                cassandra.useCassandra(versionService);
+                task.systemProperty("cassandra.version", version);
+                task.environment("CASSANDRA_VERSION", version);
+            });
+            matrix.configure(task -> task.dependsOn(test));
+        }
+    }
+
+    private static void configureParameters(Project project, EmbeddedCassandraExtension container, CassandraBuildService.Params params)
+    {
+        params.getJvmOptions().set(container.getEffectiveJvmOptions());
+        params.getConfigProperties().set(container.getConfigProperties());
+        params.getSystemProperties().set(container.getSystemProperties());
+        params.getStartupTimeout().set(container.getStartupTimeout());
+        params.getCassandra4JVMAutoFix().set(container.getCassandra4JVMAutoFix());
+        params.getWarmStart().set(container.getWarmStart());
+        params.getSnapshotCacheDirectory().set(project.getLayout().dir(container.getSnapshotCacheDirectory().map(Path::toFile)));
+        params.getDistributionCacheDirectory().set(project.getLayout().dir(container.getDistributionCacheDirectory().map(Path::toFile)));
+        params.getCqlScripts().from(container.getCqlScripts());
+        params.getRandomPorts().set(container.getRandomPorts());
+        params.getPortLockDirectory().set(project.getLayout().dir(container.getPortLockDirectory().map(Path::toFile)));
+        params.getRamDisk().set(container.getRamDisk());
+        params.getRamDiskDirectory().set(project.getLayout().dir(container.getRamDiskDirectory().map(Path::toFile)));
+        params.getRamDiskRequiredSpace().set(container.getRamDiskRequiredSpace());
+        params.getKeepAlive().set(container.getKeepAlive());
+        params.getClusterLoopbackAliases().set(container.getClusterLoopbackAliases());
+        params.getKeepAliveIdleTimeout().set(container.getKeepAliveIdleTimeout());
+        params.getMetrics().set(container.getMetrics());
+        params.getMetricsInterval().set(container.getMetricsInterval());
+        params.getMetricsThresholds().set(container.getMetricsThresholds());
+        params.getTunedLogging().set(container.getTunedLogging());
+        params.getLogLevel().set(container.getLogLevel());
+        params.getLogTailLines().set(container.getLogTailLines());
+        params.getBackend().set(container.getBackend());
+        params.getRemoteHost().set(container.getRemoteHost());
+        params.getRemotePort().set(container.getRemotePort());
+        params.getShutdownPolicy().set(container.getShutdownPolicy());
+        params.getShutdownTimeout().set(container.getShutdownTimeout());
+        params.getTuningPresets().set(container.getTuningPresets());
+        params.getCqlUsername().set(container.getCqlUsername());
+        params.getCqlPassword().set(container.getCqlPassword());
+        params.getSSTables().from(project.provider(() -> project.getTasks()
+                                                                .withType(GenerateCassandraSSTablesTask.class)
+                                                                .stream()
+                                                                .map(GenerateCassandraSSTablesTask::getOutputDirectory)
+                                                                .collect(Collectors.toList())));
+    }
+
+    private static File getPluginClasses()
+    {
+        try {
+            return new File(CassandraPoolLease.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        }
+        catch (URISyntaxException e) {
+            throw new IllegalStateException("Failed to locate the plugin classes", e);
+        }
     }
 
-    public Cassandra getInstance()
+    private List<String> getTestConsumers(String version)
     {
-        return instance;
+        return List.copyOf(testConsumers.getOrDefault(version, List.of()));
+    }
+
+    // Test tasks of projects which don't apply the plugin have no extension.
+    private static boolean usesCassandra(Task task)
+    {
+        CassandraTestExtension cassandra = task instanceof Test ? task.getExtensions().findByType(CassandraTestExtension.class) : null;
+        return cassandra != null && cassandra.getEnabled().get();
+    }
+
+    private static String getMatrixVersion(Task task)
+    {
+        return task.getExtensions().getByType(CassandraTestExtension.class).getVersion().getOrElse("");
+    }
+
+    public Provider<CassandraBuildService> getService()
+    {
+        return service;
+    }
+
+    private static class TestClientRequired
+            implements Spec<File>
+    {
+
+        private final Provider<Boolean> required;
+
+        TestClientRequired(Provider<Boolean> required)
+        {
+            this.required = required;
+        }
+
+        @Override
+        public boolean isSatisfiedBy(File file)
+        {
+            return required.get();
+        }
+
     }
 
 }
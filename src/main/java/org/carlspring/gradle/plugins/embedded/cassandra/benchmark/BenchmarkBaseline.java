@@ -0,0 +1,100 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.benchmark;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Results of a previous benchmark run (a properties file meant to be committed), which later runs are compared with.
+ * Only the throughput, p50 and p99 are compared - the higher percentiles of a short local run are too noisy to fail a
+ * build on.
+ */
+public class BenchmarkBaseline
+{
+
+    private static final Logger LOGGER = Logging.getLogger(BenchmarkBaseline.class);
+
+    private static final Set<String> COMPARED = Set.of("throughput", "read.p50", "read.p99", "write.p50", "write.p99");
+
+    private final Path file;
+
+    public BenchmarkBaseline(Path file)
+    {
+        this.file = file;
+    }
+
+    public boolean exists()
+    {
+        return Files.isRegularFile(file);
+    }
+
+    public Map<String, Double> load()
+            throws IOException
+    {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            metrics.put(name, Double.parseDouble(properties.getProperty(name)));
+        }
+
+        return metrics;
+    }
+
+    public void save(BenchmarkResult result)
+            throws IOException
+    {
+        Properties properties = new Properties();
+        result.getMetrics().forEach((name, value) -> properties.setProperty(name, String.format(Locale.ROOT, "%.2f", value)));
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            properties.store(writer, "Cassandra benchmark baseline - throughput in ops/s, latencies in microseconds");
+        }
+    }
+
+    /**
+     * @param maxRegression i.e. 0.2 - the throughput may be 20% lower and the latencies 20% higher than the baseline.
+     * @return the regressions (empty when the result is within the tolerance).
+     */
+    public List<String> compare(BenchmarkResult result, double maxRegression)
+            throws IOException
+    {
+        Map<String, Double> baseline = load();
+        List<String> regressions = new ArrayList<>();
+        result.getMetrics().forEach((name, value) -> {
+            Double expected = baseline.get(name);
+            if (expected == null || !COMPARED.contains(name)) {
+                return;
+            }
+
+            boolean regressed = "throughput".equals(name) ? value < expected * (1 - maxRegression) : value > expected * (1 + maxRegression);
+            String change = String.format(Locale.ROOT, "%+.1f%%", expected == 0 ? 0 : (value - expected) / expected * 100);
+            LOGGER.lifecycle(String.format(Locale.ROOT, "  %-12s %12.2f (baseline: %12.2f, %s)", name, value, expected, change));
+            if (regressed) {
+                regressions.add(String.format(Locale.ROOT, "%s is %.2f - %s compared to the baseline %.2f (tolerance: %.0f%%)",
+                                              name, value, change, expected, maxRegression * 100));
+            }
+        });
+
+        return regressions;
+    }
+
+}
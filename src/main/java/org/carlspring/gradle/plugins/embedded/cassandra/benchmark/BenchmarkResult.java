@@ -0,0 +1,187 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Throughput and latency percentiles (in microseconds) of a {@link CassandraBenchmark} run.
+ */
+public class BenchmarkResult
+{
+
+    public static final List<Double> PERCENTILES = List.of(50.0, 90.0, 99.0, 99.9, 99.99);
+
+    private final BenchmarkWorkload workload;
+
+    private final Duration elapsed;
+
+    private final LatencyHistogram reads = new LatencyHistogram();
+
+    private final LatencyHistogram writes = new LatencyHistogram();
+
+    private final Map<String, Long> errorMessages = new LinkedHashMap<>();
+
+    private long errors;
+
+    public BenchmarkResult(BenchmarkWorkload workload, Duration elapsed)
+    {
+        this.workload = workload;
+        this.elapsed = elapsed;
+    }
+
+    public LatencyHistogram getReads()
+    {
+        return reads;
+    }
+
+    public LatencyHistogram getWrites()
+    {
+        return writes;
+    }
+
+    void addErrors(long errors, Map<String, Long> messages)
+    {
+        this.errors += errors;
+        messages.forEach((message, count) -> errorMessages.merge(message, count, Long::sum));
+    }
+
+    public long getErrors()
+    {
+        return errors;
+    }
+
+    /**
+     * @return successful operations per second.
+     */
+    public double getThroughput()
+    {
+        return (reads.getTotalCount() + writes.getTotalCount()) / (elapsed.toNanos() / 1e9);
+    }
+
+    /**
+     * @return the metrics compared with a baseline - {@code throughput} and {@code <read|write>.p<percentile>} in
+     * microseconds (i.e. {@code read.p99}).
+     */
+    public Map<String, Double> getMetrics()
+    {
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        metrics.put("throughput", getThroughput());
+        putPercentiles(metrics, "read", reads);
+        putPercentiles(metrics, "write", writes);
+
+        return metrics;
+    }
+
+    private static void putPercentiles(Map<String, Double> metrics, String operation, LatencyHistogram histogram)
+    {
+        if (histogram.getTotalCount() == 0) {
+            return;
+        }
+
+        for (double percentile : PERCENTILES) {
+            metrics.put(operation + ".p" + formatPercentile(percentile), (double) histogram.getValueAtPercentile(percentile));
+        }
+    }
+
+    /**
+     * Writes {@code benchmark.json}, {@code benchmark.txt} and the percentile distributions ({@code benchmark-read.hgrm},
+     * {@code benchmark-write.hgrm}) in the HdrHistogram format.
+     */
+    public void write(Path reportsDirectory, List<String> regressions)
+            throws IOException
+    {
+        Files.createDirectories(reportsDirectory);
+        Files.writeString(reportsDirectory.resolve("benchmark.json"), toJson(regressions));
+        Files.writeString(reportsDirectory.resolve("benchmark.txt"), toString());
+        if (reads.getTotalCount() > 0) {
+            Files.writeString(reportsDirectory.resolve("benchmark-read.hgrm"), reads.toPercentileDistribution());
+        }
+        if (writes.getTotalCount() > 0) {
+            Files.writeString(reportsDirectory.resolve("benchmark-write.hgrm"), writes.toPercentileDistribution());
+        }
+    }
+
+    private String toJson(List<String> regressions)
+    {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"timestamp\":\"").append(Instant.now()).append('"')
+            .append(",\"workload\":\"").append(escape(workload.toString())).append('"')
+            .append(",\"elapsedMillis\":").append(elapsed.toMillis())
+            .append(",\"throughput\":").append(format(getThroughput()))
+            .append(",\"errors\":").append(errors)
+            .append(",\"read\":").append(toJson(reads))
+            .append(",\"write\":").append(toJson(writes))
+            .append(",\"regressions\":[");
+        for (int i = 0; i < regressions.size(); i++) {
+            json.append(i == 0 ? "" : ",").append('"').append(escape(regressions.get(i))).append('"');
+        }
+
+        return json.append("]}\n").toString();
+    }
+
+    private static String toJson(LatencyHistogram histogram)
+    {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"count\":").append(histogram.getTotalCount())
+            .append(",\"minMicros\":").append(histogram.getMin())
+            .append(",\"meanMicros\":").append(format(histogram.getMean()))
+            .append(",\"maxMicros\":").append(histogram.getMax())
+            .append(",\"percentilesMicros\":{");
+        boolean first = true;
+        for (double percentile : PERCENTILES) {
+            json.append(first ? "" : ",").append("\"p").append(formatPercentile(percentile)).append("\":")
+                .append(histogram.getValueAtPercentile(percentile));
+            first = false;
+        }
+
+        return json.append("}}").toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Workload:   ").append(workload).append('\n');
+        sb.append(String.format(Locale.ROOT, "Throughput: %.0f ops/s (%d reads, %d writes, %d errors in %dms)%n",
+                                getThroughput(), reads.getTotalCount(), writes.getTotalCount(), errors, elapsed.toMillis()));
+        sb.append(String.format(Locale.ROOT, "%-10s %10s %10s", "latency", "read", "write"));
+        sb.append(" (ms)\n");
+        appendRow(sb, "min", reads.getMin(), writes.getMin());
+        appendRow(sb, "mean", reads.getMean(), writes.getMean());
+        for (double percentile : PERCENTILES) {
+            appendRow(sb, "p" + formatPercentile(percentile), reads.getValueAtPercentile(percentile), writes.getValueAtPercentile(percentile));
+        }
+        appendRow(sb, "max", reads.getMax(), writes.getMax());
+        errorMessages.forEach((message, count) -> sb.append("Error (").append(count).append("x): ").append(message).append('\n'));
+
+        return sb.toString();
+    }
+
+    private static void appendRow(StringBuilder sb, String name, double readMicros, double writeMicros)
+    {
+        sb.append(String.format(Locale.ROOT, "%-10s %10.3f %10.3f%n", name, readMicros / 1000, writeMicros / 1000));
+    }
+
+    static String formatPercentile(double percentile)
+    {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+
+    private static String format(double value)
+    {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static String escape(String value)
+    {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+}
@@ -0,0 +1,168 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.benchmark;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What {@link CassandraBenchmark} executes. The first bind variable of the read/write statements is the key (chosen at
+ * random out of {@code keys}), the others get random values of {@code valueSize} (text / blob) matching their type.
+ */
+public class BenchmarkWorkload
+{
+
+    public static final List<String> DEFAULT_SCHEMA = List.of(
+            "CREATE KEYSPACE IF NOT EXISTS benchmark WITH replication = {'class': 'SimpleStrategy', 'replication_factor': 1}",
+            "CREATE TABLE IF NOT EXISTS benchmark.kv (key bigint PRIMARY KEY, value blob)");
+
+    public static final String DEFAULT_WRITE = "INSERT INTO benchmark.kv (key, value) VALUES (?, ?)";
+
+    public static final String DEFAULT_READ = "SELECT value FROM benchmark.kv WHERE key = ?";
+
+    private List<String> schema = new ArrayList<>(DEFAULT_SCHEMA);
+
+    private String writeStatement = DEFAULT_WRITE;
+
+    private String readStatement = DEFAULT_READ;
+
+    private double readRatio = 0.5;
+
+    private int concurrency = 64;
+
+    private int connections = 4;
+
+    private Duration warmup = Duration.ofSeconds(5);
+
+    private Duration duration = Duration.ofSeconds(30);
+
+    private long keys = 100_000;
+
+    private int valueSize = 100;
+
+    public List<String> getSchema()
+    {
+        return schema;
+    }
+
+    public BenchmarkWorkload schema(List<String> schema)
+    {
+        this.schema = schema;
+        return this;
+    }
+
+    public String getWriteStatement()
+    {
+        return writeStatement;
+    }
+
+    public BenchmarkWorkload writeStatement(String writeStatement)
+    {
+        this.writeStatement = writeStatement;
+        return this;
+    }
+
+    public String getReadStatement()
+    {
+        return readStatement;
+    }
+
+    public BenchmarkWorkload readStatement(String readStatement)
+    {
+        this.readStatement = readStatement;
+        return this;
+    }
+
+    /**
+     * @return the share of reads (0.0 - writes only, 1.0 - reads only).
+     */
+    public double getReadRatio()
+    {
+        return readRatio;
+    }
+
+    public BenchmarkWorkload readRatio(double readRatio)
+    {
+        if (readRatio < 0 || readRatio > 1) {
+            throw new IllegalArgumentException("The read ratio has to be between 0.0 and 1.0 - got " + readRatio);
+        }
+        this.readRatio = readRatio;
+        return this;
+    }
+
+    /**
+     * @return the number of requests in flight (over all connections).
+     */
+    public int getConcurrency()
+    {
+        return concurrency;
+    }
+
+    public BenchmarkWorkload concurrency(int concurrency)
+    {
+        this.concurrency = Math.max(1, concurrency);
+        return this;
+    }
+
+    public int getConnections()
+    {
+        return connections;
+    }
+
+    public BenchmarkWorkload connections(int connections)
+    {
+        this.connections = Math.max(1, connections);
+        return this;
+    }
+
+    public Duration getWarmup()
+    {
+        return warmup;
+    }
+
+    public BenchmarkWorkload warmup(Duration warmup)
+    {
+        this.warmup = warmup;
+        return this;
+    }
+
+    public Duration getDuration()
+    {
+        return duration;
+    }
+
+    public BenchmarkWorkload duration(Duration duration)
+    {
+        this.duration = duration;
+        return this;
+    }
+
+    public long getKeys()
+    {
+        return keys;
+    }
+
+    public BenchmarkWorkload keys(long keys)
+    {
+        this.keys = Math.max(1, keys);
+        return this;
+    }
+
+    public int getValueSize()
+    {
+        return valueSize;
+    }
+
+    public BenchmarkWorkload valueSize(int valueSize)
+    {
+        this.valueSize = Math.max(0, valueSize);
+        return this;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "reads: " + Math.round(readRatio * 100) + "%, concurrency: " + concurrency + " (" + connections + " connections), keys: " +
+               keys + ", value size: " + valueSize + "B, warmup: " + warmup + ", duration: " + duration;
+    }
+
+}
@@ -0,0 +1,347 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.benchmark;
+
+import org.carlspring.gradle.plugins.embedded.cassandra.cql.CqlConnection;
+import org.carlspring.gradle.plugins.embedded.cassandra.cql.CqlException;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraCoordinates;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Closed loop CQL benchmark - every connection keeps its share of {@code concurrency} requests in flight (pipelined
+ * prepared statements), so the throughput is limited by Cassandra and not by round trips. Runs in three phases:
+ * <ol>
+ *     <li>preload - writes every key once, so reads hit data (only when the workload reads)</li>
+ *     <li>warmup - the workload, not measured (JIT, caches, memtables)</li>
+ *     <li>measurement - the workload, latencies are recorded from sending a request until its response</li>
+ * </ol>
+ */
+public class CassandraBenchmark
+{
+
+    private static final Logger LOGGER = Logging.getLogger(CassandraBenchmark.class);
+
+    private static final int MAX_ERROR_MESSAGES = 10;
+
+    private final CassandraCoordinates instance;
+
+    private final String username;
+
+    private final String password;
+
+    public CassandraBenchmark(CassandraCoordinates instance, String username, String password)
+    {
+        this.instance = instance;
+        this.username = username;
+        this.password = password;
+    }
+
+    public BenchmarkResult run(BenchmarkWorkload workload)
+            throws IOException
+    {
+        try (CqlConnection connection = open()) {
+            for (String statement : workload.getSchema()) {
+                connection.execute(statement);
+            }
+            if (!connection.awaitSchemaAgreement(Duration.ofSeconds(30))) {
+                LOGGER.warn("Schema agreement has not been reached within 30s");
+            }
+        }
+
+        List<Worker> workers = new ArrayList<>();
+        // One thread per connection - the workers block on their sockets, so they can't share a (common) pool.
+        ExecutorService executor = Executors.newFixedThreadPool(workload.getConnections(), runnable -> {
+            Thread thread = new Thread(runnable, "embedded-cassandra-benchmark");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // Stream ids are 16 bit.
+            int window = Math.min(Short.MAX_VALUE - 1, (int) Math.ceil((double) workload.getConcurrency() / workload.getConnections()));
+            for (int i = 0; i < workload.getConnections(); i++) {
+                CqlConnection connection = open();
+                try {
+                    workers.add(new Worker(connection, workload, window, i));
+                }
+                catch (IOException | RuntimeException e) {
+                    connection.close();
+                    throw e;
+                }
+            }
+
+            if (workload.getReadRatio() > 0) {
+                AtomicLong next = new AtomicLong();
+                long start = System.nanoTime();
+                runPhase(executor, workers, worker -> worker.preload(next));
+                LOGGER.lifecycle("Preloaded " + workload.getKeys() + " keys in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+            }
+
+            if (!workload.getWarmup().isZero()) {
+                long deadline = System.nanoTime() + workload.getWarmup().toNanos();
+                runPhase(executor, workers, worker -> worker.run(deadline, false));
+            }
+
+            long start = System.nanoTime();
+            long deadline = start + workload.getDuration().toNanos();
+            runPhase(executor, workers, worker -> worker.run(deadline, true));
+            long elapsed = System.nanoTime() - start;
+
+            BenchmarkResult result = new BenchmarkResult(workload, Duration.ofNanos(elapsed));
+            for (Worker worker : workers) {
+                result.getReads().add(worker.reads);
+                result.getWrites().add(worker.writes);
+                result.addErrors(worker.errors, worker.errorMessages);
+            }
+
+            return result;
+        }
+        finally {
+            executor.shutdownNow();
+            for (Worker worker : workers) {
+                worker.connection.close();
+            }
+        }
+    }
+
+    private CqlConnection open()
+            throws IOException
+    {
+        return CqlConnection.open(instance.getHost(), instance.getNativeTransportPort(), username, password);
+    }
+
+    private static void runPhase(ExecutorService executor, List<Worker> workers, WorkerPhase phase)
+            throws IOException
+    {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Worker worker : workers) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    phase.run(worker);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor));
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private interface WorkerPhase
+    {
+
+        void run(Worker worker)
+                throws IOException;
+
+    }
+
+    /**
+     * A connection with its own histograms - nothing is shared between the workers while the benchmark runs.
+     */
+    private static class Worker
+    {
+
+        private final CqlConnection connection;
+
+        private final CqlConnection.PreparedStatement read;
+
+        private final CqlConnection.PreparedStatement write;
+
+        private final BenchmarkWorkload workload;
+
+        private final int window;
+
+        private final Random random;
+
+        private final long[] sentAt = new long[Short.MAX_VALUE + 1];
+
+        private final boolean[] isRead = new boolean[Short.MAX_VALUE + 1];
+
+        private final LatencyHistogram reads = new LatencyHistogram();
+
+        private final LatencyHistogram writes = new LatencyHistogram();
+
+        private long errors;
+
+        private final Map<String, Long> errorMessages = new LinkedHashMap<>();
+
+        private Worker(CqlConnection connection, BenchmarkWorkload workload, int window, int seed)
+                throws IOException
+        {
+            this.connection = connection;
+            this.workload = workload;
+            this.window = window;
+            this.random = new Random(seed);
+            this.read = workload.getReadRatio() > 0 ? connection.prepare(workload.getReadStatement()) : null;
+            // Also used to preload the keys for read only workloads.
+            this.write = connection.prepare(workload.getWriteStatement());
+        }
+
+        private void preload(AtomicLong next)
+                throws IOException
+        {
+            int inFlight = 0;
+            long key;
+            while (true) {
+                while (inFlight < window && (key = next.getAndIncrement()) < workload.getKeys()) {
+                    connection.submit(write, bind(write, key));
+                    inFlight++;
+                }
+                connection.flush();
+                if (inFlight == 0) {
+                    return;
+                }
+
+                complete(false);
+                inFlight--;
+            }
+        }
+
+        private void run(long deadline, boolean measure)
+                throws IOException
+        {
+            LongSupplier keys = () -> (long) (random.nextDouble() * workload.getKeys());
+            int inFlight = 0;
+            while (true) {
+                while (inFlight < window && System.nanoTime() < deadline) {
+                    boolean isReadRequest = random.nextDouble() < workload.getReadRatio();
+                    CqlConnection.PreparedStatement statement = isReadRequest ? read : write;
+                    List<byte[]> values = bind(statement, keys.getAsLong());
+
+                    int streamId = connection.submit(statement, values);
+                    sentAt[streamId] = System.nanoTime();
+                    isRead[streamId] = isReadRequest;
+                    inFlight++;
+                }
+                connection.flush();
+                if (inFlight == 0) {
+                    return;
+                }
+
+                complete(measure);
+                inFlight--;
+            }
+        }
+
+        private void complete(boolean measure)
+                throws IOException
+        {
+            CqlConnection.Response response = connection.next();
+            if (response.getError() != null) {
+                errors++;
+                if (errorMessages.size() < MAX_ERROR_MESSAGES || errorMessages.containsKey(response.getError())) {
+                    errorMessages.merge(response.getError(), 1L, Long::sum);
+                }
+            }
+            else if (measure) {
+                long micros = (System.nanoTime() - sentAt[response.getStreamId()]) / 1000;
+                (isRead[response.getStreamId()] ? reads : writes).record(micros);
+            }
+        }
+
+        private List<byte[]> bind(CqlConnection.PreparedStatement statement, long key)
+        {
+            List<Integer> types = statement.getTypes();
+            List<byte[]> values = new ArrayList<>(types.size());
+            for (int i = 0; i < types.size(); i++) {
+                values.add(i == 0 ? key(types.get(i), key, statement) : value(types.get(i), statement));
+            }
+
+            return values;
+        }
+
+        private static byte[] key(int type, long key, CqlConnection.PreparedStatement statement)
+        {
+            switch (type) {
+                case 0x0001: // ascii
+                case 0x000A: // text
+                case 0x000D: // varchar
+                    return ("key-" + key).getBytes(StandardCharsets.UTF_8);
+                case 0x0002: // bigint
+                case 0x0003: // blob
+                case 0x000B: // timestamp
+                    return ByteBuffer.allocate(8).putLong(key).array();
+                case 0x0009: // int
+                    return ByteBuffer.allocate(4).putInt((int) key).array();
+                case 0x000C: // uuid
+                    return ByteBuffer.allocate(16).putLong(0).putLong(key).array();
+                default:
+                    throw unsupported(type, statement);
+            }
+        }
+
+        private byte[] value(int type, CqlConnection.PreparedStatement statement)
+        {
+            switch (type) {
+                case 0x0001: // ascii
+                case 0x000A: // text
+                case 0x000D: // varchar
+                    StringBuilder sb = new StringBuilder(workload.getValueSize());
+                    for (int i = 0; i < workload.getValueSize(); i++) {
+                        sb.append((char) ('a' + random.nextInt(26)));
+                    }
+                    return sb.toString().getBytes(StandardCharsets.US_ASCII);
+                case 0x0003: // blob
+                    byte[] bytes = new byte[workload.getValueSize()];
+                    random.nextBytes(bytes);
+                    return bytes;
+                case 0x0002: // bigint
+                case 0x0005: // counter
+                    return ByteBuffer.allocate(8).putLong(random.nextLong()).array();
+                case 0x000B: // timestamp
+                    return ByteBuffer.allocate(8).putLong(System.currentTimeMillis()).array();
+                case 0x0009: // int
+                    return ByteBuffer.allocate(4).putInt(random.nextInt()).array();
+                case 0x0013: // smallint
+                    return ByteBuffer.allocate(2).putShort((short) random.nextInt()).array();
+                case 0x0014: // tinyint
+                    return new byte[]{ (byte) random.nextInt() };
+                case 0x0004: // boolean
+                    return new byte[]{ (byte) (random.nextBoolean() ? 1 : 0) };
+                case 0x0007: // double
+                    return ByteBuffer.allocate(8).putDouble(random.nextDouble()).array();
+                case 0x0008: // float
+                    return ByteBuffer.allocate(4).putFloat(random.nextFloat()).array();
+                case 0x000C: // uuid
+                    return ByteBuffer.allocate(16).putLong(random.nextLong()).putLong(random.nextLong()).array();
+                default:
+                    throw unsupported(type, statement);
+            }
+        }
+
+        private static CqlException unsupported(int type, CqlConnection.PreparedStatement statement)
+        {
+            return new CqlException(statement.getStatement() + " -> bind variables of type 0x" + Integer.toHexString(type) +
+                                    " are not supported by the benchmark");
+        }
+
+    }
+
+}
@@ -0,0 +1,195 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.benchmark;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Latency histogram (in microseconds) with the bucketing of HdrHistogram at 3 significant digits - values up to 2048 are
+ * recorded exactly, larger ones in buckets of 1024 linear sub-buckets per power of two, so every percentile is accurate to
+ * 0.1%. Recording is allocation free and the memory is fixed, regardless of the number of values.
+ * <p>
+ * Not thread safe - every connection records into its own histogram and the histograms are {@link #add(LatencyHistogram)
+ * merged} afterwards.
+ */
+public class LatencyHistogram
+{
+
+    private static final int SUB_BUCKETS = 2048;
+
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+    private static final int SUB_BUCKET_BITS = 11;
+
+    /**
+     * Larger values (~12 days) are recorded as this.
+     */
+    private static final long MAX_VALUE = (1L << 40) - 1;
+
+    private static final int MAX_SHIFT = 40 - SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[SUB_BUCKETS + MAX_SHIFT * HALF_SUB_BUCKETS];
+
+    private long totalCount;
+
+    private long min = Long.MAX_VALUE;
+
+    private long max;
+
+    private double sum;
+
+    private double sumOfSquares;
+
+    public void record(long micros)
+    {
+        long value = Math.min(Math.max(0, micros), MAX_VALUE);
+        counts[index(value)]++;
+        totalCount++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        sum += value;
+        sumOfSquares += (double) value * value;
+    }
+
+    public void add(LatencyHistogram other)
+    {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sum += other.sum;
+        sumOfSquares += other.sumOfSquares;
+    }
+
+    public void reset()
+    {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+        sum = 0;
+        sumOfSquares = 0;
+    }
+
+    public long getTotalCount()
+    {
+        return totalCount;
+    }
+
+    public long getMin()
+    {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax()
+    {
+        return max;
+    }
+
+    public double getMean()
+    {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    public double getStdDeviation()
+    {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        double mean = getMean();
+        return Math.sqrt(Math.max(0, sumOfSquares / totalCount - mean * mean));
+    }
+
+    /**
+     * @param percentile i.e. 99.9
+     * @return the highest value equivalent to the value at the percentile (like HdrHistogram's getValueAtPercentile).
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        // Shaved by a relative epsilon, so the rounding error of i.e. 99.9 / 100 * 1000 (999.0000000000001) does not
+        // move the target to the next count.
+        long target = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * totalCount * (1 - 1e-12)));
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= target) {
+                return Math.min(max, highestEquivalentValue(i));
+            }
+        }
+
+        return max;
+    }
+
+    /**
+     * Writes the percentile distribution in the text format of HdrHistogram's outputPercentileDistribution (values in
+     * milliseconds), so it can be plotted with the usual HdrHistogram tooling.
+     */
+    public String toPercentileDistribution()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%12s %14s %10s %14s%n%n", "Value", "Percentile", "TotalCount", "1/(1-Percentile)"));
+
+        long cumulative = 0;
+        double nextPercentile = 0;
+        for (int i = 0; i < counts.length && totalCount > 0; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+
+            cumulative += counts[i];
+            double percentile = 100.0 * cumulative / totalCount;
+            if (percentile < nextPercentile && cumulative < totalCount) {
+                continue;
+            }
+
+            if (cumulative == totalCount) {
+                sb.append(String.format(Locale.ROOT, "%12.3f %2.12f %10d%n", max / 1000.0, 1.0, cumulative));
+                break;
+            }
+
+            double fraction = percentile / 100;
+            sb.append(String.format(Locale.ROOT, "%12.3f %2.12f %10d %14.2f%n",
+                                    Math.min(max, highestEquivalentValue(i)) / 1000.0, fraction, cumulative, 1 / (1 - fraction)));
+
+            // 5 ticks per halving of the remaining distance to 100% (like HdrHistogram's default).
+            while (nextPercentile <= percentile) {
+                long ticks = 5L << ((long) (Math.log(100.0 / (100.0 - nextPercentile)) / Math.log(2)) + 1);
+                nextPercentile += 100.0 / ticks;
+            }
+        }
+
+        sb.append(String.format(Locale.ROOT, "#[Mean    = %12.3f, StdDeviation   = %12.3f]%n", getMean() / 1000, getStdDeviation() / 1000));
+        sb.append(String.format(Locale.ROOT, "#[Max     = %12.3f, Total count    = %12d]%n", max / 1000.0, totalCount));
+        sb.append(String.format(Locale.ROOT, "#[Buckets = %12d, SubBuckets     = %12d]%n", MAX_SHIFT + 1, SUB_BUCKETS));
+
+        return sb.toString();
+    }
+
+    static int index(long value)
+    {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) ((value >> shift) - HALF_SUB_BUCKETS);
+    }
+
+    static long highestEquivalentValue(int index)
+    {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+}
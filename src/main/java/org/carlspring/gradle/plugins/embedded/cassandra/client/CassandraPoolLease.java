@@ -0,0 +1,98 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.client;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+/**
+ * Leases one of the pooled Cassandra instances for the current (test) JVM.
+ * <p>
+ * This class is added to the classpath of {@code Test} tasks when {@code poolSize > 1} and has no dependencies apart
+ * from the JDK. The lease is an exclusive lock on a file in the pool's leases directory which is held until the JVM
+ * exits, so every fork ends up with a different instance. After leasing, the {@code cassandra.pool.<index>.*} system
+ * properties of the leased instance are also exposed as {@code cassandra.*} (i.e. {@code cassandra.native.transport.port}).
+ */
+public final class CassandraPoolLease
+{
+
+    public static final String POOL_PREFIX = "cassandra.pool.";
+
+    public static final String POOL_SIZE = POOL_PREFIX + "size";
+
+    public static final String LEASES_DIRECTORY = POOL_PREFIX + "leases";
+
+    private static Integer leased;
+
+    private static FileLock lock;
+
+    private CassandraPoolLease()
+    {
+    }
+
+    /**
+     * @return the index of the leased instance.
+     */
+    public static synchronized int lease()
+    {
+        if (leased != null) {
+            return leased;
+        }
+
+        int size = Integer.getInteger(POOL_SIZE, 0);
+        String directory = System.getProperty(LEASES_DIRECTORY);
+        if (size <= 0 || directory == null) {
+            throw new IllegalStateException("No Cassandra pool available - is poolSize configured and startCassandra executed?");
+        }
+
+        for (int i = 0; i < size; i++) {
+            FileLock candidate = tryLock(Path.of(directory).resolve(i + ".lock"));
+            if (candidate != null) {
+                lock = candidate;
+                leased = i;
+                exportCoordinates(i);
+
+                return i;
+            }
+        }
+
+        throw new IllegalStateException("All " + size + " Cassandra instances are already leased - maxParallelForks should not exceed poolSize.");
+    }
+
+    public static synchronized Integer getLeased()
+    {
+        return leased;
+    }
+
+    private static FileLock tryLock(Path file)
+    {
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock candidate = channel.tryLock();
+            if (candidate == null) {
+                channel.close();
+            }
+
+            // The channel (and the lock) is intentionally kept open until the JVM exits.
+            return candidate;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void exportCoordinates(int index)
+    {
+        String prefix = POOL_PREFIX + index + ".";
+        Properties properties = System.getProperties();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(prefix)) {
+                properties.setProperty("cassandra." + name.substring(prefix.length()), properties.getProperty(name));
+            }
+        }
+    }
+
+}
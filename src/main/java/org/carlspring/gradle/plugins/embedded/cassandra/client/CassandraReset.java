@@ -0,0 +1,230 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.client;
+
+import org.carlspring.gradle.plugins.embedded.cassandra.cql.CqlConnection;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Resets the state of a running instance between tests - much faster than restarting it.
+ * <p>
+ * Like {@link CassandraPoolLease}, this class is available on the test runtime classpath (with {@code testClient = true}
+ * or {@code poolSize > 1}) and only depends on the JDK. {@link #fromSystemProperties()} uses the {@code cassandra.*}
+ * system properties passed to test forks by the plugin.
+ */
+public class CassandraReset
+{
+
+    public static final Set<String> SYSTEM_KEYSPACES = Set.of("system",
+                                                              "system_auth",
+                                                              "system_schema",
+                                                              "system_distributed",
+                                                              "system_traces",
+                                                              "system_views",
+                                                              "system_virtual_schema");
+
+    private static final int PIPELINE_WINDOW = 64;
+
+    private final String host;
+
+    private final int port;
+
+    private final String username;
+
+    private final String password;
+
+    private final Path workingDirectory;
+
+    private final int jmxPort;
+
+    public CassandraReset(String host, int port, String username, String password, Path workingDirectory, int jmxPort)
+    {
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.workingDirectory = workingDirectory;
+        this.jmxPort = jmxPort;
+    }
+
+    public static CassandraReset fromSystemProperties()
+    {
+        return new CassandraReset(System.getProperty("cassandra.host", "127.0.0.1"),
+                                  Integer.getInteger("cassandra.native.transport.port", 9042),
+                                  System.getProperty("cassandra.username", "cassandra"),
+                                  System.getProperty("cassandra.password", "cassandra"),
+                                  Path.of(System.getProperty("cassandra.working.directory", ".")),
+                                  Integer.getInteger("cassandra.jmx.port", 7199));
+    }
+
+    /**
+     * Truncates all tables in all non-system keyspaces. Set {@code auto_snapshot: false} to avoid a snapshot for every
+     * truncated table.
+     */
+    public void truncateAll()
+    {
+        withConnection(connection -> {
+            List<String> statements = new ArrayList<>();
+            for (String[] table : listTables(connection)) {
+                statements.add("TRUNCATE " + quote(table[0]) + "." + quote(table[1]));
+            }
+            connection.executePipelined(statements, PIPELINE_WINDOW);
+        });
+    }
+
+    /**
+     * Drops all non-system keyspaces.
+     */
+    public void dropAll()
+    {
+        withConnection(connection -> {
+            for (String keyspace : listTables(connection).stream().map(t -> t[0]).collect(Collectors.toCollection(TreeSet::new))) {
+                connection.execute("DROP KEYSPACE IF EXISTS " + quote(keyspace));
+            }
+        });
+    }
+
+    /**
+     * Takes a snapshot (hard links of the SSTables) of all non-system keyspaces with {@code nodetool snapshot}.
+     */
+    public void snapshot(String name)
+    {
+        List<String> keyspaces = new ArrayList<>();
+        withConnection(connection -> listTables(connection).stream().map(t -> t[0]).distinct().forEach(keyspaces::add));
+        if (keyspaces.isEmpty()) {
+            return;
+        }
+
+        List<String> args = new ArrayList<>(List.of("snapshot", "-t", name));
+        args.addAll(keyspaces);
+        nodetool(args);
+    }
+
+    /**
+     * Restores a snapshot taken with {@link #snapshot(String)}: every table is truncated, the files of the snapshot are
+     * copied back into the table directory and loaded with {@code nodetool refresh}.
+     */
+    public void restoreSnapshot(String name)
+    {
+        List<String[]> tables = new ArrayList<>();
+        withConnection(connection -> {
+            tables.addAll(listTables(connection));
+            List<String> statements = new ArrayList<>();
+            for (String[] table : tables) {
+                statements.add("TRUNCATE " + quote(table[0]) + "." + quote(table[1]));
+            }
+            connection.executePipelined(statements, PIPELINE_WINDOW);
+        });
+
+        for (String[] table : tables) {
+            Path snapshot = findSnapshot(table[0], table[1], name);
+            if (snapshot == null) {
+                continue;
+            }
+
+            try (Stream<Path> files = Files.list(snapshot)) {
+                Path tableDirectory = snapshot.getParent().getParent();
+                for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                    Files.copy(file, tableDirectory.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            nodetool(List.of("refresh", table[0], table[1]));
+        }
+    }
+
+    private Path findSnapshot(String keyspace, String table, String name)
+    {
+        Path keyspaceDirectory = workingDirectory.resolve("data/data").resolve(keyspace);
+        if (!Files.isDirectory(keyspaceDirectory)) {
+            return null;
+        }
+
+        try (Stream<Path> directories = Files.list(keyspaceDirectory)) {
+            return directories.filter(d -> d.getFileName().toString().startsWith(table + "-"))
+                              .map(d -> d.resolve("snapshots").resolve(name))
+                              .filter(Files::isDirectory)
+                              .findFirst()
+                              .orElse(null);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void nodetool(List<String> args)
+    {
+        boolean windows = System.getProperty("os.name").toLowerCase().contains("win");
+        List<String> command = new ArrayList<>();
+        command.add(workingDirectory.resolve(windows ? "bin/nodetool.bat" : "bin/nodetool").toString());
+        command.addAll(List.of("-h", host, "-p", String.valueOf(jmxPort)));
+        command.addAll(args);
+
+        try {
+            Process process = new ProcessBuilder(command).directory(workingDirectory.toFile()).redirectErrorStream(true).start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            if (process.waitFor() != 0) {
+                throw new IllegalStateException("nodetool " + String.join(" ", args) + " failed:\n" + output);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while executing nodetool " + String.join(" ", args), e);
+        }
+    }
+
+    private static List<String[]> listTables(CqlConnection connection)
+            throws IOException
+    {
+        List<String[]> tables = new ArrayList<>();
+        for (List<byte[]> row : connection.query("SELECT keyspace_name, table_name FROM system_schema.tables")) {
+            String keyspace = new String(row.get(0), StandardCharsets.UTF_8);
+            if (!SYSTEM_KEYSPACES.contains(keyspace)) {
+                tables.add(new String[]{ keyspace, new String(row.get(1), StandardCharsets.UTF_8) });
+            }
+        }
+
+        return tables;
+    }
+
+    private static String quote(String identifier)
+    {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    private void withConnection(ConnectionCallback callback)
+    {
+        try (CqlConnection connection = CqlConnection.open(host, port, username, password)) {
+            callback.execute(connection);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionCallback
+    {
+
+        void execute(CqlConnection connection)
+                throws IOException;
+
+    }
+
+}
@@ -0,0 +1,595 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.cql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Minimal, dependency free, CQL native protocol (v4) connection - just enough to execute scripts against the embedded
+ * instance without dragging a driver (and its dependencies) into the Gradle classpath.
+ * <p>
+ * Statements are executed with consistency ONE. Multiple requests can be in flight on the connection at the same time
+ * (pipelining), responses are matched by their stream id. Queries carry a client timestamp which increases with every
+ * query, so writes keep the order in which they were sent.
+ */
+public class CqlConnection
+        implements AutoCloseable
+{
+
+    private static final byte VERSION = 0x04;
+
+    private static final byte OPCODE_ERROR = 0x00;
+
+    private static final byte OPCODE_STARTUP = 0x01;
+
+    private static final byte OPCODE_READY = 0x02;
+
+    private static final byte OPCODE_AUTHENTICATE = 0x03;
+
+    private static final byte OPCODE_QUERY = 0x07;
+
+    private static final byte OPCODE_RESULT = 0x08;
+
+    private static final byte OPCODE_PREPARE = 0x09;
+
+    private static final byte OPCODE_EXECUTE = 0x0A;
+
+    private static final byte OPCODE_AUTH_RESPONSE = 0x0F;
+
+    private static final byte OPCODE_AUTH_SUCCESS = 0x10;
+
+    private static final int RESULT_ROWS = 0x0002;
+
+    private static final int RESULT_PREPARED = 0x0004;
+
+    private static final short CONSISTENCY_ONE = 0x0001;
+
+    private static final byte FLAG_DEFAULT_TIMESTAMP = 0x20;
+
+    private static final int MAX_STREAM_ID = Short.MAX_VALUE;
+
+    private final Socket socket;
+
+    private final DataOutputStream out;
+
+    private final DataInputStream in;
+
+    private int nextStreamId = 0;
+
+    private long lastTimestamp = 0;
+
+    private CqlConnection(Socket socket)
+            throws IOException
+    {
+        this.socket = socket;
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    }
+
+    public static CqlConnection open(String host, int port, String username, String password)
+            throws IOException
+    {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), 5000);
+        socket.setTcpNoDelay(true);
+
+        CqlConnection connection = new CqlConnection(socket);
+        try {
+            connection.startup(username, password);
+        }
+        catch (IOException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+
+        return connection;
+    }
+
+    private void startup(String username, String password)
+            throws IOException
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream options = new DataOutputStream(body);
+        options.writeShort(1);
+        writeString(options, "CQL_VERSION");
+        writeString(options, "3.0.0");
+
+        Frame response = request(OPCODE_STARTUP, body.toByteArray());
+        if (response.opcode == OPCODE_AUTHENTICATE) {
+            // SASL PLAIN: \0username\0password
+            byte[] token = ("\0" + username + "\0" + password).getBytes(StandardCharsets.UTF_8);
+            ByteBuffer auth = ByteBuffer.allocate(4 + token.length).putInt(token.length).put(token);
+            response = request(OPCODE_AUTH_RESPONSE, auth.array());
+            if (response.opcode != OPCODE_AUTH_SUCCESS) {
+                throw error("Authentication failed", response);
+            }
+        }
+        else if (response.opcode != OPCODE_READY) {
+            throw error("Unexpected STARTUP response", response);
+        }
+    }
+
+    /**
+     * Executes a single statement and waits for the result.
+     */
+    public void execute(String statement)
+            throws IOException
+    {
+        Frame response = request(OPCODE_QUERY, queryFrame(statement));
+        if (response.opcode != OPCODE_RESULT) {
+            throw error(statement, response);
+        }
+    }
+
+    /**
+     * Executes the statements keeping up to {@code window} requests in flight. The server may execute in-flight requests
+     * in any order - writes to the same row still resolve in the order of the statements (see {@link #nextTimestamp()}),
+     * but a statement must not read what an earlier one of the same call writes (i.e. lightweight transactions).
+     */
+    public void executePipelined(List<String> statements, int window)
+            throws IOException
+    {
+        Map<Integer, String> inFlight = new HashMap<>();
+        CqlException failure = null;
+
+        for (String statement : statements) {
+            if (inFlight.size() >= window) {
+                out.flush();
+                failure = complete(inFlight, failure);
+            }
+
+            int streamId = nextStreamId();
+            write(streamId, OPCODE_QUERY, queryFrame(statement));
+            inFlight.put(streamId, statement);
+        }
+
+        out.flush();
+        while (!inFlight.isEmpty()) {
+            failure = complete(inFlight, failure);
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private CqlException complete(Map<Integer, String> inFlight, CqlException failure)
+            throws IOException
+    {
+        Frame response = read();
+        String statement = inFlight.remove(response.streamId);
+        if (response.opcode != OPCODE_RESULT && failure == null) {
+            // Keep draining the connection - the first failure is reported once everything has completed.
+            return error(statement, response);
+        }
+
+        return failure;
+    }
+
+    /**
+     * Prepares a statement whose bind variables are of simple (non-collection) types.
+     */
+    public PreparedStatement prepare(String statement)
+            throws IOException
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream prepare = new DataOutputStream(body);
+        byte[] cql = statement.getBytes(StandardCharsets.UTF_8);
+        prepare.writeInt(cql.length);
+        prepare.write(cql);
+
+        Frame response = request(OPCODE_PREPARE, body.toByteArray());
+        ByteBuffer result = ByteBuffer.wrap(response.body);
+        if (response.opcode != OPCODE_RESULT || result.getInt() != RESULT_PREPARED) {
+            throw error(statement, response);
+        }
+
+        byte[] id = new byte[result.getShort() & 0xFFFF];
+        result.get(id);
+
+        int flags = result.getInt();
+        int columns = result.getInt();
+        int partitionKeys = result.getInt();
+        for (int i = 0; i < partitionKeys; i++) {
+            result.getShort();
+        }
+        boolean globalTableSpec = (flags & 0x0001) != 0;
+        if (globalTableSpec) {
+            skipString(result);
+            skipString(result);
+        }
+        List<Integer> types = new ArrayList<>();
+        for (int i = 0; i < columns; i++) {
+            if (!globalTableSpec) {
+                skipString(result);
+                skipString(result);
+            }
+            skipString(result);
+            int type = result.getShort();
+            if (type == 0x0000 || type >= 0x0020) {
+                throw new CqlException(statement + " -> only simple types are supported as bind variables");
+            }
+            types.add(type);
+        }
+
+        return new PreparedStatement(statement, id, types);
+    }
+
+    /**
+     * Sends the execution of a prepared statement without waiting for the response - the request is buffered until
+     * {@link #flush()} and its response is returned by {@link #next()}. Up to 32767 requests can be in flight.
+     *
+     * @param values serialized bind values (null for null).
+     * @return the stream id of the request.
+     */
+    public int submit(PreparedStatement statement, List<byte[]> values)
+            throws IOException
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream execute = new DataOutputStream(body);
+        execute.writeShort(statement.id.length);
+        execute.write(statement.id);
+        execute.writeShort(CONSISTENCY_ONE);
+        execute.writeByte(values.isEmpty() ? 0 : 0x01);
+        if (!values.isEmpty()) {
+            execute.writeShort(values.size());
+            for (byte[] value : values) {
+                if (value == null) {
+                    execute.writeInt(-1);
+                }
+                else {
+                    execute.writeInt(value.length);
+                    execute.write(value);
+                }
+            }
+        }
+
+        int streamId = nextStreamId();
+        write(streamId, OPCODE_EXECUTE, body.toByteArray());
+
+        return streamId;
+    }
+
+    public void flush()
+            throws IOException
+    {
+        out.flush();
+    }
+
+    /**
+     * Waits for the next response of a {@link #submit(PreparedStatement, List) submitted} request.
+     */
+    public Response next()
+            throws IOException
+    {
+        Frame response = read();
+        String error = null;
+        if (response.opcode != OPCODE_RESULT) {
+            error = errorMessage(response);
+        }
+
+        return new Response(response.streamId, error);
+    }
+
+    /**
+     * Executes a query returning rows of simple (non-collection) columns.
+     *
+     * @return the raw cell values of each row.
+     */
+    public List<List<byte[]>> query(String statement)
+            throws IOException
+    {
+        Frame response = request(OPCODE_QUERY, queryFrame(statement));
+        if (response.opcode != OPCODE_RESULT) {
+            throw error(statement, response);
+        }
+
+        ByteBuffer body = ByteBuffer.wrap(response.body);
+        List<List<byte[]>> rows = new ArrayList<>();
+        if (body.getInt() != RESULT_ROWS) {
+            return rows;
+        }
+
+        int flags = body.getInt();
+        int columns = body.getInt();
+        if ((flags & 0x0002) != 0) {
+            // paging state
+            skipBytes(body);
+        }
+        boolean globalTableSpec = (flags & 0x0001) != 0;
+        if (globalTableSpec) {
+            skipString(body);
+            skipString(body);
+        }
+        for (int i = 0; i < columns; i++) {
+            if (!globalTableSpec) {
+                skipString(body);
+                skipString(body);
+            }
+            skipString(body);
+            // simple types only - i.e. uuid, text, int
+            body.getShort();
+        }
+
+        int count = body.getInt();
+        for (int r = 0; r < count; r++) {
+            List<byte[]> row = new ArrayList<>();
+            for (int c = 0; c < columns; c++) {
+                int length = body.getInt();
+                byte[] value = null;
+                if (length >= 0) {
+                    value = new byte[length];
+                    body.get(value);
+                }
+                row.add(value);
+            }
+            rows.add(row);
+        }
+
+        return rows;
+    }
+
+    /**
+     * Waits until the local node and all of its peers report the same schema version.
+     *
+     * @return true when the schema is in agreement.
+     */
+    public boolean awaitSchemaAgreement(Duration timeout)
+            throws IOException
+    {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            Set<String> versions = new HashSet<>();
+            for (List<byte[]> row : query("SELECT schema_version FROM system.local")) {
+                versions.add(toHex(row.get(0)));
+            }
+            for (List<byte[]> row : query("SELECT schema_version FROM system.peers")) {
+                if (row.get(0) != null) {
+                    versions.add(toHex(row.get(0)));
+                }
+            }
+
+            if (versions.size() <= 1) {
+                return true;
+            }
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+
+            try {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        socket.close();
+    }
+
+    private Frame request(byte opcode, byte[] body)
+            throws IOException
+    {
+        int streamId = nextStreamId();
+        write(streamId, opcode, body);
+        out.flush();
+
+        Frame response;
+        do {
+            response = read();
+        }
+        while (response.streamId != streamId);
+
+        return response;
+    }
+
+    /**
+     * Client timestamp (in microseconds) of the next query - strictly increasing, so of two writes to the same cell the
+     * later statement wins, even when both are in flight and the server executes them out of order.
+     */
+    private long nextTimestamp()
+    {
+        lastTimestamp = Math.max(System.currentTimeMillis() * 1000, lastTimestamp + 1);
+        return lastTimestamp;
+    }
+
+    private int nextStreamId()
+    {
+        int id = nextStreamId;
+        nextStreamId = (nextStreamId + 1) % MAX_STREAM_ID;
+        return id;
+    }
+
+    private void write(int streamId, byte opcode, byte[] body)
+            throws IOException
+    {
+        out.writeByte(VERSION);
+        out.writeByte(0);
+        out.writeShort(streamId);
+        out.writeByte(opcode);
+        out.writeInt(body.length);
+        out.write(body);
+    }
+
+    private Frame read()
+            throws IOException
+    {
+        byte[] header = new byte[9];
+        in.readFully(header);
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        buffer.get();
+        buffer.get();
+        int streamId = buffer.getShort();
+        byte opcode = buffer.get();
+        byte[] body = new byte[buffer.getInt()];
+        in.readFully(body);
+
+        return new Frame(streamId, opcode, body);
+    }
+
+    private byte[] queryFrame(String statement)
+            throws IOException
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream query = new DataOutputStream(body);
+        byte[] cql = statement.getBytes(StandardCharsets.UTF_8);
+        query.writeInt(cql.length);
+        query.write(cql);
+        query.writeShort(CONSISTENCY_ONE);
+        query.writeByte(FLAG_DEFAULT_TIMESTAMP);
+        query.writeLong(nextTimestamp());
+
+        return body.toByteArray();
+    }
+
+    private static CqlException error(String context, Frame response)
+    {
+        return new CqlException(context + " -> " + errorMessage(response));
+    }
+
+    private static String errorMessage(Frame response)
+    {
+        if (response.opcode == OPCODE_ERROR) {
+            ByteBuffer body = ByteBuffer.wrap(response.body);
+            int code = body.getInt();
+            return "[0x" + Integer.toHexString(code) + "] " + readString(body);
+        }
+
+        return "unexpected response opcode 0x" + Integer.toHexString(response.opcode);
+    }
+
+    private static void writeString(DataOutputStream out, String value)
+            throws IOException
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buffer)
+    {
+        buffer.position(buffer.position() + (buffer.getShort() & 0xFFFF));
+    }
+
+    private static void skipBytes(ByteBuffer buffer)
+    {
+        int length = buffer.getInt();
+        if (length > 0) {
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    private static String toHex(byte[] value)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : value) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    public static class PreparedStatement
+    {
+
+        private final String statement;
+
+        private final byte[] id;
+
+        private final List<Integer> types;
+
+        private PreparedStatement(String statement, byte[] id, List<Integer> types)
+        {
+            this.statement = statement;
+            this.id = id;
+            this.types = types;
+        }
+
+        public String getStatement()
+        {
+            return statement;
+        }
+
+        /**
+         * @return the native protocol type ids of the bind variables (i.e. 0x0002 for bigint).
+         */
+        public List<Integer> getTypes()
+        {
+            return types;
+        }
+
+    }
+
+    public static class Response
+    {
+
+        private final int streamId;
+
+        private final String error;
+
+        private Response(int streamId, String error)
+        {
+            this.streamId = streamId;
+            this.error = error;
+        }
+
+        public int getStreamId()
+        {
+            return streamId;
+        }
+
+        /**
+         * @return the error message, or null when the request has succeeded.
+         */
+        public String getError()
+        {
+            return error;
+        }
+
+    }
+
+    private static class Frame
+    {
+
+        private final int streamId;
+
+        private final byte opcode;
+
+        private final byte[] body;
+
+        private Frame(int streamId, byte opcode, byte[] body)
+        {
+            this.streamId = streamId;
+            this.opcode = opcode;
+            this.body = body;
+        }
+
+    }
+
+}
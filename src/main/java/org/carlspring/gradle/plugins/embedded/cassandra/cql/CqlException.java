@@ -0,0 +1,20 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.cql;
+
+/**
+ * An ERROR response (or an unexpected response) from Cassandra.
+ */
+public class CqlException
+        extends RuntimeException
+{
+
+    public CqlException(String message)
+    {
+        super(message);
+    }
+
+    public CqlException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+
+}
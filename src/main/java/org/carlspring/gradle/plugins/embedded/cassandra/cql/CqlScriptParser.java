@@ -0,0 +1,129 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.cql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a CQL script into statements. Semicolons inside of string literals, quoted identifiers, {@code $$} blocks,
+ * comments and batches ({@code BEGIN BATCH ... APPLY BATCH}) are not treated as statement separators; comments are
+ * dropped.
+ */
+public final class CqlScriptParser
+{
+
+    private static final Pattern BATCH_START = Pattern.compile("(?is)^BEGIN\\s+((UNLOGGED|COUNTER)\\s+)?BATCH\\b.*");
+
+    private static final Pattern BATCH_END = Pattern.compile("(?is).*\\bAPPLY\\s+BATCH$");
+
+    private CqlScriptParser()
+    {
+    }
+
+    public static List<String> parse(String script)
+    {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+
+        int length = script.length();
+        int i = 0;
+        while (i < length) {
+            char c = script.charAt(i);
+            char next = i + 1 < length ? script.charAt(i + 1) : 0;
+
+            if ((c == '-' && next == '-') || (c == '/' && next == '/')) {
+                int end = script.indexOf('\n', i);
+                i = end == -1 ? length : end + 1;
+                current.append('\n');
+            }
+            else if (c == '/' && next == '*') {
+                int end = script.indexOf("*/", i + 2);
+                i = end == -1 ? length : end + 2;
+                current.append(' ');
+            }
+            else if (c == '\'' || c == '"') {
+                int end = endOfQuoted(script, i, c);
+                current.append(script, i, end);
+                i = end;
+            }
+            else if (c == '$' && next == '$') {
+                int end = script.indexOf("$$", i + 2);
+                end = end == -1 ? length : end + 2;
+                current.append(script, i, end);
+                i = end;
+            }
+            else if (c == ';' && isInBatch(current)) {
+                current.append(c);
+                i++;
+            }
+            else if (c == ';') {
+                add(statements, current);
+                current.setLength(0);
+                i++;
+            }
+            else {
+                current.append(c);
+                i++;
+            }
+        }
+        add(statements, current);
+
+        return statements;
+    }
+
+    /**
+     * Quotes are escaped by doubling them (i.e. 'it''s').
+     */
+    private static int endOfQuoted(String script, int start, char quote)
+    {
+        int i = start + 1;
+        while (i < script.length()) {
+            if (script.charAt(i) == quote) {
+                if (i + 1 < script.length() && script.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+
+        return script.length();
+    }
+
+    private static boolean isInBatch(StringBuilder statement)
+    {
+        String trimmed = statement.toString().trim();
+
+        return BATCH_START.matcher(trimmed).matches() && !BATCH_END.matcher(trimmed).matches();
+    }
+
+    private static void add(List<String> statements, StringBuilder statement)
+    {
+        String trimmed = statement.toString().trim();
+        if (!trimmed.isEmpty()) {
+            statements.add(trimmed);
+        }
+    }
+
+    /**
+     * @return true for statements which change the schema (and must be executed in order).
+     */
+    public static boolean isSchemaChange(String statement)
+    {
+        String keyword = statement.trim().split("\\s+", 2)[0].toUpperCase();
+        switch (keyword) {
+            case "CREATE":
+            case "ALTER":
+            case "DROP":
+            case "TRUNCATE":
+            case "USE":
+            case "GRANT":
+            case "REVOKE":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.cql;
+
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraCoordinates;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraSnapshotCache;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Executes CQL scripts (files or directories of {@code *.cql} files, in name order) against a running instance.
+ * <p>
+ * Everything is executed on a single connection. Consecutive data statements are pipelined (with increasing client
+ * timestamps, so writes to the same row keep the script order), schema changes are executed one by one in order - but
+ * without waiting for schema agreement in between, which is checked only once at the end. The content hash of every applied script is recorded in the working directory, so scripts which have
+ * already been applied to a reused data directory are skipped.
+ */
+public class CqlScriptRunner
+{
+
+    public static final String APPLIED_SCRIPTS_FILE = "data/.applied-cql-scripts";
+
+    private static final Logger LOGGER = Logging.getLogger(CqlScriptRunner.class);
+
+    private static final int PIPELINE_WINDOW = 256;
+
+    private final String username;
+
+    private final String password;
+
+    private final Duration schemaAgreementTimeout;
+
+    public CqlScriptRunner(String username, String password, Duration schemaAgreementTimeout)
+    {
+        this.username = username;
+        this.password = password;
+        this.schemaAgreementTimeout = schemaAgreementTimeout;
+    }
+
+    /**
+     * @return the number of executed statements.
+     */
+    public int run(CassandraCoordinates instance, Collection<Path> scripts)
+            throws IOException
+    {
+        Path appliedFile = Path.of(instance.getWorkingDirectory()).resolve(APPLIED_SCRIPTS_FILE);
+        Set<String> applied = new HashSet<>();
+        if (Files.exists(appliedFile)) {
+            applied.addAll(Files.readAllLines(appliedFile));
+        }
+
+        List<Path> files = resolve(scripts);
+        if (files.isEmpty()) {
+            return 0;
+        }
+
+        int executed = 0;
+        try (CqlConnection connection = CqlConnection.open(instance.getHost(), instance.getNativeTransportPort(), username, password)) {
+            for (Path file : files) {
+                String content = Files.readString(file);
+                String hash = CassandraSnapshotCache.sha256(content);
+                if (applied.contains(hash)) {
+                    LOGGER.lifecycle("Skipping already applied CQL script " + file);
+                    continue;
+                }
+
+                executed += execute(connection, CqlScriptParser.parse(content));
+
+                applied.add(hash);
+                Files.createDirectories(appliedFile.getParent());
+                Files.write(appliedFile, applied);
+            }
+
+            if (executed > 0 && !connection.awaitSchemaAgreement(schemaAgreementTimeout)) {
+                LOGGER.warn("Schema agreement has not been reached within " + schemaAgreementTimeout);
+            }
+        }
+
+        return executed;
+    }
+
+    private static int execute(CqlConnection connection, List<String> statements)
+            throws IOException
+    {
+        List<String> batch = new ArrayList<>();
+        for (String statement : statements) {
+            if (CqlScriptParser.isSchemaChange(statement)) {
+                connection.executePipelined(batch, PIPELINE_WINDOW);
+                batch.clear();
+                connection.execute(statement);
+            }
+            else {
+                batch.add(statement);
+            }
+        }
+        connection.executePipelined(batch, PIPELINE_WINDOW);
+
+        return statements.size();
+    }
+
+    static List<Path> resolve(Collection<Path> scripts)
+            throws IOException
+    {
+        List<Path> files = new ArrayList<>();
+        for (Path script : scripts) {
+            if (Files.isDirectory(script)) {
+                try (Stream<Path> children = Files.walk(script)) {
+                    files.addAll(children.filter(p -> p.getFileName().toString().endsWith(".cql"))
+                                         .filter(Files::isRegularFile)
+                                         .sorted()
+                                         .collect(Collectors.toList()));
+                }
+            }
+            else if (Files.isRegularFile(script)) {
+                files.add(script);
+            }
+            else {
+                throw new UncheckedIOException(new IOException("CQL script " + script + " does not exist!"));
+            }
+        }
+
+        return files;
+    }
+
+}
@@ -0,0 +1,20 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+/**
+ * Where the Cassandra used by the build comes from.
+ */
+public enum CassandraBackend
+{
+
+    /**
+     * Started (and stopped) by the build - forked from the Gradle daemon by embedded-cassandra.
+     */
+    EMBEDDED,
+
+    /**
+     * An already running node (i.e. shared on the machine or started by another supervisor) - the build only attaches to
+     * it and never stops it. See {@link RemoteCassandra}.
+     */
+    REMOTE
+
+}
@@ -0,0 +1,538 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import com.github.nosan.embedded.cassandra.Cassandra;
+import org.carlspring.gradle.plugins.embedded.cassandra.cql.CqlScriptRunner;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.tooling.events.FinishEvent;
+import org.gradle.tooling.events.OperationCompletionListener;
+import org.gradle.tooling.events.task.TaskFailureResult;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Build scoped Cassandra lifecycle shared between all projects (and tasks) applying the plugin.
+ * <p>
+ * The instance is started by the first consumer which calls {@link #acquire()} and is stopped when the last consumer
+ * calls {@link #release()}. Since projects are not necessarily executed in parallel, the instance is kept alive until all
+ * of the {@code expectedConsumers} (i.e. start tasks in the task graph) have acquired it. Whatever is still running when
+ * the build finishes is stopped in {@link #close()}.
+ * <p>
+ * When {@code poolSize} is greater than 1, the service manages a pool of isolated instances which are started (and
+ * stopped) concurrently. The first instance uses the configured ports and working directory, the others get random
+ * ports and a working directory next to it. Test forks lease an instance through
+ * {@link org.carlspring.gradle.plugins.embedded.cassandra.client.CassandraPoolLease}.
+ * <p>
+ * {@link #acquireAsync()} starts the instances in the background, so boot time overlaps other work (i.e. compilation).
+ * Consumers which actually need Cassandra block in {@link #await()}.
+ * <p>
+ * Configured CQL scripts are applied to every instance once it is ready (see {@link CqlScriptRunner}).
+ * <p>
+ * {@code Test} tasks with {@code useCassandra()} acquire Cassandra when they are executed (see {@link UseCassandraAction})
+ * and are released when they have finished - the service listens to the task completion events for that.
+ * <p>
+ * The output of the instances is streamed into Gradle's logging (see {@link CassandraOutputLogger}) - its last lines are
+ * printed when an instance fails to start or a test task using it fails.
+ * <p>
+ * With the {@link CassandraBackend#REMOTE} backend nothing is started - the service attaches to an already running node
+ * (see {@link RemoteCassandra}) and the consumers get its coordinates as usual.
+ * <p>
+ * The instances themselves are created, started and stopped by {@link CassandraInstancePool} - the service only keeps
+ * track of the consumers and never holds its lock while Cassandra is started or stopped.
+ */
+public abstract class CassandraBuildService
+        implements BuildService<CassandraBuildService.Params>, OperationCompletionListener, AutoCloseable
+{
+
+    public static final String SERVICE_NAME = "embeddedCassandra";
+
+    public static final String LEASES_DIRECTORY = ".leases";
+
+    private static final Logger LOGGER = Logging.getLogger(CassandraBuildService.class);
+
+    public interface Params
+            extends BuildServiceParameters
+    {
+
+        DirectoryProperty getWorkingDirectory();
+
+        /**
+         * Defaults to the version embedded-cassandra defaults to.
+         */
+        Property<String> getVersion();
+
+        /**
+         * Allocates the ports of the first instance when it is created, instead of using the configured ones - instances
+         * of the version matrix run next to the default one. They are not exported as system properties of the build.
+         */
+        Property<Boolean> getAllocatePorts();
+
+        ListProperty<String> getJvmOptions();
+
+        MapProperty<String, Object> getConfigProperties();
+
+        MapProperty<String, Object> getSystemProperties();
+
+        Property<Duration> getStartupTimeout();
+
+        Property<Boolean> getCassandra4JVMAutoFix();
+
+        Property<Integer> getExpectedConsumers();
+
+        /**
+         * Paths of the {@code Test} tasks with {@code useCassandra()} in the task graph - they are part of the
+         * {@code expectedConsumers}.
+         */
+        ListProperty<String> getTestConsumers();
+
+        Property<Boolean> getWarmStart();
+
+        DirectoryProperty getSnapshotCacheDirectory();
+
+        DirectoryProperty getDistributionCacheDirectory();
+
+        Property<Integer> getPoolSize();
+
+        DirectoryProperty getReportsDirectory();
+
+        ConfigurableFileCollection getCqlScripts();
+
+        /**
+         * Allocates the ports of the first instance with {@link PortAllocator} when it is started (i.e. with
+         * {@code defaultTestSettings(true)}) - they are exported as system properties of the build and replaced when
+         * they turn out to be taken.
+         */
+        Property<Boolean> getRandomPorts();
+
+        DirectoryProperty getPortLockDirectory();
+
+        Property<Boolean> getRamDisk();
+
+        Property<Boolean> getKeepAlive();
+
+        /**
+         * Number of nodes of a local cluster (1 = a single node).
+         */
+        Property<Integer> getNodes();
+
+        Property<Boolean> getClusterLoopbackAliases();
+
+        Property<Duration> getKeepAliveIdleTimeout();
+
+        /**
+         * Sample the metrics of the running instances (see {@link CassandraMetricsSampler}).
+         */
+        Property<Boolean> getMetrics();
+
+        Property<Duration> getMetricsInterval();
+
+        /**
+         * Maximum values of the summary metrics - the build fails when Cassandra is stopped and one of them is exceeded.
+         */
+        MapProperty<String, Number> getMetricsThresholds();
+
+        DirectoryProperty getRamDiskDirectory();
+
+        Property<Long> getRamDiskRequiredSpace();
+
+        Property<String> getCqlUsername();
+
+        Property<String> getCqlPassword();
+
+        /**
+         * Output directories of GenerateCassandraSSTablesTask.
+         */
+        ConfigurableFileCollection getSSTables();
+
+        /**
+         * Replaces Cassandra's logging configuration with {@code cassandra/server/logback-tuned.xml} - asynchronous
+         * appenders, no debug.log.
+         */
+        Property<Boolean> getTunedLogging();
+
+        /**
+         * Root level of the tuned logging configuration.
+         */
+        Property<String> getLogLevel();
+
+        /**
+         * Lines of output printed when an instance fails to start or a test task using it fails (0 to disable).
+         */
+        Property<Integer> getLogTailLines();
+
+        Property<CassandraBackend> getBackend();
+
+        Property<String> getRemoteHost();
+
+        Property<Integer> getRemotePort();
+
+        /**
+         * Defaults to {@link ShutdownPolicy#KILL} with {@code ramDisk}, {@link ShutdownPolicy#DRAIN} otherwise.
+         */
+        Property<ShutdownPolicy> getShutdownPolicy();
+
+        Property<Duration> getShutdownTimeout();
+
+        /**
+         * Applied to the config properties for the version which is started (see {@link TuningPreset}).
+         */
+        ListProperty<TuningPreset> getTuningPresets();
+
+    }
+
+    private final CassandraInstancePool pool;
+
+    private int consumers = 0;
+
+    private int acquisitions = 0;
+
+    /**
+     * Test tasks which have acquired Cassandra and have not finished yet.
+     */
+    private final Set<String> testLeases = new HashSet<>();
+
+    /**
+     * Test tasks which have finished - completion events are delivered once per listener registration.
+     */
+    private final Set<String> finishedTests = new HashSet<>();
+
+    private CompletableFuture<Cassandra> startup;
+
+    /**
+     * Completes when the last {@link #stop()} has stopped the instances - a new start waits for it.
+     */
+    private CompletableFuture<Void> stopping = CompletableFuture.completedFuture(null);
+
+    /**
+     * Serializes {@link #stop()} - it runs without holding the lock of the service.
+     */
+    private final Object stopLock = new Object();
+
+    public CassandraBuildService()
+    {
+        pool = new CassandraInstancePool(getParameters());
+    }
+
+    /**
+     * Registers a consumer and starts Cassandra, if this is the first one.
+     *
+     * @return the running (first) instance.
+     */
+    public Cassandra acquire()
+    {
+        return await(acquireAsync());
+    }
+
+    /**
+     * Registers a {@code Test} task as a consumer and starts Cassandra, if this is the first one. The task is released
+     * when it has finished (see {@link #onFinish(FinishEvent)}).
+     *
+     * @return the running (first) instance.
+     */
+    public Cassandra acquire(String taskPath)
+    {
+        CompletableFuture<Cassandra> pending;
+        synchronized (this) {
+            pending = acquireAsync();
+            testLeases.add(taskPath);
+        }
+
+        return await(pending);
+    }
+
+    /**
+     * Registers a consumer and starts Cassandra in the background, if this is the first one. The returned future (and
+     * {@link #await()}) complete when the instances are up.
+     */
+    public synchronized CompletableFuture<Cassandra> acquireAsync()
+    {
+        if (startup == null || startup.isCompletedExceptionally()) {
+            // The instances are created (and their ports reserved) on the startup thread as well - after a stop which is
+            // still in progress.
+            CompletableFuture<Void> stopped = stopping;
+            startup = CompletableFuture.supplyAsync(() -> {
+                stopped.join();
+                return startPool();
+            }, runnable -> {
+                Thread thread = new Thread(runnable, "embedded-cassandra-startup");
+                thread.setDaemon(true);
+                thread.start();
+            });
+        }
+        else {
+            LOGGER.lifecycle("Reusing Cassandra in " + getWorkingDirectory());
+        }
+
+        consumers++;
+        acquisitions++;
+
+        return startup;
+    }
+
+    /**
+     * Blocks until a pending (asynchronous) start has completed.
+     *
+     * @return the running (first) instance or null, when nothing has been started.
+     */
+    public Cassandra await()
+    {
+        CompletableFuture<Cassandra> pending;
+        synchronized (this) {
+            pending = startup;
+        }
+
+        return pending != null ? await(pending) : null;
+    }
+
+    private static Cassandra await(CompletableFuture<Cassandra> pending)
+    {
+        try {
+            return pending.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private Cassandra startPool()
+    {
+        prepareLeases();
+
+        return pool.start();
+    }
+
+    public boolean isRemote()
+    {
+        return pool.isRemote();
+    }
+
+    public boolean isCluster()
+    {
+        return pool.isCluster();
+    }
+
+    /**
+     * Stops a single node of a cluster (or instance of a pool), i.e. to test the behaviour when a replica is down.
+     */
+    public void stopNode(int index)
+    {
+        await();
+        pool.stopNode(index);
+    }
+
+    /**
+     * Starts a node stopped with {@link #stopNode(int)} again.
+     */
+    public void startNode(int index)
+    {
+        await();
+        pool.startNode(index);
+    }
+
+    /**
+     * Unregisters a consumer and stops Cassandra, if this was the last one.
+     */
+    public void release()
+    {
+        if (releaseConsumer()) {
+            stop();
+        }
+    }
+
+    /**
+     * @return true when the last consumer has been released - the instances are stopped without holding the lock, the
+     * threads stopping them (and a pending start) need it.
+     */
+    private synchronized boolean releaseConsumer()
+    {
+        if (startup == null) {
+            return false;
+        }
+
+        Path workingDirectory = getWorkingDirectory();
+
+        consumers = Math.max(0, consumers - 1);
+        if (consumers > 0) {
+            LOGGER.lifecycle("Releasing Cassandra in " + workingDirectory + " (consumers left: " + consumers + ")");
+            return false;
+        }
+
+        int expected = getParameters().getExpectedConsumers().getOrElse(0);
+        if (acquisitions < expected) {
+            LOGGER.lifecycle("Keeping Cassandra in " + workingDirectory + " running (waiting for " + (expected - acquisitions) +
+                             " more consumers)");
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return false until a consumer has started Cassandra in this build (or once it has been stopped) - there is nothing
+     * to stop.
+     */
+    public synchronized boolean hasInstances()
+    {
+        return startup != null;
+    }
+
+    @Override
+    public void onFinish(FinishEvent event)
+    {
+        if (event instanceof TaskFinishEvent) {
+            finished(((TaskFinishEvent) event).getDescriptor().getTaskPath(), event.getResult() instanceof TaskFailureResult);
+        }
+    }
+
+    private void finished(String taskPath, boolean failed)
+    {
+        boolean leased;
+        synchronized (this) {
+            if (!getParameters().getTestConsumers().getOrElse(List.of()).contains(taskPath) || !finishedTests.add(taskPath)) {
+                return;
+            }
+
+            leased = testLeases.remove(taskPath);
+            if (!leased) {
+                // Up-to-date, loaded from the build cache or skipped - done without having needed Cassandra.
+                acquisitions++;
+                if (consumers > 0 || startup == null || acquisitions < getParameters().getExpectedConsumers().getOrElse(0)) {
+                    return;
+                }
+            }
+        }
+
+        if (!leased) {
+            stop();
+            return;
+        }
+
+        if (failed) {
+            // Before the instances are stopped - a failure may well be caused by Cassandra.
+            pool.printOutputs(taskPath + " has failed");
+        }
+        release();
+    }
+
+    public synchronized int getConsumers()
+    {
+        return consumers;
+    }
+
+    public Cassandra getInstance()
+    {
+        return getInstances().get(0);
+    }
+
+    /**
+     * Creates the instances, if they have not been created yet - nothing is started.
+     */
+    public List<Cassandra> getInstances()
+    {
+        return pool.getInstances();
+    }
+
+    /**
+     * Blocks on a pending asynchronous start - whoever asks for the coordinates is about to connect.
+     *
+     * @return the coordinates of the running instances (empty when nothing has been started).
+     */
+    public List<CassandraCoordinates> getCoordinates()
+    {
+        await();
+
+        return pool.getCoordinates();
+    }
+
+    public Path getLeasesDirectory()
+    {
+        return getParameters().getWorkingDirectory().get().getAsFile().toPath().resolve(LEASES_DIRECTORY);
+    }
+
+    private Path getWorkingDirectory()
+    {
+        return getParameters().getWorkingDirectory().get().getAsFile().toPath();
+    }
+
+    @Override
+    public void close()
+    {
+        synchronized (this) {
+            consumers = 0;
+        }
+        stop();
+    }
+
+    /**
+     * Stops the instances - called without holding the lock, the instances are stopped concurrently on other threads.
+     */
+    private void stop()
+    {
+        synchronized (stopLock) {
+            CompletableFuture<Cassandra> pending;
+            synchronized (this) {
+                pending = startup;
+            }
+            // Let a pending start finish first - stopping a half started process is not reliable. The startup thread needs
+            // the lock, so it must not be held while waiting for it.
+            if (pending != null) {
+                try {
+                    pending.join();
+                }
+                catch (CompletionException e) {
+                    // The failure has already been reported to whoever started it.
+                }
+            }
+
+            // A consumer may have acquired the instances (or started new ones) while waiting - they are not stopped under it.
+            CompletableFuture<Void> stopped;
+            synchronized (this) {
+                if (startup != pending || consumers > 0) {
+                    return;
+                }
+                startup = null;
+                stopped = new CompletableFuture<>();
+                stopping = stopped;
+            }
+
+            try {
+                pool.stop();
+            }
+            finally {
+                stopped.complete(null);
+            }
+        }
+    }
+
+    private void prepareLeases()
+    {
+        try {
+            Path leases = getLeasesDirectory();
+            CassandraSnapshotCache.deleteRecursively(leases);
+            Files.createDirectories(leases);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Failed to prepare the pool leases directory!", e);
+        }
+    }
+
+}
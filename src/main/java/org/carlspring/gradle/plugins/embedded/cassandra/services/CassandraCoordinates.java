@@ -0,0 +1,137 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Connection details of a single Cassandra instance, as exported to consumers (i.e. test forks).
+ */
+public class CassandraCoordinates
+        implements Serializable
+{
+
+    private static final long serialVersionUID = 1L;
+
+    private final int index;
+
+    private final String host;
+
+    private final int nativeTransportPort;
+
+    private final int storagePort;
+
+    private final int sslStoragePort;
+
+    private final int jmxPort;
+
+    private final String workingDirectory;
+
+    public CassandraCoordinates(int index,
+                                String host,
+                                int nativeTransportPort,
+                                int storagePort,
+                                int sslStoragePort,
+                                int jmxPort,
+                                Path workingDirectory)
+    {
+        this.index = index;
+        this.host = host;
+        this.nativeTransportPort = nativeTransportPort;
+        this.storagePort = storagePort;
+        this.sslStoragePort = sslStoragePort;
+        this.jmxPort = jmxPort;
+        this.workingDirectory = workingDirectory.toString();
+    }
+
+    public static CassandraCoordinates of(int index,
+                                          Map<String, Object> configProperties,
+                                          Map<String, Object> systemProperties,
+                                          Path workingDirectory)
+    {
+        return new CassandraCoordinates(index,
+                                        String.valueOf(configProperties.getOrDefault("rpc_address", "127.0.0.1")),
+                                        toInt(configProperties.getOrDefault("native_transport_port", 9042)),
+                                        toInt(configProperties.getOrDefault("storage_port", 7000)),
+                                        toInt(configProperties.getOrDefault("ssl_storage_port", 7001)),
+                                        toInt(systemProperties.getOrDefault("cassandra.jmx.local.port", 7199)),
+                                        workingDirectory);
+    }
+
+    private static int toInt(Object value)
+    {
+        return value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(String.valueOf(value));
+    }
+
+    public int getIndex()
+    {
+        return index;
+    }
+
+    public String getHost()
+    {
+        return host;
+    }
+
+    public int getNativeTransportPort()
+    {
+        return nativeTransportPort;
+    }
+
+    public int getStoragePort()
+    {
+        return storagePort;
+    }
+
+    public int getSslStoragePort()
+    {
+        return sslStoragePort;
+    }
+
+    public int getJmxPort()
+    {
+        return jmxPort;
+    }
+
+    public String getWorkingDirectory()
+    {
+        return workingDirectory;
+    }
+
+    /**
+     * @param prefix i.e. {@code cassandra.} or {@code cassandra.pool.1.}
+     */
+    public Map<String, String> toSystemProperties(String prefix)
+    {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put(prefix + "host", host);
+        properties.put(prefix + "storage.port", String.valueOf(storagePort));
+        properties.put(prefix + "storage.port.ssl", String.valueOf(sslStoragePort));
+        properties.put(prefix + "native.transport.port", String.valueOf(nativeTransportPort));
+        properties.put(prefix + "jmx.port", String.valueOf(jmxPort));
+        properties.put(prefix + "working.directory", workingDirectory);
+
+        return properties;
+    }
+
+    /**
+     * @return the properties of {@link #toSystemProperties(String)} as environment variables (i.e.
+     * {@code CASSANDRA_NATIVE_TRANSPORT_PORT}).
+     */
+    public Map<String, String> toEnvironment()
+    {
+        Map<String, String> environment = new LinkedHashMap<>();
+        toSystemProperties("cassandra.").forEach((k, v) -> environment.put(k.replace('.', '_').toUpperCase(Locale.ROOT), v));
+
+        return environment;
+    }
+
+    @Override
+    public String toString()
+    {
+        return host + ":" + nativeTransportPort + " (storage: " + storagePort + ", ssl storage: " + sslStoragePort + ", " + workingDirectory + ")";
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import org.carlspring.gradle.plugins.embedded.cassandra.client.CassandraPoolLease;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Internal;
+import org.gradle.process.CommandLineArgumentProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Passes the coordinates of the running instance(s) to test forks as {@code cassandra.*} system properties (and
+ * {@code cassandra.pool.<index>.*} for pools, {@code cassandra.node.<index>.*} for the nodes of a cluster). Evaluated when the fork is started, so the coordinates are only available
+ * when Cassandra has been started before the test task.
+ */
+public class CassandraCoordinatesArgumentProvider
+        implements CommandLineArgumentProvider
+{
+
+    private final Provider<CassandraBuildService> service;
+
+    public CassandraCoordinatesArgumentProvider(Provider<CassandraBuildService> service)
+    {
+        this.service = service;
+    }
+
+    @Internal
+    public Provider<CassandraBuildService> getService()
+    {
+        return service;
+    }
+
+    @Override
+    public Iterable<String> asArguments()
+    {
+        List<String> arguments = new ArrayList<>();
+
+        List<CassandraCoordinates> coordinates = service.get().getCoordinates();
+        if (coordinates.isEmpty()) {
+            // Nothing has been started (or it has been stopped already).
+            return arguments;
+        }
+
+        if (service.get().isCluster()) {
+            // Clients connect to the first node and discover the others - all of them are listed as contact points.
+            coordinates.get(0).toSystemProperties("cassandra.").forEach((k, v) -> arguments.add("-D" + k + "=" + v));
+            arguments.add("-Dcassandra.cluster.size=" + coordinates.size());
+            arguments.add("-Dcassandra.contact.points=" + coordinates.stream()
+                                                                   .map(c -> c.getHost() + ":" + c.getNativeTransportPort())
+                                                                   .collect(Collectors.joining(",")));
+            for (CassandraCoordinates node : coordinates) {
+                node.toSystemProperties("cassandra.node." + node.getIndex() + ".").forEach((k, v) -> arguments.add("-D" + k + "=" + v));
+            }
+        }
+        else if (coordinates.size() == 1) {
+            coordinates.get(0).toSystemProperties("cassandra.").forEach((k, v) -> arguments.add("-D" + k + "=" + v));
+        }
+        else {
+            arguments.add("-D" + CassandraPoolLease.POOL_SIZE + "=" + coordinates.size());
+            arguments.add("-D" + CassandraPoolLease.LEASES_DIRECTORY + "=" + service.get().getLeasesDirectory());
+            for (CassandraCoordinates instance : coordinates) {
+                String prefix = CassandraPoolLease.POOL_PREFIX + instance.getIndex() + ".";
+                instance.toSystemProperties(prefix).forEach((k, v) -> arguments.add("-D" + k + "=" + v));
+            }
+        }
+
+        return arguments;
+    }
+
+}
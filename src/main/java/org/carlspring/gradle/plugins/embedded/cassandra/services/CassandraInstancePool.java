@@ -0,0 +1,1336 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import com.github.nosan.embedded.cassandra.Cassandra;
+import com.github.nosan.embedded.cassandra.CassandraBuilder;
+import com.github.nosan.embedded.cassandra.SimpleSeedProviderConfigurator;
+import com.github.nosan.embedded.cassandra.Version;
+import com.github.nosan.embedded.cassandra.WorkingDirectoryDestroyer;
+import com.github.nosan.embedded.cassandra.WorkingDirectoryInitializer;
+import com.github.nosan.embedded.cassandra.commons.ClassPathResource;
+import org.carlspring.gradle.plugins.embedded.cassandra.cql.CqlConnection;
+import org.carlspring.gradle.plugins.embedded.cassandra.cql.CqlException;
+import org.carlspring.gradle.plugins.embedded.cassandra.cql.CqlScriptRunner;
+import org.carlspring.gradle.plugins.embedded.cassandra.sstable.SSTableGenerator;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.BindException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The instances of a {@link CassandraBuildService} and their lifecycle - a single instance, a pool of isolated instances,
+ * the nodes of a local cluster or a remote node. It creates them (allocating their ports), starts them (replacing taken
+ * ports, reusing instances kept alive by a previous build), samples their metrics and stops them.
+ * <p>
+ * The state is guarded by the lock of the pool, which is never held while an instance is started, stopped or probed -
+ * the instances are started concurrently and each of them needs it. The consumers of the instances are tracked by the
+ * service.
+ */
+public class CassandraInstancePool
+{
+
+    private static final Logger LOGGER = Logging.getLogger(CassandraInstancePool.class);
+
+    private static final int MAX_START_ATTEMPTS = 3;
+
+    private static final Duration ORPHAN_KILL_TIMEOUT = Duration.ofSeconds(10);
+
+    private static final List<String> BIND_ERRORS = List.of("Address already in use", "BindException", "Failed to bind port");
+
+    private static final Pattern GC_OPTION = Pattern.compile("-XX:\\+Use\\w+GC");
+
+    private static final String TUNED_LOGGING = "cassandra/server/logback-tuned.xml";
+
+    private static final Pattern GC_TUNING_OPTION = Pattern.compile("-XX:[+-]?(CMS|UseCMS|G1|Parallel|ConcGCThreads|ParallelGCThreads)\\w*(=.*)?");
+
+    private final CassandraBuildService.Params params;
+
+    private final List<Cassandra> instances = new ArrayList<>();
+
+    private final List<CassandraCoordinates> coordinates = new ArrayList<>();
+
+    private final List<StartupTimings> timings = new ArrayList<>();
+
+    /**
+     * Output of the instances per working directory - fed by the threads of embedded-cassandra.
+     */
+    private final Map<Path, CassandraOutputLogger> outputs = new ConcurrentHashMap<>();
+
+    private final List<Map<String, Object>> instanceConfigProperties = new ArrayList<>();
+
+    private final List<Map<String, Object>> instanceSystemProperties = new ArrayList<>();
+
+    /**
+     * Ports allocated by {@link PortAllocator} per instance index - only these instances can be restarted on other ports.
+     */
+    private final Map<Integer, List<Integer>> allocatedPorts = new HashMap<>();
+
+    /**
+     * Reservations held for the allocated ports while the instances run - released when they are stopped and taken
+     * again when they are restarted.
+     */
+    private final Map<Integer, List<Integer>> reservedPorts = new HashMap<>();
+
+    /**
+     * Instances which outlive the build (keepAlive) per instance index.
+     */
+    private final Map<Integer, KeepAliveState> keptAlive = new HashMap<>();
+
+    /**
+     * Indexes of the instances which accept connections in this build. An instance reused from a previous build (see
+     * {@link #reuseKeptAlive(int)}) has not been started by its {@link Cassandra} object, so {@link Cassandra#isRunning()}
+     * can't tell.
+     */
+    private final Set<Integer> ready = new HashSet<>();
+
+    /**
+     * Indexes of the instances kept alive by a previous build and reused by this one - they are not owned by this build.
+     */
+    private final Set<Integer> reused = new HashSet<>();
+
+    /**
+     * Seed list of a local cluster (null for single nodes / pools).
+     */
+    private String seeds;
+
+    private final List<CassandraMetricsSampler> metricsSamplers = new ArrayList<>();
+
+    /**
+     * Key of the warm start snapshot shared by all instances of the pool - null when warm start is disabled.
+     */
+    private String snapshotKey;
+
+    public CassandraInstancePool(CassandraBuildService.Params params)
+    {
+        this.params = params;
+    }
+
+    /**
+     * Creates the instances (and reserves their ports) when it is called for the first time - nothing is started.
+     */
+    public synchronized List<Cassandra> getInstances()
+    {
+        if (instances.isEmpty()) {
+            createPool();
+        }
+
+        // A copy - instances are recreated when their ports are replaced or adopted.
+        return Collections.unmodifiableList(new ArrayList<>(instances));
+    }
+
+    /**
+     * @return the coordinates of the running instances (empty when nothing has been started).
+     */
+    public synchronized List<CassandraCoordinates> getCoordinates()
+    {
+        return ready.isEmpty() ? Collections.emptyList() : new ArrayList<>(coordinates);
+    }
+
+    /**
+     * Starts the instances (concurrently), creates the warm start snapshot, starts sampling the metrics and applies the
+     * CQL scripts.
+     *
+     * @return the first instance.
+     */
+    public Cassandra start()
+    {
+        List<Cassandra> pool = getInstances();
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < pool.size(); i++) {
+            indexes.add(i);
+        }
+        if (isCluster()) {
+            // The seed has to be up first - the other nodes have fixed tokens and don't bootstrap, so they can join at once.
+            startInstance(0);
+            forEachConcurrently(indexes.subList(1, indexes.size()), this::startInstance);
+            awaitCluster();
+        }
+        else {
+            forEachConcurrently(indexes, this::startInstance);
+        }
+        writeStartupReport(pool.get(0));
+        createSnapshot(pool.get(0));
+        startMetrics();
+        // Schema changes are propagated to the other nodes of a cluster.
+        applyCqlScripts(isCluster() ? getInstances().subList(0, 1) : getInstances());
+
+        return getInstances().get(0);
+    }
+
+    /**
+     * Stops a single node of a cluster (or instance of a pool).
+     */
+    public void stopNode(int index)
+    {
+        Cassandra server;
+        synchronized (this) {
+            server = instances.get(index);
+            ready.remove(index);
+        }
+
+        LOGGER.lifecycle("Stopping node " + index + " in " + server.getWorkingDirectory());
+        stopInstance(server);
+    }
+
+    /**
+     * Starts a node stopped with {@link #stopNode(int)} again.
+     */
+    public void startNode(int index)
+    {
+        startInstance(index);
+    }
+
+    /**
+     * Stops the instances (instances kept alive are only marked idle) and releases their ports.
+     *
+     * @throws IllegalStateException when the instances have exceeded the configured metric thresholds.
+     */
+    public void stop()
+    {
+        List<CassandraMetricsSampler> samplers;
+        List<Cassandra> servers;
+        Map<Integer, KeepAliveState> kept;
+        synchronized (this) {
+            samplers = new ArrayList<>(metricsSamplers);
+            metricsSamplers.clear();
+            servers = new ArrayList<>(instances);
+            kept = new HashMap<>(keptAlive);
+            keptAlive.clear();
+            ready.clear();
+            reused.clear();
+        }
+
+        // Before the instances are stopped - the last samples are taken from the running instances.
+        List<String> violations = stopMetrics(samplers);
+
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < servers.size(); i++) {
+            indexes.add(i);
+        }
+        forEachConcurrently(indexes, index -> {
+            Cassandra server = servers.get(index);
+            if (server instanceof RemoteCassandra) {
+                server.stop();
+                return;
+            }
+            try {
+                KeepAliveState state = kept.get(index);
+                if (state != null) {
+                    state.markIdle();
+                    state.save();
+                    LOGGER.lifecycle("Keeping Cassandra in " + server.getWorkingDirectory() + " alive (pid " + state.getPid() +
+                                     ", idle timeout: " + state.getIdleTimeout() + ")");
+                    return;
+                }
+
+                String running = server.isRunning() ? "yes" : "no";
+                String workdir = server.getWorkingDirectory().toString();
+                LOGGER.lifecycle("Stopping Cassandra in " + workdir + " (is running: " + running + ")");
+                stopInstance(server);
+                if (params.getRamDisk().getOrElse(false)) {
+                    getRamDiskDataDirectory().cleanup(server.getWorkingDirectory());
+                }
+            }
+            catch (Exception e) {
+                // nothing we can really do.
+                LOGGER.error("An error occurred while stopping Cassandra!", e);
+            }
+        });
+
+        synchronized (this) {
+            PortAllocator allocator = getPortAllocator();
+            reservedPorts.values().forEach(allocator::release);
+            reservedPorts.clear();
+        }
+
+        if (!violations.isEmpty()) {
+            throw new IllegalStateException("Cassandra exceeded the configured metric thresholds:\n  " + String.join("\n  ", violations));
+        }
+    }
+
+    /**
+     * Prints the last lines of the output of every instance.
+     */
+    public void printOutputs(String reason)
+    {
+        List<Cassandra> servers;
+        synchronized (this) {
+            servers = new ArrayList<>(instances);
+        }
+
+        for (Cassandra server : servers) {
+            printOutput(server.getWorkingDirectory(), reason);
+        }
+    }
+
+    private void createPool()
+    {
+        Path workingDirectory = params.getWorkingDirectory().get().getAsFile().toPath();
+        Map<String, Object> configProperties = params.getConfigProperties().get();
+        Map<String, Object> systemProperties = params.getSystemProperties().get();
+        int poolSize = Math.max(1, params.getPoolSize().getOrElse(1));
+
+        if (isRemote()) {
+            createRemote(workingDirectory);
+            exportSystemProperties(coordinates.get(0));
+            return;
+        }
+
+        if (params.getRamDisk().getOrElse(false)) {
+            // Throwaway instances - there is nothing to gain from syncing the commit log (or the system keyspaces).
+            configProperties = new HashMap<>(configProperties);
+            configProperties.put("commitlog_sync", "periodic");
+            // Cassandra rejects a configuration with both the legacy and the 4.1 name of a setting.
+            if (!configProperties.containsKey("commitlog_sync_period")) {
+                configProperties.putIfAbsent("commitlog_sync_period_in_ms", 10000);
+            }
+            configProperties.remove("commitlog_sync_batch_window_in_ms");
+            configProperties.remove("commitlog_sync_group_window_in_ms");
+            configProperties.remove("commitlog_sync_group_window");
+            systemProperties = new HashMap<>(systemProperties);
+            systemProperties.putIfAbsent("cassandra.unsafesystem", true);
+        }
+
+        Version version = params.getVersion().isPresent() ? Version.parse(params.getVersion().get()) : new CassandraBuilder().getVersion();
+        // i.e. the legacy keys of defaultTestSettings() - the cassandra.yaml of 4.1 already has their new names.
+        configProperties = TuningPreset.resolveKeys(configProperties, version);
+        List<TuningPreset> presets = params.getTuningPresets().getOrElse(List.of());
+        if (!presets.isEmpty()) {
+            configProperties = TuningPreset.apply(presets, configProperties, version);
+            LOGGER.lifecycle("Applied the tuning presets " + presets + " for Cassandra " + version);
+        }
+
+        int nodes = Math.max(1, params.getNodes().getOrElse(1));
+        if (nodes > 1) {
+            if (poolSize > 1) {
+                throw new IllegalStateException("poolSize and nodes can't be combined - either start isolated instances or a cluster.");
+            }
+
+            createCluster(nodes, workingDirectory, configProperties, systemProperties);
+            exportSystemProperties(coordinates.get(0));
+            return;
+        }
+
+        if (params.getWarmStart().getOrElse(false)) {
+            // One snapshot for all instances - it is keyed by the shared configuration, without the ports of the instances.
+            snapshotKey = CassandraSnapshotCache.key(version.toString(), configProperties, systemProperties, params.getJvmOptions().get());
+        }
+
+        PortAllocator allocator = getPortAllocator();
+        // Reserved now, when the instances are about to be started - not when the build is configured.
+        boolean allocatePorts = params.getAllocatePorts().getOrElse(false) || params.getRandomPorts().getOrElse(false);
+        for (int i = 0; i < poolSize; i++) {
+            Path directory = workingDirectory;
+            Map<String, Object> properties = configProperties;
+            Map<String, Object> system = systemProperties;
+            List<Integer> ports = null;
+            if (i > 0 || allocatePorts) {
+                // Reserved as a set - storage, ssl storage, native transport and JMX.
+                ports = allocator.reserve(4);
+                if (i > 0) {
+                    directory = workingDirectory.resolveSibling(workingDirectory.getFileName() + "-" + i);
+                }
+                properties = new HashMap<>(configProperties);
+                properties.put("storage_port", ports.get(0));
+                properties.put("ssl_storage_port", ports.get(1));
+                properties.put("native_transport_port", ports.get(2));
+                system = new HashMap<>(systemProperties);
+                system.put("cassandra.jmx.local.port", ports.get(3));
+            }
+
+            instanceConfigProperties.add(properties);
+            instanceSystemProperties.add(system);
+            instances.add(null);
+            coordinates.add(null);
+            timings.add(null);
+            createInstance(i, directory, properties, system, ports);
+        }
+
+        exportSystemProperties(coordinates.get(0));
+    }
+
+    /**
+     * Exposes the ports of the first instance to the build (i.e. tasks running in the daemon) - this used to be done at
+     * configuration time, which doesn't happen when the configuration is reused from the configuration cache.
+     */
+    private void exportSystemProperties(CassandraCoordinates instance)
+    {
+        if (params.getAllocatePorts().getOrElse(false)) {
+            return;
+        }
+
+        System.getProperties().put("cassandra.storage.port", String.valueOf(instance.getStoragePort()));
+        System.getProperties().put("cassandra.storage.port.ssl", String.valueOf(instance.getSslStoragePort()));
+        System.getProperties().put("cassandra.native.transport.port", String.valueOf(instance.getNativeTransportPort()));
+    }
+
+    /**
+     * A single instance with the coordinates of the remote node - settings which only apply to started instances are
+     * ignored.
+     */
+    private void createRemote(Path workingDirectory)
+    {
+        if (!params.getRemoteHost().isPresent() || !params.getRemotePort().isPresent()) {
+            throw new IllegalStateException("The remote backend needs a host and a port - i.e. cassandra { remote('localhost', 9042) }");
+        }
+
+        List<String> ignored = new ArrayList<>();
+        if (params.getPoolSize().getOrElse(1) > 1) {
+            ignored.add("poolSize");
+        }
+        if (isCluster()) {
+            ignored.add("nodes");
+        }
+        if (params.getWarmStart().getOrElse(false)) {
+            ignored.add("warmStart");
+        }
+        if (params.getRamDisk().getOrElse(false)) {
+            ignored.add("ramDisk");
+        }
+        if (params.getKeepAlive().getOrElse(false)) {
+            ignored.add("keepAlive");
+        }
+        if (params.getMetrics().getOrElse(false)) {
+            ignored.add("metrics");
+        }
+        if (!params.getSSTables().isEmpty()) {
+            ignored.add("generated SSTables");
+        }
+        if (!ignored.isEmpty()) {
+            LOGGER.warn(String.join(", ", ignored) + " are ignored - Cassandra runs on " + params.getRemoteHost().get() +
+                        ":" + params.getRemotePort().get() + " and is not started by the build.");
+        }
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("rpc_address", params.getRemoteHost().get());
+        properties.put("native_transport_port", params.getRemotePort().get());
+        Map<String, Object> system = new HashMap<>();
+
+        instanceConfigProperties.add(properties);
+        instanceSystemProperties.add(system);
+        instances.add(null);
+        coordinates.add(null);
+        timings.add(null);
+        createInstance(0, workingDirectory, properties, system, null);
+    }
+
+    private void createCluster(int nodes, Path workingDirectory, Map<String, Object> configProperties, Map<String, Object> systemProperties)
+    {
+        boolean loopbackAliases = params.getClusterLoopbackAliases().getOrElse(ClusterTopology.supportsLoopbackAliases());
+        if (params.getWarmStart().getOrElse(false)) {
+            LOGGER.warn("Warm start snapshots are not supported for clusters - the nodes are bootstrapped from scratch.");
+        }
+        if (!params.getSSTables().isEmpty()) {
+            throw new IllegalStateException(SSTableGenerator.CLUSTER_NOT_SUPPORTED);
+        }
+
+        PortAllocator allocator = getPortAllocator();
+        for (int i = 0; i < nodes; i++) {
+            Path directory = i == 0 ? workingDirectory : workingDirectory.resolveSibling(workingDirectory.getFileName() + "-node" + i);
+            String address = ClusterTopology.address(i, loopbackAliases);
+            Map<String, Object> properties = new HashMap<>(configProperties);
+            Map<String, Object> system = new HashMap<>(systemProperties);
+            List<Integer> ports = null;
+            if (i > 0) {
+                // The ports can be shared when every node has its own address - except for JMX, which is bound to localhost.
+                ports = loopbackAliases ? allocator.reserve(1) : allocator.reserve(4);
+                system.put("cassandra.jmx.local.port", ports.get(ports.size() - 1));
+                if (!loopbackAliases) {
+                    properties.put("storage_port", ports.get(0));
+                    properties.put("ssl_storage_port", ports.get(1));
+                    properties.put("native_transport_port", ports.get(2));
+                }
+            }
+
+            String token = ClusterTopology.initialToken(i, nodes);
+            properties.put("listen_address", address);
+            properties.put("rpc_address", address);
+            properties.put("num_tokens", 1);
+            properties.put("initial_token", token);
+            // Empty cluster with fixed tokens - there is nothing to stream, so nodes can join concurrently.
+            properties.put("auto_bootstrap", false);
+            system.put("cassandra.initial_token", token);
+            system.put("cassandra.consistent.rangemovement", false);
+            system.remove("cassandra.num_tokens");
+
+            if (i == 0) {
+                seeds = address + ":" + properties.getOrDefault("storage_port", 7000);
+            }
+
+            instanceConfigProperties.add(properties);
+            instanceSystemProperties.add(system);
+            instances.add(null);
+            coordinates.add(null);
+            timings.add(null);
+            createInstance(i, directory, properties, system, ports);
+        }
+    }
+
+    private void createInstance(int index, Path directory, Map<String, Object> properties, Map<String, Object> system, List<Integer> ports)
+    {
+        CassandraCoordinates instance = CassandraCoordinates.of(index, properties, system, directory);
+        StartupTimings timing = new StartupTimings(instance);
+        instances.set(index, createCassandra(directory, properties, system, timing));
+        coordinates.set(index, instance);
+        timings.set(index, timing);
+        instanceConfigProperties.set(index, properties);
+        instanceSystemProperties.set(index, system);
+        if (ports != null) {
+            allocatedPorts.put(index, ports);
+            reservedPorts.put(index, ports);
+        }
+    }
+
+    private PortAllocator getPortAllocator()
+    {
+        return new PortAllocator(params.getPortLockDirectory().get().getAsFile().toPath());
+    }
+
+    /**
+     * Starts an instance. When an instance with allocated ports fails because one of them has been taken in the meantime
+     * (by a process which doesn't use {@link PortAllocator}), it is recreated with other ports and started again.
+     */
+    private void startInstance(int index)
+    {
+        synchronized (this) {
+            ready.remove(index);
+            reused.remove(index);
+        }
+
+        if (!isRemote()) {
+            reserveReleasedPorts(index);
+            if (reuseKeptAlive(index)) {
+                return;
+            }
+            Path workingDirectory;
+            synchronized (this) {
+                workingDirectory = instances.get(index).getWorkingDirectory();
+            }
+            reapOrphans(workingDirectory);
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            Cassandra server;
+            StartupTimings timing;
+            synchronized (this) {
+                server = instances.get(index);
+                timing = timings.get(index);
+            }
+
+            Path workingDirectory = server.getWorkingDirectory();
+
+            long logOffset = getSystemLogSize(workingDirectory);
+
+            LOGGER.lifecycle("Starting Cassandra in " + workingDirectory);
+            clearOutput(workingDirectory);
+            timing.begin();
+            try {
+                server.start();
+            }
+            catch (RuntimeException e) {
+                boolean replaceable;
+                synchronized (this) {
+                    // Nodes of a cluster have to keep the ports the others know about.
+                    replaceable = allocatedPorts.containsKey(index) && !isCluster();
+                }
+                if (attempt >= MAX_START_ATTEMPTS || !replaceable || !isBindError(e, workingDirectory, logOffset)) {
+                    printOutput(workingDirectory, "Cassandra in " + workingDirectory + " has failed to start");
+                    throw e;
+                }
+
+                LOGGER.warn("Cassandra in " + workingDirectory + " could not bind its ports (" + timing.getCoordinates() +
+                            ") - retrying with other ports (attempt " + (attempt + 1) + " of " + MAX_START_ATTEMPTS + ")");
+                try {
+                    server.stop();
+                }
+                catch (RuntimeException ignored) {
+                    // The process is most likely gone already.
+                }
+                reallocatePorts(index);
+                continue;
+            }
+
+            // Cassandra#start() returning doesn't necessarily mean clients can connect.
+            CassandraCoordinates instance = timing.getCoordinates();
+            try {
+                NativeProtocolProbe.await(instance.getHost(), instance.getNativeTransportPort(), params.getStartupTimeout().get());
+            }
+            catch (RuntimeException e) {
+                printOutput(workingDirectory, "Cassandra in " + workingDirectory + " does not accept CQL connections");
+                throw e;
+            }
+            timing.mark(StartupTimings.CQL_READY);
+
+            LOGGER.lifecycle("Cassandra in " + workingDirectory + " is ready in " + timing.getTotal() + "ms (" + timing + ")");
+            if (params.getKeepAlive().getOrElse(false) && !isRemote()) {
+                keepAlive(index, server);
+            }
+            synchronized (this) {
+                ready.add(index);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Reuses an instance kept alive by a previous build, if its configuration is the same. Otherwise (or when keepAlive
+     * has been disabled since) the old process is stopped, so it doesn't block the ports.
+     *
+     * @return true when the instance has been reused.
+     */
+    private boolean reuseKeptAlive(int index)
+    {
+        Cassandra server;
+        StartupTimings timing;
+        synchronized (this) {
+            server = instances.get(index);
+            timing = timings.get(index);
+        }
+
+        Path workingDirectory = server.getWorkingDirectory();
+        Optional<KeepAliveState> previous = KeepAliveState.forWorkingDirectory(workingDirectory);
+        if (previous.isEmpty()) {
+            return false;
+        }
+
+        KeepAliveState state = previous.get();
+        boolean keepAlive = params.getKeepAlive().getOrElse(false);
+        boolean sameConfiguration = state.getConfigHash().equals(getConfigHash(index, server));
+        if (keepAlive && sameConfiguration && state.isRunning()) {
+            synchronized (this) {
+                if (allocatedPorts.containsKey(index)) {
+                    adoptPorts(index, state);
+                    timing = timings.get(index);
+                }
+            }
+
+            CassandraCoordinates instance = timing.getCoordinates();
+            if (NativeProtocolProbe.probe(instance.getHost(), instance.getNativeTransportPort())) {
+                state.markInUse();
+                state.save();
+                synchronized (this) {
+                    keptAlive.put(index, state);
+                    ready.add(index);
+                    reused.add(index);
+                }
+                timing.begin();
+                timing.mark(StartupTimings.CQL_READY);
+                LOGGER.lifecycle("Reusing Cassandra kept alive in " + workingDirectory + " (pid " + state.getPid() + ")");
+                return true;
+            }
+        }
+
+        if (state.isRunning()) {
+            String reason = !keepAlive ? "keepAlive is disabled" : !sameConfiguration ? "the configuration has changed" : "it is not responding";
+            LOGGER.lifecycle("Stopping Cassandra kept alive in " + workingDirectory + " (pid " + state.getPid() + ") - " + reason);
+        }
+        state.terminate();
+
+        return false;
+    }
+
+    /**
+     * Replaces the random ports allocated for this build with the ports of the kept alive instance.
+     */
+    private void adoptPorts(int index, KeepAliveState state)
+    {
+        getPortAllocator().release(reservedPorts.getOrDefault(index, List.of()));
+        reservedPorts.remove(index);
+
+        CassandraCoordinates current = coordinates.get(index);
+        Map<String, Object> properties = new HashMap<>(instanceConfigProperties.get(index));
+        properties.put("storage_port", state.getPort("storage", current.getStoragePort()));
+        properties.put("ssl_storage_port", state.getPort("ssl_storage", current.getSslStoragePort()));
+        properties.put("native_transport_port", state.getPort("native_transport", current.getNativeTransportPort()));
+        Map<String, Object> system = new HashMap<>(instanceSystemProperties.get(index));
+        system.put("cassandra.jmx.local.port", state.getPort("jmx", current.getJmxPort()));
+
+        // Still flagged as allocated, so the hash keeps ignoring the ports.
+        createInstance(index, Path.of(current.getWorkingDirectory()), properties, system, List.of());
+        if (index == 0) {
+            exportSystemProperties(coordinates.get(0));
+        }
+    }
+
+    /**
+     * Records the state of a freshly started instance so the next build can reuse it, and starts a watchdog enforcing the
+     * idle timeout.
+     */
+    private void keepAlive(int index, Cassandra server)
+    {
+        Path workingDirectory = server.getWorkingDirectory();
+        Optional<ProcessHandle> process = CassandraProcesses.findOwn(workingDirectory);
+        if (process.isEmpty()) {
+            LOGGER.warn("Cannot find the process of Cassandra in " + workingDirectory + " - it will be stopped with the build.");
+            return;
+        }
+
+        Duration idleTimeout = params.getKeepAliveIdleTimeout().getOrElse(Duration.ofMinutes(30));
+        KeepAliveState state = KeepAliveState.create(workingDirectory, process.get(), getConfigHash(index, server), idleTimeout);
+        CassandraCoordinates instance;
+        synchronized (this) {
+            instance = coordinates.get(index);
+        }
+        state.setPort("storage", instance.getStoragePort());
+        state.setPort("ssl_storage", instance.getSslStoragePort());
+        state.setPort("native_transport", instance.getNativeTransportPort());
+        state.setPort("jmx", instance.getJmxPort());
+        state.markInUse();
+        state.save();
+        try {
+            KeepAliveWatchdog.launch(state, workingDirectory.resolve("logs/keep-alive-watchdog.log"));
+        }
+        catch (IOException e) {
+            LOGGER.warn("Failed to start the keep alive watchdog - the idle timeout will not be enforced: " + e.getMessage());
+        }
+        synchronized (this) {
+            keptAlive.put(index, state);
+        }
+    }
+
+    /**
+     * Kills Cassandra processes left in the working directory by a crashed daemon - they would keep the ports (and the
+     * memory) this instance needs. Instances kept alive on purpose have been reused or stopped by now.
+     */
+    private static void reapOrphans(Path workingDirectory)
+    {
+        for (ProcessHandle orphan : CassandraProcesses.findOrphans(workingDirectory)) {
+            LOGGER.warn("Killing Cassandra (pid " + orphan.pid() + ") left in " + workingDirectory + " by a previous build");
+            if (!CassandraProcesses.killTree(orphan, ORPHAN_KILL_TIMEOUT)) {
+                LOGGER.warn("Cassandra (pid " + orphan.pid() + ") in " + workingDirectory + " is still running");
+            }
+        }
+    }
+
+    /**
+     * Stops an instance according to the shutdown policy - the process tree is killed when it doesn't stop in time, so
+     * a hanging flush can't block the build (or leave a JVM behind which holds on to the ports).
+     */
+    private void stopInstance(Cassandra server)
+    {
+        Path workingDirectory = server.getWorkingDirectory();
+        Duration timeout = params.getShutdownTimeout().getOrElse(Duration.ofSeconds(30));
+        ShutdownPolicy policy = params.getShutdownPolicy()
+                                      .getOrElse(params.getRamDisk().getOrElse(false) ? ShutdownPolicy.KILL : ShutdownPolicy.DRAIN);
+
+        Optional<ProcessHandle> process = CassandraProcesses.findOwn(workingDirectory);
+        if (policy == ShutdownPolicy.KILL && process.isPresent()) {
+            // Nothing is flushed - embedded-cassandra only has to notice the process is gone.
+            CassandraProcesses.killTree(process.get(), timeout);
+        }
+
+        CompletableFuture<Void> stopping = CompletableFuture.runAsync(server::stop, runnable -> {
+            Thread thread = new Thread(runnable, "embedded-cassandra-shutdown");
+            thread.setDaemon(true);
+            thread.start();
+        });
+        try {
+            stopping.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            return;
+        }
+        catch (TimeoutException e) {
+            LOGGER.warn("Cassandra in " + workingDirectory + " has not stopped within " + timeout + " - killing it");
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            if (policy == ShutdownPolicy.KILL) {
+                // The process has been killed underneath embedded-cassandra.
+                return;
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to stop Cassandra in " + workingDirectory, e.getCause());
+        }
+
+        if (process.isPresent() && !CassandraProcesses.killTree(process.get(), ORPHAN_KILL_TIMEOUT)) {
+            LOGGER.warn("Cassandra (pid " + process.get().pid() + ") in " + workingDirectory + " is still running");
+        }
+    }
+
+    /**
+     * Everything which ends up in the running process - a kept alive instance is only reused when this is unchanged.
+     */
+    private synchronized String getConfigHash(int index, Cassandra server)
+    {
+        Map<String, Object> configProperties = new TreeMap<>(instanceConfigProperties.get(index));
+        Map<String, Object> systemProperties = new TreeMap<>(instanceSystemProperties.get(index));
+        if (allocatedPorts.containsKey(index)) {
+            // Allocated per build - the ports of the kept alive instance are adopted instead.
+            configProperties.keySet().removeAll(List.of("storage_port", "ssl_storage_port", "native_transport_port"));
+            systemProperties.remove("cassandra.jmx.local.port");
+        }
+
+        return CassandraSnapshotCache.sha256(server.getVersion() + "\n" +
+                                             configProperties + "\n" +
+                                             systemProperties + "\n" +
+                                             params.getJvmOptions().get() + "\n" +
+                                             params.getRamDisk().getOrElse(false));
+    }
+
+    private static long getSystemLogSize(Path workingDirectory)
+    {
+        try {
+            Path log = workingDirectory.resolve("logs/system.log");
+            return Files.exists(log) ? Files.size(log) : 0;
+        }
+        catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Looks for bind errors in the exception and in what has been logged since the start.
+     */
+    private static boolean isBindError(Throwable error, Path workingDirectory, long logOffset)
+    {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            String message = String.valueOf(t.getMessage());
+            if (t instanceof BindException || BIND_ERRORS.stream().anyMatch(message::contains)) {
+                return true;
+            }
+        }
+
+        Path log = workingDirectory.resolve("logs/system.log");
+        try {
+            if (Files.exists(log) && Files.size(log) > logOffset) {
+                byte[] content = Files.readAllBytes(log);
+                String logged = new String(content, (int) Math.min(logOffset, content.length), (int) (content.length - Math.min(logOffset, content.length)),
+                                           StandardCharsets.UTF_8);
+                return BIND_ERRORS.stream().anyMatch(logged::contains);
+            }
+        }
+        catch (IOException e) {
+            // Can't tell - don't retry.
+        }
+
+        return false;
+    }
+
+    /**
+     * Reserves ports for an instance with allocated ports which is started again after it has been stopped - its
+     * reservations have been released, so other builds may have taken the ports in the meantime.
+     */
+    private synchronized void reserveReleasedPorts(int index)
+    {
+        List<Integer> ports = allocatedPorts.get(index);
+        if (ports == null || reservedPorts.containsKey(index)) {
+            return;
+        }
+
+        if (!isCluster()) {
+            reallocatePorts(index);
+            return;
+        }
+
+        // The other nodes know the ports of a cluster node - it keeps them, reserved as far as they are still free.
+        PortAllocator allocator = getPortAllocator();
+        reservedPorts.put(index, ports.stream().filter(allocator::tryReserve).collect(Collectors.toList()));
+    }
+
+    private synchronized void reallocatePorts(int index)
+    {
+        PortAllocator allocator = getPortAllocator();
+        allocator.release(reservedPorts.getOrDefault(index, List.of()));
+        reservedPorts.remove(index);
+
+        List<Integer> ports = allocator.reserve(4);
+        Map<String, Object> properties = new HashMap<>(instanceConfigProperties.get(index));
+        properties.put("storage_port", ports.get(0));
+        properties.put("ssl_storage_port", ports.get(1));
+        properties.put("native_transport_port", ports.get(2));
+        Map<String, Object> system = new HashMap<>(instanceSystemProperties.get(index));
+        system.put("cassandra.jmx.local.port", ports.get(3));
+
+        createInstance(index, instances.get(index).getWorkingDirectory(), properties, system, ports);
+
+        if (index == 0) {
+            exportSystemProperties(coordinates.get(0));
+        }
+    }
+
+    public boolean isRemote()
+    {
+        return params.getBackend().getOrElse(CassandraBackend.EMBEDDED) == CassandraBackend.REMOTE;
+    }
+
+    public boolean isCluster()
+    {
+        return params.getNodes().getOrElse(1) > 1;
+    }
+
+    /**
+     * Waits until the first node sees all the other nodes as peers.
+     */
+    private void awaitCluster()
+    {
+        int nodes;
+        CassandraCoordinates seed;
+        synchronized (this) {
+            nodes = instances.size();
+            seed = coordinates.get(0);
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + params.getStartupTimeout().get().toNanos();
+        int peers = 0;
+        while (System.nanoTime() < deadline) {
+            try (CqlConnection connection = CqlConnection.open(seed.getHost(), seed.getNativeTransportPort(),
+                                                               params.getCqlUsername().get(), params.getCqlPassword().get())) {
+                peers = connection.query("SELECT peer FROM system.peers").size();
+                if (peers >= nodes - 1) {
+                    LOGGER.lifecycle("Cluster of " + nodes + " nodes is up in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+                    return;
+                }
+            }
+            catch (IOException | CqlException e) {
+                // Not ready yet.
+            }
+
+            try {
+                Thread.sleep(500);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the cluster", e);
+            }
+        }
+
+        throw new IllegalStateException("Only " + (peers + 1) + " of " + nodes + " nodes have joined the cluster within " +
+                                        params.getStartupTimeout().get());
+    }
+
+    private void clearOutput(Path workingDirectory)
+    {
+        CassandraOutputLogger output = outputs.get(workingDirectory);
+        if (output != null) {
+            output.clear();
+        }
+    }
+
+    private void printOutput(Path workingDirectory, String reason)
+    {
+        CassandraOutputLogger output = outputs.get(workingDirectory);
+        if (output != null) {
+            output.printTail(reason);
+        }
+    }
+
+    private synchronized void startMetrics()
+    {
+        if (!params.getMetrics().getOrElse(false) || !metricsSamplers.isEmpty() || isRemote()) {
+            return;
+        }
+
+        Duration interval = params.getMetricsInterval().getOrElse(Duration.ofSeconds(5));
+        for (StartupTimings timing : timings) {
+            CassandraMetricsSampler sampler = new CassandraMetricsSampler(timing.getCoordinates(), interval);
+            sampler.start();
+            metricsSamplers.add(sampler);
+        }
+    }
+
+    /**
+     * Takes the last samples while the instances are still running and writes the report - called without holding the
+     * lock, a last sample can take a while.
+     *
+     * @return the violated thresholds.
+     */
+    private List<String> stopMetrics(List<CassandraMetricsSampler> samplers)
+    {
+        if (samplers.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        forEachConcurrently(samplers, CassandraMetricsSampler::stop);
+        CassandraMetricsReport report = new CassandraMetricsReport(samplers, params.getMetricsInterval().getOrElse(Duration.ofSeconds(5)));
+
+        List<String> violations = report.check(params.getMetricsThresholds().getOrElse(Collections.emptyMap()));
+        if (params.getReportsDirectory().isPresent()) {
+            Path reportsDirectory = params.getReportsDirectory().get().getAsFile().toPath();
+            try {
+                report.write(reportsDirectory, violations);
+                LOGGER.lifecycle("Cassandra metrics report: " + reportsDirectory.resolve("metrics.txt"));
+            }
+            catch (IOException e) {
+                LOGGER.warn("Failed to write the metrics report to " + reportsDirectory + ": " + e.getMessage());
+            }
+        }
+
+        return violations;
+    }
+
+    /**
+     * Starts/stops the instances in parallel - Cassandra spends most of the start up time waiting, so there is no point
+     * in doing it one after another.
+     */
+    private static <T> void forEachConcurrently(List<T> items, Consumer<T> action)
+    {
+        if (items.size() <= 1) {
+            items.forEach(action);
+            return;
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (T item : items) {
+            futures.add(CompletableFuture.runAsync(() -> action.accept(item)));
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void applyCqlScripts(List<Cassandra> pool)
+    {
+        List<Path> scripts = new ArrayList<>();
+        // The tables of the generated SSTables are created first - their data is loaded from the files already in place
+        // (which a remote node doesn't have).
+        if (!isRemote()) {
+            for (File sstables : params.getSSTables().getFiles()) {
+                scripts.add(sstables.toPath().resolve("schema.cql"));
+            }
+        }
+        params.getCqlScripts().getFiles().forEach(f -> scripts.add(f.toPath()));
+        if (scripts.isEmpty()) {
+            return;
+        }
+
+        CqlScriptRunner runner = new CqlScriptRunner(params.getCqlUsername().get(), params.getCqlPassword().get(), params.getStartupTimeout().get());
+        forEachConcurrently(pool, server -> {
+            CassandraCoordinates instance;
+            synchronized (this) {
+                instance = timings.get(instances.indexOf(server)).getCoordinates();
+            }
+            long start = System.nanoTime();
+            try {
+                int statements = runner.run(instance, scripts);
+                LOGGER.lifecycle("Executed " + statements + " CQL statements against " + instance.getHost() + ":" +
+                                 instance.getNativeTransportPort() + " in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Failed to execute the CQL scripts against " + instance, e);
+            }
+        });
+    }
+
+    private void writeStartupReport(Cassandra server)
+    {
+        if (!params.getReportsDirectory().isPresent()) {
+            return;
+        }
+
+        List<StartupTimings> current;
+        synchronized (this) {
+            current = new ArrayList<>(timings);
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"version\":\"").append(server.getVersion()).append('"')
+            .append(",\"jdk\":\"").append(Runtime.version()).append('"')
+            .append(",\"timestamp\":\"").append(Instant.now()).append('"')
+            .append(",\"instances\":[");
+        for (int i = 0; i < current.size(); i++) {
+            json.append(i == 0 ? "" : ",").append(current.get(i).toJson());
+        }
+        json.append("]}\n");
+
+        Path report = params.getReportsDirectory().get().getAsFile().toPath().resolve("startup.json");
+        try {
+            Files.createDirectories(report.getParent());
+            Files.writeString(report, json.toString());
+        }
+        catch (IOException e) {
+            LOGGER.warn("Failed to write the startup report " + report + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drains the freshly bootstrapped instance (Cassandra drains on shutdown), archives its data directories for
+     * subsequent builds and starts it again.
+     */
+    private void createSnapshot(Cassandra server)
+    {
+        boolean keepAlive = params.getKeepAlive().getOrElse(false);
+        String key;
+        synchronized (this) {
+            if (snapshotKey == null || reused.contains(0)) {
+                // A reused instance (kept alive by a previous build) is not owned by this build.
+                return;
+            }
+            key = snapshotKey;
+        }
+
+        CassandraSnapshotCache cache = getSnapshotCache();
+        if (cache.exists(key)) {
+            return;
+        }
+
+        StartupTimings timing;
+        synchronized (this) {
+            ready.remove(0);
+            timing = timings.get(0);
+        }
+
+        Path workingDirectory = server.getWorkingDirectory();
+        LOGGER.lifecycle("Creating warm start snapshot " + key);
+        server.stop();
+        try {
+            cache.store(key, workingDirectory);
+        }
+        catch (IOException e) {
+            LOGGER.warn("Failed to create warm start snapshot " + key + ": " + e.getMessage());
+        }
+
+        clearOutput(workingDirectory);
+        timing.begin();
+        server.start();
+        // Cassandra#start() returning doesn't necessarily mean clients can connect - the CQL scripts are applied next.
+        CassandraCoordinates instance = timing.getCoordinates();
+        try {
+            NativeProtocolProbe.await(instance.getHost(), instance.getNativeTransportPort(), params.getStartupTimeout().get());
+        }
+        catch (RuntimeException e) {
+            printOutput(workingDirectory, "Cassandra in " + workingDirectory + " does not accept CQL connections after the snapshot");
+            throw e;
+        }
+        timing.mark(StartupTimings.CQL_READY);
+
+        LOGGER.lifecycle("Cassandra in " + workingDirectory + " is ready again in " + timing.getTotal() + "ms (" + timing + ")");
+        if (keepAlive) {
+            // New process - the previous one has been stopped for the snapshot.
+            keepAlive(0, server);
+        }
+        synchronized (this) {
+            ready.add(0);
+        }
+    }
+
+    private RamDiskDataDirectory getRamDiskDataDirectory()
+    {
+        return new RamDiskDataDirectory(params.getRamDiskDirectory().get().getAsFile().toPath(), params.getRamDiskRequiredSpace().getOrElse(512L));
+    }
+
+    private CassandraSnapshotCache getSnapshotCache()
+    {
+        return new CassandraSnapshotCache(params.getSnapshotCacheDirectory().get().getAsFile().toPath());
+    }
+
+    private Cassandra createCassandra(Path workingDirectory,
+                                      Map<String, Object> configProperties,
+                                      Map<String, Object> systemProperties,
+                                      StartupTimings timing)
+    {
+        if (isRemote()) {
+            CassandraCoordinates instance = timing.getCoordinates();
+            return new RemoteCassandra(instance.getHost(),
+                                       instance.getNativeTransportPort(),
+                                       workingDirectory,
+                                       params.getVersion().isPresent() ? Version.parse(params.getVersion().get()) : null,
+                                       params.getCqlUsername().get(),
+                                       params.getCqlPassword().get(),
+                                       params.getStartupTimeout().get());
+        }
+
+        CassandraBuilder builder = new CassandraBuilder();
+        if (params.getVersion().isPresent()) {
+            builder.version(params.getVersion().get());
+        }
+        builder.workingDirectory(() -> workingDirectory);
+
+        CassandraOutputLogger output = new CassandraOutputLogger(workingDirectory.getFileName().toString(), params.getLogTailLines().getOrElse(50));
+        outputs.put(workingDirectory, output);
+        builder.logger(output);
+
+        // Null keeps the logging configuration of the distribution.
+        String logLevel = params.getTunedLogging().getOrElse(false) ? params.getLogLevel().getOrElse("WARN").toUpperCase() : null;
+
+        CassandraWorkingDirectory prepared = new CassandraWorkingDirectory(createInitializer());
+        String configurationKey = CassandraWorkingDirectory.configurationKey(configProperties, seeds, params.getJvmOptions().get(), logLevel);
+        builder.workingDirectoryInitializer((directory, version) -> {
+            if (prepared.prepare(directory, version, configurationKey) == CassandraWorkingDirectory.Preparation.NONE) {
+                LOGGER.lifecycle("Reusing the prepared working directory " + directory);
+            }
+            timing.mark(StartupTimings.DISTRIBUTION);
+        });
+        // What has been prepared is kept for the next build - CassandraWorkingDirectory refreshes what has changed.
+        builder.workingDirectoryDestroyer(WorkingDirectoryDestroyer.doNothing());
+        // Kept alive instances must survive the Gradle daemon.
+        builder.registerShutdownHook(!params.getKeepAlive().getOrElse(false));
+
+        applyJvmFixes(builder);
+
+        builder.jvmOptions(params.getJvmOptions().get());
+        if (params.getJvmOptions().get().stream().anyMatch(option -> GC_OPTION.matcher(option).matches())) {
+            // Two collectors would prevent the JVM from starting - the configured one wins over conf/jvm*-server.options.
+            builder.addWorkingDirectoryCustomizers((directory, version) -> removeGarbageCollectorOptions(directory));
+        }
+        if (logLevel != null) {
+            builder.addWorkingDirectoryCustomizers((directory, version) -> writeTunedLogging(directory, logLevel));
+        }
+        builder.configProperties(configProperties);
+        builder.systemProperties(systemProperties);
+
+        builder.configure(new SimpleSeedProviderConfigurator(seeds != null ? seeds : "127.0.0.1:" + configProperties.getOrDefault("storage_port", 7000)));
+
+        builder.startupTimeout(params.getStartupTimeout().get());
+
+        // Must be in place before anything is written into the data directory.
+        if (params.getRamDisk().getOrElse(false)) {
+            RamDiskDataDirectory ramDisk = getRamDiskDataDirectory();
+            builder.addWorkingDirectoryCustomizers((directory, version) -> ramDisk.prepare(directory));
+        }
+
+        String key = snapshotKey;
+        if (key != null) {
+            CassandraSnapshotCache cache = getSnapshotCache();
+            builder.addWorkingDirectoryCustomizers((directory, version) -> {
+                if (cache.restore(key, directory)) {
+                    LOGGER.lifecycle("Restored warm start snapshot " + key + " into " + directory);
+                }
+            });
+        }
+
+        // Generated SSTables must be in place before the tables are created.
+        if (!isCluster()) {
+            builder.addWorkingDirectoryCustomizers((directory, version) -> installSSTables(directory));
+        }
+
+        // Customizers are applied right before the process is started.
+        builder.addWorkingDirectoryCustomizers((directory, version) -> {
+            timing.mark(StartupTimings.CONFIGURATION);
+            timing.watch(directory, params.getStartupTimeout().get());
+        });
+
+        return builder.build();
+    }
+
+    /**
+     * The fixes depend on the version of the instance - instances of a version matrix get different ones.
+     */
+    private void applyJvmFixes(CassandraBuilder builder)
+    {
+        Version version = builder.getVersion();
+        int jdkVersion = Runtime.version().feature();
+        if (version.getMajor() < 4 && jdkVersion > 8) {
+            LOGGER.warn("Cassandra " + version + " only supports JDK 8 - it is unlikely to start on " + Runtime.version() + ".");
+        }
+
+        // Named as jvm15 but copied as jvm11 on purpose, because Cassandra doesn't know anything about JDK >= 11 yet so naming it differently
+        // will not work. Cassandra 5 ships options for JDK 17 itself.
+        if (jdkVersion >= 15 && jdkVersion < 18 && version.getMajor() == 4 && params.getCassandra4JVMAutoFix().get()) {
+            builder.addWorkingDirectoryResource(new ClassPathResource("cassandra/server/jvm17-clients.options"), "conf/jvm11-clients.options")
+                   .addWorkingDirectoryResource(new ClassPathResource("cassandra/server/jvm17-server.options"), "conf/jvm11-server.options");
+        }
+    }
+
+    private WorkingDirectoryInitializer createInitializer()
+    {
+        DirectoryProperty distributions = params.getDistributionCacheDirectory();
+        return CassandraWorkingDirectory.createInitializer(distributions.isPresent() ? distributions.get().getAsFile().toPath() : null);
+    }
+
+    private static void removeGarbageCollectorOptions(Path workingDirectory)
+            throws IOException
+    {
+        Path conf = workingDirectory.resolve("conf");
+        if (!Files.isDirectory(conf)) {
+            return;
+        }
+
+        try (Stream<Path> files = Files.list(conf)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().matches("jvm.*-server\\.options")).collect(Collectors.toList())) {
+                List<String> lines = Files.readAllLines(file);
+                List<String> filtered = lines.stream()
+                                             .filter(line -> !GC_OPTION.matcher(line.trim()).matches() &&
+                                                             !GC_TUNING_OPTION.matcher(line.trim()).matches())
+                                             .collect(Collectors.toList());
+                if (filtered.size() != lines.size()) {
+                    // The file may be a link to the shared distribution - replace it instead of writing through it.
+                    Files.delete(file);
+                    Files.write(file, filtered);
+                }
+            }
+        }
+    }
+
+    private static void writeTunedLogging(Path workingDirectory, String logLevel)
+            throws IOException
+    {
+        String configuration;
+        try (InputStream resource = CassandraInstancePool.class.getClassLoader().getResourceAsStream(TUNED_LOGGING)) {
+            if (resource == null) {
+                throw new IllegalStateException("Missing resource " + TUNED_LOGGING);
+            }
+            configuration = new String(resource.readAllBytes(), StandardCharsets.UTF_8).replace("@LEVEL@", logLevel);
+        }
+
+        Path file = workingDirectory.resolve("conf/logback.xml");
+        if (Files.isRegularFile(file) && Files.readString(file).equals(configuration)) {
+            return;
+        }
+
+        // The file may be a link to the shared distribution - replace it instead of writing through it.
+        Files.deleteIfExists(file);
+        Files.writeString(file, configuration);
+    }
+
+    private void installSSTables(Path workingDirectory)
+            throws IOException
+    {
+        for (File sstables : params.getSSTables().getFiles()) {
+            Path keyspaces = sstables.toPath().resolve("data");
+            if (!Files.isDirectory(keyspaces)) {
+                continue;
+            }
+
+            try (Stream<Path> tables = Files.walk(keyspaces, 2)) {
+                for (Path table : tables.filter(p -> keyspaces.relativize(p).getNameCount() == 2).collect(Collectors.toList())) {
+                    Path target = workingDirectory.resolve("data/data").resolve(keyspaces.relativize(table).toString());
+                    // Already installed in a reused data directory - Cassandra may have compacted them since.
+                    if (!Files.exists(target)) {
+                        CassandraSnapshotCache.copyTree(table, target, true);
+                        LOGGER.lifecycle("Installed SSTables " + table + " into " + target);
+                    }
+                }
+            }
+        }
+    }
+
+}
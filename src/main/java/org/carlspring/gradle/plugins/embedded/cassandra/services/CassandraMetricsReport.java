@@ -0,0 +1,151 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the summary of the sampled metrics ({@code metrics.json} and {@code metrics.txt}) and checks it against the
+ * configured thresholds.
+ */
+public class CassandraMetricsReport
+{
+
+    private static final Logger LOGGER = Logging.getLogger(CassandraMetricsReport.class);
+
+    private final List<CassandraMetricsSampler> samplers;
+
+    private final Duration interval;
+
+    private final List<Map<String, Double>> summaries = new ArrayList<>();
+
+    public CassandraMetricsReport(List<CassandraMetricsSampler> samplers, Duration interval)
+    {
+        this.samplers = samplers;
+        this.interval = interval;
+        for (CassandraMetricsSampler sampler : samplers) {
+            summaries.add(sampler.summarize());
+        }
+    }
+
+    /**
+     * @param thresholds maximum values per summary metric (i.e. {@code gcPauseMaxMillis = 500}).
+     * @return the violated thresholds (empty when all instances are within them).
+     */
+    public List<String> check(Map<String, Number> thresholds)
+    {
+        List<String> violations = new ArrayList<>();
+        thresholds.forEach((metric, threshold) -> {
+            if (!CassandraMetricsSampler.SUMMARY_METRICS.contains(metric)) {
+                LOGGER.warn("Unknown metric threshold " + metric + " - expected one of " + CassandraMetricsSampler.SUMMARY_METRICS);
+                return;
+            }
+
+            for (int i = 0; i < samplers.size(); i++) {
+                double value = summaries.get(i).get(metric);
+                if (value > threshold.doubleValue()) {
+                    violations.add(metric + " of Cassandra in " + samplers.get(i).getCoordinates().getWorkingDirectory() + " is " +
+                                   format(value) + " (threshold: " + threshold + ")");
+                }
+            }
+        });
+
+        return violations;
+    }
+
+    public void write(Path reportsDirectory, List<String> violations)
+            throws IOException
+    {
+        Files.createDirectories(reportsDirectory);
+        Files.writeString(reportsDirectory.resolve("metrics.json"), toJson(violations));
+        Files.writeString(reportsDirectory.resolve("metrics.txt"), toTable(violations));
+    }
+
+    private String toJson(List<String> violations)
+    {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"timestamp\":\"").append(Instant.now()).append('"')
+            .append(",\"intervalMillis\":").append(interval.toMillis())
+            .append(",\"instances\":[");
+        for (int i = 0; i < samplers.size(); i++) {
+            CassandraMetricsSampler sampler = samplers.get(i);
+            CassandraCoordinates coordinates = sampler.getCoordinates();
+            json.append(i == 0 ? "" : ",")
+                .append("{\"index\":").append(coordinates.getIndex())
+                .append(",\"host\":\"").append(coordinates.getHost()).append('"')
+                .append(",\"nativeTransportPort\":").append(coordinates.getNativeTransportPort())
+                .append(",\"workingDirectory\":\"").append(escape(coordinates.getWorkingDirectory())).append('"')
+                .append(",\"summary\":").append(toJson(summaries.get(i)))
+                .append(",\"samples\":[");
+            boolean first = true;
+            for (CassandraMetricsSampler.Sample sample : sampler.getSamples()) {
+                json.append(first ? "" : ",")
+                    .append("{\"timestamp\":\"").append(sample.getTimestamp()).append('"')
+                    .append(",\"values\":").append(toJson(sample.getValues()))
+                    .append('}');
+                first = false;
+            }
+            json.append("]}");
+        }
+        json.append("],\"violations\":[");
+        for (int i = 0; i < violations.size(); i++) {
+            json.append(i == 0 ? "" : ",").append('"').append(escape(violations.get(i))).append('"');
+        }
+
+        return json.append("]}\n").toString();
+    }
+
+    private static String toJson(Map<String, Double> values)
+    {
+        StringBuilder json = new StringBuilder("{");
+        values.forEach((k, v) -> json.append(json.length() == 1 ? "" : ",").append('"').append(k).append("\":").append(format(v)));
+
+        return json.append('}').toString();
+    }
+
+    private String toTable(List<String> violations)
+    {
+        int width = CassandraMetricsSampler.SUMMARY_METRICS.stream().mapToInt(String::length).max().orElse(0);
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-" + width + "s", "metric"));
+        for (CassandraMetricsSampler sampler : samplers) {
+            table.append(String.format("  %15s", "#" + sampler.getCoordinates().getIndex() + " (" + sampler.getSamples().size() + " samples)"));
+        }
+        table.append('\n');
+
+        for (String metric : CassandraMetricsSampler.SUMMARY_METRICS) {
+            table.append(String.format("%-" + width + "s", metric));
+            for (Map<String, Double> summary : summaries) {
+                table.append(String.format("  %15s", format(summary.get(metric))));
+            }
+            table.append('\n');
+        }
+
+        if (!violations.isEmpty()) {
+            table.append("\nThresholds exceeded:\n");
+            violations.forEach(v -> table.append("  ").append(v).append('\n'));
+        }
+
+        return table.toString();
+    }
+
+    private static String format(double value)
+    {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static String escape(String value)
+    {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+}
@@ -0,0 +1,332 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Samples the metrics of a running instance over JMX (the same local JMX port nodetool uses) from a background thread.
+ * <p>
+ * Counters are cumulative in Cassandra, so the summary is calculated from the differences between samples - that way an
+ * instance which has been running before (keepAlive) or which is restarted in the meantime (stopCassandraNode) reports
+ * only what happened while it was sampled.
+ */
+public class CassandraMetricsSampler
+{
+
+    public static final String READS = "reads";
+
+    public static final String READ_LATENCY_P99 = "readLatencyP99Millis";
+
+    public static final String READ_LATENCY_MEAN = "readLatencyMeanMillis";
+
+    public static final String WRITES = "writes";
+
+    public static final String WRITE_LATENCY_P99 = "writeLatencyP99Millis";
+
+    public static final String WRITE_LATENCY_MEAN = "writeLatencyMeanMillis";
+
+    public static final String PENDING_COMPACTIONS = "pendingCompactions";
+
+    public static final String DROPPED_MESSAGES = "droppedMessages";
+
+    public static final String GC_COUNT = "gcCount";
+
+    public static final String GC_TIME = "gcTimeMillis";
+
+    public static final String GC_PAUSE_MAX = "gcPauseMaxMillis";
+
+    public static final String HEAP_USED_MAX = "heapUsedMaxMb";
+
+    private static final Logger LOGGER = Logging.getLogger(CassandraMetricsSampler.class);
+
+    /**
+     * Summary metrics which can be used as thresholds.
+     */
+    public static final List<String> SUMMARY_METRICS = List.of(READS, READ_LATENCY_P99, READ_LATENCY_MEAN,
+                                                               WRITES, WRITE_LATENCY_P99, WRITE_LATENCY_MEAN,
+                                                               PENDING_COMPACTIONS, DROPPED_MESSAGES,
+                                                               GC_COUNT, GC_TIME, GC_PAUSE_MAX, HEAP_USED_MAX);
+
+    private static final String READ_LATENCY = "org.apache.cassandra.metrics:type=ClientRequest,scope=Read,name=Latency";
+
+    private static final String WRITE_LATENCY = "org.apache.cassandra.metrics:type=ClientRequest,scope=Write,name=Latency";
+
+    private static final String COMPACTION_PENDING_TASKS = "org.apache.cassandra.metrics:type=Compaction,name=PendingTasks";
+
+    private static final String DROPPED = "org.apache.cassandra.metrics:type=DroppedMessage,scope=*,name=Dropped";
+
+    /**
+     * {@code getAndResetStats()} returns the GC activity since the previous call (what {@code nodetool gcstats} shows):
+     * interval, max pause, total pause, stdev, reclaimed bytes, count.
+     */
+    private static final String GC_INSPECTOR = "org.apache.cassandra.service:type=GCInspector";
+
+    private static final String MEMORY = "java.lang:type=Memory";
+
+    private final CassandraCoordinates coordinates;
+
+    private final Duration interval;
+
+    private final List<Sample> samples = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Guards the JMX connection - {@link #stop()} takes the last sample itself.
+     */
+    private final Object connectionLock = new Object();
+
+    private volatile boolean running;
+
+    private Thread thread;
+
+    private JMXConnector connector;
+
+    private boolean warned;
+
+    public CassandraMetricsSampler(CassandraCoordinates coordinates, Duration interval)
+    {
+        this.coordinates = coordinates;
+        this.interval = interval;
+    }
+
+    public CassandraCoordinates getCoordinates()
+    {
+        return coordinates;
+    }
+
+    public synchronized void start()
+    {
+        if (running) {
+            return;
+        }
+
+        running = true;
+        thread = new Thread(() -> {
+            while (running) {
+                sample();
+                try {
+                    Thread.sleep(interval.toMillis());
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "embedded-cassandra-metrics-" + coordinates.getIndex());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Takes a last sample (while Cassandra is still running) and stops the background thread.
+     */
+    public synchronized void stop()
+    {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(interval.toMillis() + 5000);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sample();
+        synchronized (connectionLock) {
+            disconnect();
+        }
+    }
+
+    public List<Sample> getSamples()
+    {
+        synchronized (samples) {
+            return new ArrayList<>(samples);
+        }
+    }
+
+    private void sample()
+    {
+        synchronized (connectionLock) {
+            doSample();
+        }
+    }
+
+    private void doSample()
+    {
+        try {
+            MBeanServerConnection connection = connect();
+            Sample sample = new Sample(Instant.now());
+            sample.values.put(READS, toDouble(connection.getAttribute(new ObjectName(READ_LATENCY), "Count")));
+            sample.values.put(READ_LATENCY_P99, micros(connection.getAttribute(new ObjectName(READ_LATENCY), "99thPercentile")));
+            sample.values.put(READ_LATENCY_MEAN, micros(connection.getAttribute(new ObjectName(READ_LATENCY), "Mean")));
+            sample.values.put(WRITES, toDouble(connection.getAttribute(new ObjectName(WRITE_LATENCY), "Count")));
+            sample.values.put(WRITE_LATENCY_P99, micros(connection.getAttribute(new ObjectName(WRITE_LATENCY), "99thPercentile")));
+            sample.values.put(WRITE_LATENCY_MEAN, micros(connection.getAttribute(new ObjectName(WRITE_LATENCY), "Mean")));
+            sample.values.put(PENDING_COMPACTIONS, toDouble(connection.getAttribute(new ObjectName(COMPACTION_PENDING_TASKS), "Value")));
+
+            double dropped = 0;
+            for (ObjectName name : connection.queryNames(new ObjectName(DROPPED), null)) {
+                dropped += toDouble(connection.getAttribute(name, "Count"));
+            }
+            sample.values.put(DROPPED_MESSAGES, dropped);
+
+            double[] gc = (double[]) connection.invoke(new ObjectName(GC_INSPECTOR), "getAndResetStats", new Object[0], new String[0]);
+            sample.values.put(GC_PAUSE_MAX, gc[1]);
+            sample.values.put(GC_TIME, gc[2]);
+            sample.values.put(GC_COUNT, gc[5]);
+
+            CompositeData heap = (CompositeData) connection.getAttribute(new ObjectName(MEMORY), "HeapMemoryUsage");
+            sample.values.put(HEAP_USED_MAX, toDouble(heap.get("used")) / (1024 * 1024));
+
+            samples.add(sample);
+        }
+        catch (Exception e) {
+            // i.e. a node which has been stopped by stopCassandraNode - try to reconnect with the next sample.
+            disconnect();
+            if (!warned) {
+                LOGGER.warn("Failed to sample the metrics of Cassandra in " + coordinates.getWorkingDirectory() +
+                            " over JMX port " + coordinates.getJmxPort() + " (" + e + ")");
+                warned = true;
+            }
+        }
+    }
+
+    private MBeanServerConnection connect()
+            throws IOException
+    {
+        if (connector == null) {
+            // Local JMX is bound to the loopback address - even for cluster nodes listening on 127.0.0.<n>.
+            JMXServiceURL url = new JMXServiceURL("service:jmx:rmi:///jndi/rmi://127.0.0.1:" + coordinates.getJmxPort() + "/jmxrmi");
+            connector = JMXConnectorFactory.connect(url);
+        }
+
+        return connector.getMBeanServerConnection();
+    }
+
+    private void disconnect()
+    {
+        if (connector != null) {
+            try {
+                connector.close();
+            }
+            catch (IOException ignored) {
+                // The connection is broken anyway.
+            }
+            connector = null;
+        }
+    }
+
+    /**
+     * @return the summary of the samples - see {@link #SUMMARY_METRICS}.
+     */
+    public Map<String, Double> summarize()
+    {
+        List<Sample> samples = getSamples();
+        Map<String, Double> summary = new LinkedHashMap<>();
+        summary.put(READS, increase(samples, READS));
+        summary.put(READ_LATENCY_P99, max(samples, READ_LATENCY_P99));
+        summary.put(READ_LATENCY_MEAN, last(samples, READ_LATENCY_MEAN));
+        summary.put(WRITES, increase(samples, WRITES));
+        summary.put(WRITE_LATENCY_P99, max(samples, WRITE_LATENCY_P99));
+        summary.put(WRITE_LATENCY_MEAN, last(samples, WRITE_LATENCY_MEAN));
+        summary.put(PENDING_COMPACTIONS, max(samples, PENDING_COMPACTIONS));
+        summary.put(DROPPED_MESSAGES, increase(samples, DROPPED_MESSAGES));
+        // The GC inspector is reset with every sample - the first one covers the time before sampling has started.
+        List<Sample> sampled = samples.isEmpty() ? samples : samples.subList(1, samples.size());
+        summary.put(GC_COUNT, sum(sampled, GC_COUNT));
+        summary.put(GC_TIME, sum(sampled, GC_TIME));
+        summary.put(GC_PAUSE_MAX, max(sampled, GC_PAUSE_MAX));
+        summary.put(HEAP_USED_MAX, max(samples, HEAP_USED_MAX));
+
+        return summary;
+    }
+
+    /**
+     * Sum of the increases between samples - a decrease means the counter has been reset by a restart.
+     */
+    private static double increase(List<Sample> samples, String metric)
+    {
+        double increase = 0;
+        for (int i = 1; i < samples.size(); i++) {
+            double previous = samples.get(i - 1).get(metric);
+            double current = samples.get(i).get(metric);
+            increase += current >= previous ? current - previous : current;
+        }
+
+        return increase;
+    }
+
+    private static double max(List<Sample> samples, String metric)
+    {
+        return samples.stream().mapToDouble(s -> s.get(metric)).max().orElse(0);
+    }
+
+    private static double sum(List<Sample> samples, String metric)
+    {
+        return samples.stream().mapToDouble(s -> s.get(metric)).sum();
+    }
+
+    private static double last(List<Sample> samples, String metric)
+    {
+        return samples.isEmpty() ? 0 : samples.get(samples.size() - 1).get(metric);
+    }
+
+    private static double toDouble(Object value)
+    {
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    /**
+     * Request latencies are reported in microseconds.
+     */
+    private static double micros(Object value)
+    {
+        return toDouble(value) / 1000;
+    }
+
+    public static class Sample
+    {
+
+        private final Instant timestamp;
+
+        private final Map<String, Double> values = new LinkedHashMap<>();
+
+        Sample(Instant timestamp)
+        {
+            this.timestamp = timestamp;
+        }
+
+        public Instant getTimestamp()
+        {
+            return timestamp;
+        }
+
+        public Map<String, Double> getValues()
+        {
+            return Collections.unmodifiableMap(values);
+        }
+
+        public double get(String metric)
+        {
+            return values.getOrDefault(metric, 0d);
+        }
+
+    }
+
+}
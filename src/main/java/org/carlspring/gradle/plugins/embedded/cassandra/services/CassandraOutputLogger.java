@@ -0,0 +1,239 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import com.github.nosan.embedded.cassandra.commons.logging.Logger;
+import org.gradle.api.logging.LogLevel;
+import org.gradle.api.logging.Logging;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Receives the output (stdout/stderr) of a Cassandra process and streams it line by line into Gradle's logging, at the
+ * level Cassandra has logged it with - errors and warnings show up in the build output, everything else with
+ * {@code --info}/{@code --debug}. Lines which don't start with a level (stack traces, messages of the JVM) take the level
+ * of the line before them.
+ * <p>
+ * The last {@code tailLines} lines are kept, so they can be printed when the start (or a test task) fails.
+ */
+public class CassandraOutputLogger
+        implements Logger
+{
+
+    private static final org.gradle.api.logging.Logger LOGGER = Logging.getLogger(CassandraOutputLogger.class);
+
+    private final String prefix;
+
+    private final int tailLines;
+
+    private final Deque<String> tail = new ArrayDeque<>();
+
+    private LogLevel lastLevel = LogLevel.INFO;
+
+    /**
+     * @param name      prefixed to every line - tells the instances of a pool / the nodes of a cluster apart.
+     * @param tailLines number of lines to keep for {@link #getTail()}.
+     */
+    public CassandraOutputLogger(String name, int tailLines)
+    {
+        this.prefix = "[" + name + "] ";
+        this.tailLines = Math.max(0, tailLines);
+    }
+
+    /**
+     * @return the last lines of the output, oldest first.
+     */
+    public synchronized List<String> getTail()
+    {
+        return new ArrayList<>(tail);
+    }
+
+    public synchronized void clear()
+    {
+        tail.clear();
+    }
+
+    /**
+     * Prints the last lines of the output - there is no need to look for (or rerun with) the logs of the instance.
+     */
+    public void printTail(String reason)
+    {
+        List<String> lines = getTail();
+        if (lines.isEmpty()) {
+            return;
+        }
+
+        StringBuilder message = new StringBuilder();
+        message.append(reason).append(" - the last ").append(lines.size()).append(" lines of the Cassandra output:");
+        for (String line : lines) {
+            message.append('\n').append(prefix).append(line);
+        }
+        LOGGER.error(message.toString());
+    }
+
+    private synchronized void log(LogLevel fallback, Throwable error, String message, Object... args)
+    {
+        for (String line : format(message, args).split("\\R")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            LogLevel level = levelOf(line);
+            if (level == null) {
+                level = isContinuation(line) ? lastLevel : fallback;
+            }
+            lastLevel = level;
+
+            if (tailLines > 0) {
+                if (tail.size() == tailLines) {
+                    tail.removeFirst();
+                }
+                tail.addLast(line);
+            }
+            LOGGER.log(level, prefix + line);
+        }
+
+        if (error != null) {
+            LOGGER.log(fallback, prefix + error.getMessage(), error);
+        }
+    }
+
+    /**
+     * Cassandra's logback patterns start with the level ({@code %-5level}).
+     */
+    private static LogLevel levelOf(String line)
+    {
+        if (line.startsWith("ERROR")) {
+            return LogLevel.ERROR;
+        }
+        if (line.startsWith("WARN")) {
+            return LogLevel.WARN;
+        }
+        if (line.startsWith("INFO")) {
+            return LogLevel.INFO;
+        }
+        if (line.startsWith("DEBUG") || line.startsWith("TRACE")) {
+            return LogLevel.DEBUG;
+        }
+
+        return null;
+    }
+
+    private static boolean isContinuation(String line)
+    {
+        return Character.isWhitespace(line.charAt(0)) || line.startsWith("Caused by:") || line.startsWith("...");
+    }
+
+    private static String format(String message, Object... args)
+    {
+        if (args == null || args.length == 0) {
+            return String.valueOf(message);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        int from = 0;
+        int arg = 0;
+        int placeholder;
+        while (arg < args.length && (placeholder = message.indexOf("{}", from)) >= 0) {
+            sb.append(message, from, placeholder).append(args[arg++]);
+            from = placeholder + 2;
+        }
+        sb.append(message.substring(from));
+
+        return sb.toString();
+    }
+
+    // Everything is enabled - Gradle decides what is shown and the tail needs all of it.
+
+    @Override
+    public boolean isErrorEnabled()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isWarnEnabled()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isInfoEnabled()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isDebugEnabled()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isTraceEnabled()
+    {
+        return true;
+    }
+
+    @Override
+    public void error(String message, Object... args)
+    {
+        log(LogLevel.ERROR, null, message, args);
+    }
+
+    @Override
+    public void error(Throwable error, String message, Object... args)
+    {
+        log(LogLevel.ERROR, error, message, args);
+    }
+
+    @Override
+    public void warn(String message, Object... args)
+    {
+        log(LogLevel.WARN, null, message, args);
+    }
+
+    @Override
+    public void warn(Throwable error, String message, Object... args)
+    {
+        log(LogLevel.WARN, error, message, args);
+    }
+
+    @Override
+    public void info(String message, Object... args)
+    {
+        log(LogLevel.INFO, null, message, args);
+    }
+
+    @Override
+    public void info(Throwable error, String message, Object... args)
+    {
+        log(LogLevel.INFO, error, message, args);
+    }
+
+    @Override
+    public void debug(String message, Object... args)
+    {
+        log(LogLevel.DEBUG, null, message, args);
+    }
+
+    @Override
+    public void debug(Throwable error, String message, Object... args)
+    {
+        log(LogLevel.DEBUG, error, message, args);
+    }
+
+    @Override
+    public void trace(String message, Object... args)
+    {
+        log(LogLevel.DEBUG, null, message, args);
+    }
+
+    @Override
+    public void trace(Throwable error, String message, Object... args)
+    {
+        log(LogLevel.DEBUG, error, message, args);
+    }
+
+}
@@ -0,0 +1,79 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Finds Cassandra processes by their working directory (it is part of their command line, i.e.
+ * {@code -Dcassandra.logdir=<workingDirectory>/logs}) and kills them.
+ */
+public final class CassandraProcesses
+{
+
+    private static final String MAIN_CLASS = "org.apache.cassandra.service.CassandraDaemon";
+
+    private CassandraProcesses()
+    {
+    }
+
+    /**
+     * @return the Cassandra process started by this JVM (the Gradle daemon) in the working directory.
+     */
+    public static Optional<ProcessHandle> findOwn(Path workingDirectory)
+    {
+        return ProcessHandle.current().descendants().filter(p -> isCassandraOf(p, workingDirectory)).findFirst();
+    }
+
+    /**
+     * @return Cassandra processes in the working directory which have not been started by this JVM - i.e. left behind by a
+     * crashed (or killed) daemon.
+     */
+    public static List<ProcessHandle> findOrphans(Path workingDirectory)
+    {
+        Set<Long> own = ProcessHandle.current().descendants().map(ProcessHandle::pid).collect(Collectors.toSet());
+        try (Stream<ProcessHandle> processes = ProcessHandle.allProcesses()) {
+            return processes.filter(p -> !own.contains(p.pid()) && isCassandraOf(p, workingDirectory)).collect(Collectors.toList());
+        }
+    }
+
+    static boolean isCassandraOf(ProcessHandle process, Path workingDirectory)
+    {
+        // With the separator - build/cassandra must not match build/cassandra-1.
+        String directory = workingDirectory.toAbsolutePath() + File.separator;
+
+        return process.info()
+                      .commandLine()
+                      .map(c -> c.contains(MAIN_CLASS) && c.contains(directory))
+                      .orElse(false);
+    }
+
+    /**
+     * Kills the process and its children without giving them a chance to clean up.
+     *
+     * @return true when the process has exited within the timeout.
+     */
+    public static boolean killTree(ProcessHandle process, Duration timeout)
+    {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+        try {
+            process.onExit().get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            return true;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        catch (Exception e) {
+            return !process.isAlive();
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Cache of initialized Cassandra data directories (system keyspaces, superuser, auth tables) keyed by the Cassandra
+ * version and the effective configuration. Restoring a snapshot skips the bootstrap of an empty node.
+ */
+public class CassandraSnapshotCache
+{
+
+    /**
+     * Directories (relative to the working directory) which are archived.
+     */
+    public static final List<String> SNAPSHOT_DIRECTORIES = List.of("data/data", "data/commitlog", "data/saved_caches", "data/hints");
+
+    /**
+     * SSTables are immutable, so files in this directory can be safely hard linked instead of copied.
+     */
+    private static final String IMMUTABLE_DIRECTORY = "data/data";
+
+    /**
+     * Ports do not end up in the initialized data, so they are excluded from the key to allow reusing snapshots with
+     * random ports.
+     */
+    private static final Set<String> IGNORED_PROPERTIES = Set.of("storage_port",
+                                                                 "ssl_storage_port",
+                                                                 "native_transport_port",
+                                                                 "native_transport_port_ssl",
+                                                                 "rpc_port",
+                                                                 "cassandra.jmx.local.port",
+                                                                 "cassandra.jmx.remote.port");
+
+    private final Path cacheDirectory;
+
+    public CassandraSnapshotCache(Path cacheDirectory)
+    {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public static String key(String version,
+                             Map<String, Object> configProperties,
+                             Map<String, Object> systemProperties,
+                             Collection<String> jvmOptions)
+    {
+        StringBuilder sb = new StringBuilder(version).append('\n');
+        new TreeMap<>(configProperties).forEach((k, v) -> {
+            if (!IGNORED_PROPERTIES.contains(k)) {
+                sb.append("config:").append(k).append('=').append(v).append('\n');
+            }
+        });
+        new TreeMap<>(systemProperties).forEach((k, v) -> {
+            if (!IGNORED_PROPERTIES.contains(k)) {
+                sb.append("system:").append(k).append('=').append(v).append('\n');
+            }
+        });
+        jvmOptions.forEach(o -> sb.append("jvm:").append(o).append('\n'));
+
+        return version + "-" + sha256(sb.toString()).substring(0, 16);
+    }
+
+    public boolean exists(String key)
+    {
+        return Files.isDirectory(cacheDirectory.resolve(key));
+    }
+
+    /**
+     * Restores the snapshot into a working directory which has not been started yet.
+     *
+     * @return true when the snapshot was restored.
+     */
+    public boolean restore(String key, Path workingDirectory)
+            throws IOException
+    {
+        Path snapshot = cacheDirectory.resolve(key);
+        if (!Files.isDirectory(snapshot) || Files.exists(workingDirectory.resolve(IMMUTABLE_DIRECTORY))) {
+            return false;
+        }
+
+        for (String directory : SNAPSHOT_DIRECTORIES) {
+            Path source = snapshot.resolve(directory);
+            if (Files.isDirectory(source)) {
+                copyTree(source, workingDirectory.resolve(directory), IMMUTABLE_DIRECTORY.equals(directory));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Archives the directories of a drained (stopped) instance. Concurrent builds storing the same key are safe - the
+     * snapshot is prepared in a temporary directory and moved in place atomically.
+     */
+    public void store(String key, Path workingDirectory)
+            throws IOException
+    {
+        Path snapshot = cacheDirectory.resolve(key);
+        if (Files.isDirectory(snapshot)) {
+            return;
+        }
+
+        Files.createDirectories(cacheDirectory);
+        Path tmp = cacheDirectory.resolve(key + ".tmp-" + UUID.randomUUID());
+        try {
+            for (String directory : SNAPSHOT_DIRECTORIES) {
+                Path source = workingDirectory.resolve(directory);
+                if (Files.isDirectory(source)) {
+                    copyTree(source, tmp.resolve(directory), false);
+                }
+            }
+
+            try {
+                Files.move(tmp, snapshot, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, snapshot);
+            }
+        }
+        catch (FileAlreadyExistsException e) {
+            // Another build was faster - that's fine.
+        }
+        finally {
+            deleteRecursively(tmp);
+        }
+    }
+
+    static void copyTree(Path source, Path target, boolean link)
+            throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(source)) {
+            paths.forEach(path -> {
+                Path destination = target.resolve(source.relativize(path).toString());
+                try {
+                    if (Files.isDirectory(path)) {
+                        Files.createDirectories(destination);
+                    }
+                    else if (!link || !tryLink(path, destination)) {
+                        Files.copy(path, destination, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static boolean tryLink(Path existing, Path link)
+    {
+        try {
+            Files.createLink(link, existing);
+            return true;
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            // Different file stores or not supported - fallback to a copy.
+            return false;
+        }
+    }
+
+    static void deleteRecursively(Path path)
+            throws IOException
+    {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    public static String sha256(String value)
+    {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import com.github.nosan.embedded.cassandra.DefaultWorkingDirectoryInitializer;
+import com.github.nosan.embedded.cassandra.Version;
+import com.github.nosan.embedded.cassandra.WebCassandraDirectoryProvider;
+import com.github.nosan.embedded.cassandra.WorkingDirectoryInitializer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps a prepared working directory between builds, so an unchanged setup is not extracted (or linked) and configured
+ * again on every start. The fingerprints of what has been prepared are stored in
+ * {@code <workingDirectory>/.prepared.properties}:
+ * <ul>
+ *     <li>{@code distribution} - the version; {@code bin/}, {@code lib/}, etc are reinstalled when it changes</li>
+ *     <li>{@code configuration} - the config properties, JVM options and logging; only {@code conf/} is restored from the
+ *     distribution when it changes, so nothing merged into it by a previous configuration is left behind</li>
+ * </ul>
+ * {@code data/}, {@code logs/} and the plugin's own (hidden) files are never touched.
+ */
+public class CassandraWorkingDirectory
+{
+
+    public static final String FILE_NAME = ".prepared.properties";
+
+    private static final Set<String> PRESERVED = Set.of("data", "logs");
+
+    /**
+     * Fingerprint of a {@code conf/} directory which has just been installed and not been configured yet.
+     */
+    private static final String PRISTINE = "";
+
+    public enum Preparation
+    {
+        NONE,
+        CONFIGURATION,
+        DISTRIBUTION
+    }
+
+    private final WorkingDirectoryInitializer initializer;
+
+    public CassandraWorkingDirectory(WorkingDirectoryInitializer initializer)
+    {
+        this.initializer = initializer;
+    }
+
+    /**
+     * @param distributionCacheDirectory distributions shared between builds (null to extract into every working directory).
+     */
+    public static WorkingDirectoryInitializer createInitializer(Path distributionCacheDirectory)
+    {
+        if (distributionCacheDirectory == null) {
+            return new DefaultWorkingDirectoryInitializer(new WebCassandraDirectoryProvider());
+        }
+
+        return new LinkingWorkingDirectoryInitializer(new WebCassandraDirectoryProvider(distributionCacheDirectory));
+    }
+
+    /**
+     * Everything written into {@code conf/} - system properties are passed on the command line and don't count.
+     *
+     * @param logLevel level of the tuned logging configuration (null for the one of the distribution).
+     */
+    public static String configurationKey(Map<String, Object> configProperties, String seeds, Collection<String> jvmOptions, String logLevel)
+    {
+        return CassandraSnapshotCache.sha256(new TreeMap<>(configProperties) + "\n" + seeds + "\n" + jvmOptions + "\n" + logLevel);
+    }
+
+    /**
+     * Installs the distribution, unless the same version is installed already.
+     *
+     * @return true when the distribution has been (re)installed.
+     */
+    public boolean prepareDistribution(Path workingDirectory, Version version)
+            throws IOException
+    {
+        Properties state = load(workingDirectory);
+        if (isInstalled(workingDirectory, state, version)) {
+            return false;
+        }
+
+        // Invalidated first - an interrupted preparation must not look complete to the next build.
+        Files.deleteIfExists(workingDirectory.resolve(FILE_NAME));
+        deleteDistribution(workingDirectory);
+        initializer.init(workingDirectory, version);
+
+        state.setProperty("distribution", version.toString());
+        state.setProperty("configuration", PRISTINE);
+        save(workingDirectory, state);
+
+        return true;
+    }
+
+    /**
+     * Installs the distribution and restores {@code conf/} - only what has changed since the last preparation.
+     */
+    public Preparation prepare(Path workingDirectory, Version version, String configurationKey)
+            throws IOException
+    {
+        boolean installed = prepareDistribution(workingDirectory, version);
+
+        Properties state = load(workingDirectory);
+        String configured = state.getProperty("configuration", PRISTINE);
+        if (configured.equals(configurationKey)) {
+            return Preparation.NONE;
+        }
+
+        Files.deleteIfExists(workingDirectory.resolve(FILE_NAME));
+        if (!configured.equals(PRISTINE)) {
+            // Cassandra's configuration is merged into the files in place - start over from the distribution's.
+            delete(workingDirectory.resolve("conf"));
+            initializer.init(workingDirectory, version);
+        }
+
+        state.setProperty("configuration", configurationKey);
+        save(workingDirectory, state);
+
+        return installed ? Preparation.DISTRIBUTION : Preparation.CONFIGURATION;
+    }
+
+    private static boolean isInstalled(Path workingDirectory, Properties state, Version version)
+    {
+        return version.toString().equals(state.getProperty("distribution")) &&
+               Files.isDirectory(workingDirectory.resolve("bin")) &&
+               Files.isDirectory(workingDirectory.resolve("lib")) &&
+               Files.isDirectory(workingDirectory.resolve("conf"));
+    }
+
+    private static void deleteDistribution(Path workingDirectory)
+            throws IOException
+    {
+        if (!Files.isDirectory(workingDirectory)) {
+            return;
+        }
+
+        List<Path> installed;
+        try (Stream<Path> children = Files.list(workingDirectory)) {
+            installed = children.filter(child -> {
+                String name = child.getFileName().toString();
+                return !PRESERVED.contains(name) && !name.startsWith(".");
+            }).collect(Collectors.toList());
+        }
+        for (Path child : installed) {
+            delete(child);
+        }
+    }
+
+    /**
+     * Deletes a directory without following links - linked files belong to the shared distribution.
+     */
+    private static void delete(Path path)
+            throws IOException
+    {
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    private static Properties load(Path workingDirectory)
+    {
+        Properties properties = new Properties();
+        Path file = workingDirectory.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file)) {
+            return properties;
+        }
+
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        catch (IOException e) {
+            // Prepared again.
+            properties.clear();
+        }
+
+        return properties;
+    }
+
+    private static void save(Path workingDirectory, Properties properties)
+    {
+        try (Writer writer = Files.newBufferedWriter(workingDirectory.resolve(FILE_NAME), StandardCharsets.UTF_8)) {
+            properties.store(writer, "Prepared by the embedded Cassandra plugin");
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to write " + workingDirectory.resolve(FILE_NAME), e);
+        }
+    }
+
+}
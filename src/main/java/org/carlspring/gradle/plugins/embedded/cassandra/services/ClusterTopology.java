@@ -0,0 +1,42 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import java.math.BigInteger;
+
+/**
+ * Addresses and tokens of the nodes of a local cluster.
+ * <p>
+ * Nodes either get their own loopback address ({@code 127.0.0.<node + 1>} - available out of the box on Linux, other
+ * systems need aliases, i.e. {@code sudo ifconfig lo0 alias 127.0.0.2 up}) and share the ports, or share
+ * {@code 127.0.0.1} with distinct ports (Cassandra 4.0+).
+ */
+public final class ClusterTopology
+{
+
+    private static final BigInteger MIN_TOKEN = BigInteger.valueOf(Long.MIN_VALUE);
+
+    private static final BigInteger TOKEN_RANGE = BigInteger.ONE.shiftLeft(64);
+
+    private ClusterTopology()
+    {
+    }
+
+    public static String address(int node, boolean loopbackAliases)
+    {
+        return loopbackAliases ? "127.0.0." + (node + 1) : "127.0.0.1";
+    }
+
+    /**
+     * Evenly spaced {@code Murmur3Partitioner} tokens - with a single token per node every node owns the same share of the
+     * ring, which makes replication behaviour predictable.
+     */
+    public static String initialToken(int node, int nodes)
+    {
+        return MIN_TOKEN.add(TOKEN_RANGE.multiply(BigInteger.valueOf(node)).divide(BigInteger.valueOf(nodes))).toString();
+    }
+
+    public static boolean supportsLoopbackAliases()
+    {
+        return System.getProperty("os.name", "").toLowerCase().contains("linux");
+    }
+
+}
@@ -0,0 +1,262 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * State of an instance which outlives the build ({@code keepAlive = true}), stored in
+ * {@code <workingDirectory>/.keep-alive.properties}. The next build uses it to find the running process and to decide
+ * whether it can be reused (same configuration hash) or has to be replaced.
+ * <p>
+ * Processes are recorded with their start time next to their pid - a pid is reused by the OS once its process is gone,
+ * and the process which gets it must neither be reused nor killed.
+ */
+public class KeepAliveState
+{
+
+    public static final String FILE_NAME = ".keep-alive.properties";
+
+    private static final Duration TERMINATION_TIMEOUT = Duration.ofSeconds(30);
+
+    private final Path file;
+
+    private final Properties properties;
+
+    private KeepAliveState(Path file, Properties properties)
+    {
+        this.file = file;
+        this.properties = properties;
+    }
+
+    public static KeepAliveState create(Path workingDirectory, ProcessHandle process, String configHash, Duration idleTimeout)
+    {
+        Properties properties = new Properties();
+        setProcess(properties, "pid", "startInstant", process);
+        properties.setProperty("configHash", configHash);
+        properties.setProperty("idleTimeout", String.valueOf(idleTimeout.toMillis()));
+
+        return new KeepAliveState(workingDirectory.resolve(FILE_NAME), properties);
+    }
+
+    public static Optional<KeepAliveState> load(Path file)
+    {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        catch (IOException e) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new KeepAliveState(file, properties));
+    }
+
+    public static Optional<KeepAliveState> forWorkingDirectory(Path workingDirectory)
+    {
+        return load(workingDirectory.resolve(FILE_NAME));
+    }
+
+    public Path getFile()
+    {
+        return file;
+    }
+
+    public long getPid()
+    {
+        return getLong("pid", -1);
+    }
+
+    public String getConfigHash()
+    {
+        return properties.getProperty("configHash", "");
+    }
+
+    public Duration getIdleTimeout()
+    {
+        return Duration.ofMillis(getLong("idleTimeout", Duration.ofMinutes(30).toMillis()));
+    }
+
+    /**
+     * Ports of instances with allocated (random) ports, which are adopted when the instance is reused.
+     */
+    public void setPort(String name, int port)
+    {
+        properties.setProperty("port." + name, String.valueOf(port));
+    }
+
+    public int getPort(String name, int defaultValue)
+    {
+        return (int) getLong("port." + name, defaultValue);
+    }
+
+    public long getLastUsed()
+    {
+        return getLong("lastUsed", 0);
+    }
+
+    public long getWatchdogPid()
+    {
+        return getLong("watchdogPid", -1);
+    }
+
+    public void setWatchdog(ProcessHandle process)
+    {
+        setProcess(properties, "watchdogPid", "watchdogStartInstant", process);
+    }
+
+    public boolean isWatchdogRunning()
+    {
+        return findProcess("watchdogPid", "watchdogStartInstant", process -> isCommandOf(process, KeepAliveWatchdog.class.getName())).isPresent();
+    }
+
+    /**
+     * @return true while a build (identified by the pid of its Gradle daemon) is using the instance.
+     */
+    public boolean isInUse()
+    {
+        return findProcess("user", "userStartInstant", process -> true).isPresent();
+    }
+
+    public void markInUse()
+    {
+        setProcess(properties, "user", "userStartInstant", ProcessHandle.current());
+        properties.setProperty("lastUsed", String.valueOf(System.currentTimeMillis()));
+    }
+
+    public void markIdle()
+    {
+        properties.remove("user");
+        properties.remove("userStartInstant");
+        properties.setProperty("lastUsed", String.valueOf(System.currentTimeMillis()));
+    }
+
+    /**
+     * @return the kept alive Cassandra process - empty when it is gone, even if another process has its pid by now.
+     */
+    public Optional<ProcessHandle> getProcess()
+    {
+        return findProcess("pid", "startInstant", process -> CassandraProcesses.isCassandraOf(process, file.getParent()));
+    }
+
+    public boolean isRunning()
+    {
+        return getProcess().isPresent();
+    }
+
+    public boolean isIdleTimeoutExceeded()
+    {
+        return !isInUse() && System.currentTimeMillis() - getLastUsed() > getIdleTimeout().toMillis();
+    }
+
+    /**
+     * Writes the state atomically, so a concurrently reading watchdog never sees a partial file.
+     */
+    public void save()
+    {
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(FILE_NAME + ".tmp-" + ProcessHandle.current().pid());
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "embedded-cassandra keep alive state");
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stops the kept alive process (gracefully first) and removes the state.
+     */
+    public void terminate()
+    {
+        getProcess().ifPresent(process -> {
+            process.destroy();
+            try {
+                process.onExit().get(TERMINATION_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            catch (Exception e) {
+                process.destroyForcibly();
+            }
+        });
+
+        try {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e) {
+            // Stale state is ignored, because the process is gone.
+        }
+    }
+
+    private long getLong(String key, long defaultValue)
+    {
+        try {
+            return Long.parseLong(properties.getProperty(key, String.valueOf(defaultValue)));
+        }
+        catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static void setProcess(Properties properties, String pidKey, String startKey, ProcessHandle process)
+    {
+        properties.setProperty(pidKey, String.valueOf(process.pid()));
+        Optional<Instant> startInstant = process.info().startInstant();
+        if (startInstant.isPresent()) {
+            properties.setProperty(startKey, String.valueOf(startInstant.get().toEpochMilli()));
+        }
+        else {
+            properties.remove(startKey);
+        }
+    }
+
+    /**
+     * Looks up a recorded process. When the start time is missing on either side (a state written by an older version
+     * or an OS which doesn't report it) the process has to pass {@code fallback} instead.
+     */
+    private Optional<ProcessHandle> findProcess(String pidKey, String startKey, Predicate<ProcessHandle> fallback)
+    {
+        long pid = getLong(pidKey, -1);
+        if (pid <= 0) {
+            return Optional.empty();
+        }
+
+        long started = getLong(startKey, -1);
+        return ProcessHandle.of(pid).filter(ProcessHandle::isAlive).filter(process -> {
+            Optional<Instant> startInstant = process.info().startInstant();
+            if (started > 0 && startInstant.isPresent()) {
+                return startInstant.get().toEpochMilli() == started;
+            }
+            return fallback.test(process);
+        });
+    }
+
+    private static boolean isCommandOf(ProcessHandle process, String mainClass)
+    {
+        return process.info().commandLine().map(c -> c.contains(mainClass)).orElse(false);
+    }
+
+}
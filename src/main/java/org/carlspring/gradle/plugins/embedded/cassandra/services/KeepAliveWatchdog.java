@@ -0,0 +1,80 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A tiny detached JVM which stops a kept alive instance once it has been idle for longer than its idle timeout. It exits
+ * as soon as the instance is gone (i.e. stopped by a build because its configuration changed).
+ * <p>
+ * Only depends on the JDK, because it runs with nothing but the plugin jar on the classpath.
+ */
+public class KeepAliveWatchdog
+{
+
+    private static final long POLL_INTERVAL_MS = 5000;
+
+    public static void main(String[] args)
+            throws InterruptedException
+    {
+        Path stateFile = Path.of(args[0]);
+        while (true) {
+            Optional<KeepAliveState> state = KeepAliveState.load(stateFile);
+            if (state.isEmpty() || !state.get().isRunning()) {
+                return;
+            }
+
+            if (state.get().isIdleTimeoutExceeded()) {
+                System.out.println("Stopping idle Cassandra (pid " + state.get().getPid() + ") after " + state.get().getIdleTimeout());
+                state.get().terminate();
+                return;
+            }
+
+            Thread.sleep(POLL_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Starts a watchdog for the state, unless one is running already.
+     */
+    public static void launch(KeepAliveState state, Path logFile)
+            throws IOException
+    {
+        if (state.isWatchdogRunning()) {
+            return;
+        }
+
+        String java = ProcessHandle.current()
+                                   .info()
+                                   .command()
+                                   .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.add("-Xmx16m");
+        command.add("-cp");
+        command.add(getCodeSource());
+        command.add(KeepAliveWatchdog.class.getName());
+        command.add(state.getFile().toAbsolutePath().toString());
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                                                     .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile.toFile()))
+                                                     .start();
+        state.setWatchdog(process.toHandle());
+        state.save();
+    }
+
+    private static String getCodeSource()
+    {
+        try {
+            return new File(KeepAliveWatchdog.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
+        }
+        catch (Exception e) {
+            throw new IllegalStateException("Cannot locate the plugin jar", e);
+        }
+    }
+
+}
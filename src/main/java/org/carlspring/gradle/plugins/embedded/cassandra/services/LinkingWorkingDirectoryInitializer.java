@@ -0,0 +1,124 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import com.github.nosan.embedded.cassandra.CassandraDirectoryProvider;
+import com.github.nosan.embedded.cassandra.Version;
+import com.github.nosan.embedded.cassandra.WorkingDirectoryInitializer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Initializes the working directory from a distribution shared between builds (i.e. under the Gradle user home).
+ * <p>
+ * Files of the read-only parts of the distribution ({@code lib/}, {@code bin/}, etc) are hard linked (or symlinked, when
+ * hard links are not possible) into the working directory. Only {@code conf/} is copied, because it is customized per
+ * instance; {@code data/} and {@code logs/} are created by Cassandra itself. Linking files one by one (instead of the
+ * whole directory) keeps the scripts in {@code bin/} resolving {@code CASSANDRA_HOME} to the working directory.
+ */
+public class LinkingWorkingDirectoryInitializer
+        implements WorkingDirectoryInitializer
+{
+
+    private static final Set<String> PRIVATE_DIRECTORIES = Set.of("conf");
+
+    private static final Set<String> SKIPPED_DIRECTORIES = Set.of("data", "logs");
+
+    private final CassandraDirectoryProvider distributionProvider;
+
+    private final Linker hardLinker;
+
+    private final Linker symbolicLinker;
+
+    public LinkingWorkingDirectoryInitializer(CassandraDirectoryProvider distributionProvider)
+    {
+        this(distributionProvider, Files::createLink, (link, existing) -> Files.createSymbolicLink(link, existing.toAbsolutePath()));
+    }
+
+    LinkingWorkingDirectoryInitializer(CassandraDirectoryProvider distributionProvider, Linker hardLinker, Linker symbolicLinker)
+    {
+        this.distributionProvider = distributionProvider;
+        this.hardLinker = hardLinker;
+        this.symbolicLinker = symbolicLinker;
+    }
+
+    @Override
+    public void init(Path workingDirectory, Version version)
+            throws IOException
+    {
+        Path distribution = distributionProvider.getDirectory(version);
+
+        Files.createDirectories(workingDirectory);
+        try (Stream<Path> children = Files.list(distribution)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                String name = child.getFileName().toString();
+                if (SKIPPED_DIRECTORIES.contains(name)) {
+                    continue;
+                }
+
+                install(child, workingDirectory.resolve(name), !PRIVATE_DIRECTORIES.contains(name));
+            }
+        }
+    }
+
+    private void install(Path source, Path target, boolean link)
+            throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(source)) {
+            paths.forEach(path -> {
+                Path destination = target.resolve(source.relativize(path).toString());
+                try {
+                    if (Files.isDirectory(path)) {
+                        Files.createDirectories(destination);
+                    }
+                    else if (!Files.exists(destination, LinkOption.NOFOLLOW_LINKS)) {
+                        if (!link || !tryLink(path, destination)) {
+                            Files.copy(path, destination, StandardCopyOption.COPY_ATTRIBUTES);
+                        }
+                    }
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private boolean tryLink(Path existing, Path link)
+    {
+        try {
+            hardLinker.link(link, existing);
+            return true;
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            // Most likely a different file store - try a symbolic link.
+        }
+
+        try {
+            symbolicLinker.link(link, existing);
+            return true;
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            // i.e. Windows without the required privilege - fallback to a copy.
+            return false;
+        }
+    }
+
+    @FunctionalInterface
+    interface Linker
+    {
+
+        void link(Path link, Path existing)
+                throws IOException;
+
+    }
+
+}
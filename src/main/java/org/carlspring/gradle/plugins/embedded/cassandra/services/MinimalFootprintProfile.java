@@ -0,0 +1,127 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings for running several small instances on a memory constrained machine (i.e. a 4 GB CI agent). The heap is sized
+ * from the memory available to the build (container limits included), everything else is shrunk to what a test needs.
+ * <p>
+ * Only properties which are valid for both Cassandra 3.11 and 4.x are used.
+ */
+public final class MinimalFootprintProfile
+{
+
+    /**
+     * Left for the Gradle daemon and the test JVMs.
+     */
+    static final long RESERVED_MEMORY_MB = 1024;
+
+    static final long MIN_HEAP_MB = 256;
+
+    static final long MAX_HEAP_MB = 1024;
+
+    public static final Map<String, Object> CONFIG_PROPERTIES;
+
+    public static final Map<String, Object> SYSTEM_PROPERTIES;
+
+    static {
+        Map<String, Object> config = new LinkedHashMap<>();
+        // Memtables, caches and buffers.
+        config.put("memtable_heap_space_in_mb", 32);
+        config.put("memtable_offheap_space_in_mb", 32);
+        config.put("memtable_flush_writers", 1);
+        config.put("key_cache_size_in_mb", 0);
+        config.put("row_cache_size_in_mb", 0);
+        config.put("counter_cache_size_in_mb", 0);
+        config.put("file_cache_size_in_mb", 32);
+        config.put("index_summary_capacity_in_mb", 8);
+        config.put("commitlog_segment_size_in_mb", 8);
+        config.put("commitlog_total_space_in_mb", 64);
+        // Thread pools.
+        config.put("concurrent_reads", 4);
+        config.put("concurrent_writes", 4);
+        config.put("concurrent_counter_writes", 2);
+        config.put("concurrent_materialized_view_writes", 2);
+        config.put("concurrent_compactors", 1);
+        config.put("native_transport_max_threads", 16);
+        config.put("compaction_throughput_mb_per_sec", 0);
+        // Subsystems which are not needed by a single node test instance.
+        config.put("hinted_handoff_enabled", false);
+        config.put("auto_snapshot", false);
+        config.put("num_tokens", 1);
+        CONFIG_PROPERTIES = Map.copyOf(config);
+
+        Map<String, Object> system = new LinkedHashMap<>();
+        // JMX stays bound to localhost (nodetool needs it) - remote JMX is not enabled by Cassandra unless LOCAL_JMX=no.
+        system.put("cassandra.superuser_setup_delay_ms", 0);
+        system.put("cassandra.skip_wait_for_gossip_to_settle", 0);
+        SYSTEM_PROPERTIES = Map.copyOf(system);
+    }
+
+    private MinimalFootprintProfile()
+    {
+    }
+
+    /**
+     * @param instances number of instances sharing the available memory.
+     */
+    public static List<String> jvmOptions(int instances)
+    {
+        long heap = heapSizeMb(availableMemoryMb(), instances);
+
+        return List.of("-Xms" + heap + "m",
+                       "-Xmx" + heap + "m",
+                       "-XX:MaxDirectMemorySize=" + Math.max(64, heap / 2) + "m",
+                       // Smallest footprint and no GC threads - pauses on such a small heap are negligible.
+                       "-XX:+UseSerialGC",
+                       "-XX:ReservedCodeCacheSize=64m",
+                       // C1 only - faster startup and less compiler threads/memory, tests are not long running.
+                       "-XX:TieredStopAtLevel=1");
+    }
+
+    static long heapSizeMb(long availableMemoryMb, int instances)
+    {
+        // Half of the per instance budget is left for off-heap memory, metaspace and thread stacks.
+        long budget = (availableMemoryMb - RESERVED_MEMORY_MB) / Math.max(1, instances) / 2;
+        long heap = Math.max(MIN_HEAP_MB, Math.min(MAX_HEAP_MB, budget));
+
+        return heap - heap % 64;
+    }
+
+    /**
+     * @return the physical memory or the cgroup memory limit (whichever is lower).
+     */
+    static long availableMemoryMb()
+    {
+        long available = Long.MAX_VALUE;
+
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            available = ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+        }
+
+        for (String limit : List.of("/sys/fs/cgroup/memory.max", "/sys/fs/cgroup/memory/memory.limit_in_bytes")) {
+            try {
+                Path file = Path.of(limit);
+                if (Files.isReadable(file)) {
+                    String value = Files.readString(file, StandardCharsets.UTF_8).trim();
+                    if (value.matches("\\d+")) {
+                        available = Math.min(available, Long.parseLong(value));
+                    }
+                }
+            }
+            catch (Exception e) {
+                // Not a (readable) cgroup - ignore.
+            }
+        }
+
+        return available == Long.MAX_VALUE ? 4096 : available / (1024 * 1024);
+    }
+
+}
@@ -0,0 +1,94 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+
+/**
+ * Minimal CQL native protocol client which sends an {@code OPTIONS} frame and expects a {@code SUPPORTED} response. This
+ * is the cheapest request a node answers only when the native transport is actually able to serve clients.
+ */
+public final class NativeProtocolProbe
+{
+
+    // Protocol v4 is supported by Cassandra 2.2 - 5.0
+    private static final byte PROTOCOL_VERSION = 0x04;
+
+    private static final byte RESPONSE_VERSION = (byte) 0x84;
+
+    private static final byte OPCODE_OPTIONS = 0x05;
+
+    private static final byte OPCODE_SUPPORTED = 0x06;
+
+    private static final int HEADER_LENGTH = 9;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private NativeProtocolProbe()
+    {
+    }
+
+    /**
+     * @return true when the node answered the OPTIONS request.
+     */
+    public static boolean probe(String host, int port)
+    {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+
+            // version, flags, stream (2 bytes), opcode, body length (4 bytes)
+            byte[] options = new byte[]{ PROTOCOL_VERSION, 0, 0, 1, OPCODE_OPTIONS, 0, 0, 0, 0 };
+            OutputStream out = socket.getOutputStream();
+            out.write(options);
+            out.flush();
+
+            byte[] header = new byte[HEADER_LENGTH];
+            new DataInputStream(socket.getInputStream()).readFully(header);
+
+            return header[0] == RESPONSE_VERSION && header[4] == OPCODE_SUPPORTED;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true when the port accepts TCP connections (i.e. the server is listening, but is not necessarily ready).
+     */
+    public static boolean isListening(String host, int port)
+    {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            return true;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Probes until the node answers or the timeout expires.
+     */
+    public static void await(String host, int port, Duration timeout)
+    {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!probe(host, port)) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Cassandra did not answer a CQL OPTIONS request on " + host + ":" + port + " within " + timeout);
+            }
+
+            try {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for Cassandra on " + host + ":" + port, e);
+            }
+        }
+    }
+
+}
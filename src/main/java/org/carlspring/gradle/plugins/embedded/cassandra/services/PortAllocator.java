@@ -0,0 +1,223 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Allocates random ports without conflicts between concurrent builds (and Gradle daemons) on the same machine.
+ * <p>
+ * A port is reserved by atomically creating {@code <directory>/<port>.lock} (containing the pid of the owner), which other
+ * allocators skip, and checking that nothing is bound to it yet. This closes the window between picking a port and
+ * Cassandra binding it. Reservations are released when the instance is stopped; reservations of dead processes (and
+ * ones which have never been written completely, once they are older than {@link #RESERVATION_TTL}) are taken over. A
+ * take over holds an exclusive lock on {@code <directory>/takeover.lock}, so two allocators can't both judge a
+ * reservation stale and one of them delete the fresh reservation of the other.
+ */
+public class PortAllocator
+{
+
+    public static final int MIN_PORT = 35000;
+
+    public static final int MAX_PORT = 65000;
+
+    static final Duration RESERVATION_TTL = Duration.ofMinutes(10);
+
+    private static final int MAX_CANDIDATES = 1000;
+
+    private static final long PID = ProcessHandle.current().pid();
+
+    private static final String TAKEOVER_LOCK = "takeover.lock";
+
+    /**
+     * File locks are held by the whole JVM - concurrent take overs of this process are serialized here.
+     */
+    private static final Object TAKEOVER_MONITOR = new Object();
+
+    private final Path directory;
+
+    private final Random random = new SecureRandom();
+
+    public PortAllocator(Path directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Reserves a set of distinct free ports - either all of them are reserved or none.
+     */
+    public synchronized List<Integer> reserve(int count)
+    {
+        List<Integer> ports = new ArrayList<>();
+        try {
+            for (int candidates = 0; ports.size() < count; candidates++) {
+                if (candidates >= MAX_CANDIDATES) {
+                    throw new IllegalStateException("Could not reserve " + count + " free ports between " + MIN_PORT + " and " + MAX_PORT);
+                }
+
+                int port = MIN_PORT + random.nextInt(MAX_PORT - MIN_PORT + 1);
+                if (!ports.contains(port) && tryReserve(port)) {
+                    ports.add(port);
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            release(ports);
+            throw e;
+        }
+
+        return ports;
+    }
+
+    /**
+     * @return true when the port is free and has been reserved by this process.
+     */
+    public boolean tryReserve(int port)
+    {
+        Path lock = directory.resolve(port + ".lock");
+        try {
+            Files.createDirectories(directory);
+            if (!createLock(lock) && !takeOver(lock)) {
+                return false;
+            }
+
+            if (!isFree(port)) {
+                Files.deleteIfExists(lock);
+                return false;
+            }
+
+            return true;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Releases the reservations owned by this process - reservations of other processes are left alone.
+     */
+    public void release(Collection<Integer> ports)
+    {
+        for (Integer port : ports) {
+            Path lock = directory.resolve(port + ".lock");
+            try {
+                if (Files.exists(lock) && readOwner(lock) == PID) {
+                    Files.deleteIfExists(lock);
+                }
+            }
+            catch (IOException e) {
+                // Will be taken over once it is stale.
+            }
+        }
+    }
+
+    private static boolean createLock(Path lock)
+            throws IOException
+    {
+        try {
+            Files.write(lock, (PID + " " + System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE);
+            return true;
+        }
+        catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Replaces a stale reservation - the check and the replacement happen under the take over lock, a reservation which
+     * another allocator has just taken over is no longer stale.
+     *
+     * @return false when the reservation is not stale or another process is taking over reservations right now.
+     */
+    private boolean takeOver(Path lock)
+            throws IOException
+    {
+        synchronized (TAKEOVER_MONITOR) {
+            try (FileChannel channel = FileChannel.open(directory.resolve(TAKEOVER_LOCK), StandardOpenOption.CREATE,
+                                                        StandardOpenOption.WRITE);
+                 FileLock takeover = channel.tryLock()) {
+                if (takeover == null || !isStale(lock)) {
+                    return false;
+                }
+
+                Files.deleteIfExists(lock);
+                return createLock(lock);
+            }
+            catch (NoSuchFileException e) {
+                // Released in the meantime - whoever creates it first gets it.
+                return createLock(lock);
+            }
+        }
+    }
+
+    private static boolean isStale(Path lock)
+            throws IOException
+    {
+        String[] content = Files.readString(lock, StandardCharsets.UTF_8).trim().split(" ");
+        long owner = parse(content, 0);
+        long created = parse(content, 1);
+        // Still being written by its owner - stale only when it has never been finished.
+        if (owner == -1 || created == -1) {
+            long age = System.currentTimeMillis() - Files.getLastModifiedTime(lock).toMillis();
+            return age > RESERVATION_TTL.toMillis();
+        }
+
+        if (owner == PID) {
+            return false;
+        }
+
+        // A process which has been started after the reservation has reused the pid of its dead owner.
+        return ProcessHandle.of(owner)
+                            .filter(ProcessHandle::isAlive)
+                            .map(process -> process.info().startInstant().map(start -> start.toEpochMilli() > created).orElse(false))
+                            .orElse(true);
+    }
+
+    private static long readOwner(Path lock)
+            throws IOException
+    {
+        return parse(Files.readString(lock, StandardCharsets.UTF_8).trim().split(" "), 0);
+    }
+
+    private static long parse(String[] content, int index)
+    {
+        try {
+            return index < content.length ? Long.parseLong(content[index]) : -1;
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Binds the wildcard address, so ports used on any interface are detected.
+     */
+    public static boolean isFree(int port)
+    {
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.setReuseAddress(false);
+            socket.bind(new InetSocketAddress(port));
+            return true;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+}
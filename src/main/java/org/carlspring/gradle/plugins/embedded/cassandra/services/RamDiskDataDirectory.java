@@ -0,0 +1,153 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Keeps the {@code data/} directory of an instance (data files, commit log, hints and saved caches) on a memory backed
+ * file system such as {@code /dev/shm}. {@code <workingDirectory>/data} becomes a symbolic link, so everything which
+ * expects the data inside the working directory (warm start snapshots, SSTable fixtures, applied CQL scripts) keeps
+ * working.
+ * <p>
+ * The data is ephemeral - it is deleted when the instance is stopped. Directories left behind by a crashed build are
+ * replaced by the next start in the same working directory, or removed by the next start in any other one once their
+ * working directory no longer links to them (i.e. after {@code gradle clean}).
+ */
+public class RamDiskDataDirectory
+{
+
+    private static final Logger LOGGER = Logging.getLogger(RamDiskDataDirectory.class);
+
+    private static final String DATA_DIRECTORY = "data";
+
+    private static final String PREFIX = "embedded-cassandra-";
+
+    /**
+     * Written next to each directory - holds the working directory linking to it.
+     */
+    private static final String OWNER_SUFFIX = ".owner";
+
+    private final Path root;
+
+    private final long requiredSpaceMb;
+
+    public RamDiskDataDirectory(Path root, long requiredSpaceMb)
+    {
+        this.root = root;
+        this.requiredSpaceMb = requiredSpaceMb;
+    }
+
+    /**
+     * Links {@code <workingDirectory>/data} to an empty directory on the RAM disk.
+     *
+     * @return false when the RAM disk is not available or does not have enough free space - the data directory then
+     *         stays on the disk.
+     */
+    public boolean prepare(Path workingDirectory)
+            throws IOException
+    {
+        if (!Files.isDirectory(root)) {
+            LOGGER.warn("RAM disk " + root + " does not exist - keeping the data in " + workingDirectory);
+            return false;
+        }
+
+        long usableMb = Files.getFileStore(root).getUsableSpace() / (1024 * 1024);
+        if (usableMb < requiredSpaceMb) {
+            LOGGER.warn("RAM disk " + root + " has only " + usableMb + " MB free (" + requiredSpaceMb +
+                        " MB required) - keeping the data in " + workingDirectory);
+            return false;
+        }
+
+        deleteOrphans();
+
+        Path target = getTarget(workingDirectory);
+        CassandraSnapshotCache.deleteRecursively(target);
+        Files.createDirectories(target);
+
+        Path data = workingDirectory.resolve(DATA_DIRECTORY);
+        if (Files.isSymbolicLink(data)) {
+            Files.delete(data);
+        }
+        else if (Files.exists(data)) {
+            LOGGER.lifecycle("Replacing " + data + " with a RAM disk directory");
+            CassandraSnapshotCache.deleteRecursively(data);
+        }
+
+        Files.createDirectories(workingDirectory);
+        Files.createSymbolicLink(data, target);
+        // Only written once the link is in place, so a concurrent build never takes the directory for an orphan.
+        Files.writeString(getOwnerFile(target), workingDirectory.toAbsolutePath().normalize().toString());
+        LOGGER.lifecycle("Using RAM disk directory " + target + " for " + data);
+
+        return true;
+    }
+
+    /**
+     * Deletes the RAM disk directory and the link to it.
+     */
+    public void cleanup(Path workingDirectory)
+            throws IOException
+    {
+        Path data = workingDirectory.resolve(DATA_DIRECTORY);
+        if (Files.isSymbolicLink(data)) {
+            Files.delete(data);
+        }
+
+        Path target = getTarget(workingDirectory);
+        CassandraSnapshotCache.deleteRecursively(target);
+        Files.deleteIfExists(getOwnerFile(target));
+    }
+
+    /**
+     * Deletes the directories of crashed builds whose working directory is gone or no longer links to them.
+     */
+    void deleteOrphans()
+            throws IOException
+    {
+        try (DirectoryStream<Path> owners = Files.newDirectoryStream(root, PREFIX + "*" + OWNER_SUFFIX)) {
+            for (Path owner : owners) {
+                String name = owner.getFileName().toString();
+                Path target = root.resolve(name.substring(0, name.length() - OWNER_SUFFIX.length()));
+                if (isLinked(owner, target)) {
+                    continue;
+                }
+
+                LOGGER.lifecycle("Deleting orphaned RAM disk directory " + target);
+                CassandraSnapshotCache.deleteRecursively(target);
+                Files.deleteIfExists(owner);
+            }
+        }
+    }
+
+    private static boolean isLinked(Path owner, Path target)
+    {
+        try {
+            Path data = Path.of(Files.readString(owner).trim()).resolve(DATA_DIRECTORY);
+
+            return Files.isSymbolicLink(data) &&
+                   Files.readSymbolicLink(data).toAbsolutePath().normalize().equals(target.toAbsolutePath().normalize());
+        }
+        catch (IOException e) {
+            // Removed by a concurrent cleanup - leave it alone.
+            return true;
+        }
+    }
+
+    private static Path getOwnerFile(Path target)
+    {
+        return target.resolveSibling(target.getFileName() + OWNER_SUFFIX);
+    }
+
+    private Path getTarget(Path workingDirectory)
+    {
+        String id = CassandraSnapshotCache.sha256(workingDirectory.toAbsolutePath().normalize().toString()).substring(0, 16);
+
+        return root.resolve(PREFIX + id);
+    }
+
+}
@@ -0,0 +1,135 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import com.github.nosan.embedded.cassandra.Cassandra;
+import com.github.nosan.embedded.cassandra.CassandraException;
+import com.github.nosan.embedded.cassandra.Settings;
+import com.github.nosan.embedded.cassandra.Version;
+import org.carlspring.gradle.plugins.embedded.cassandra.cql.CqlConnection;
+import org.carlspring.gradle.plugins.embedded.cassandra.cql.CqlException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * A node which is not owned by the build - {@link #start()} attaches to it once it passes the health check,
+ * {@link #stop()} only detaches. The health check waits (up to the timeout) for the native transport to answer a CQL
+ * {@code OPTIONS} request, then logs in and reads the release version from {@code system.local}, so a node which accepts
+ * connections but can't serve queries (i.e. still bootstrapping, wrong credentials) is rejected.
+ */
+public class RemoteCassandra
+        implements Cassandra
+{
+
+    private static final Logger LOGGER = Logging.getLogger(RemoteCassandra.class);
+
+    private final String host;
+
+    private final int port;
+
+    private final Path workingDirectory;
+
+    private final String username;
+
+    private final String password;
+
+    private final Duration timeout;
+
+    /**
+     * The configured version (null when none has been configured), replaced by the one of the node once attached.
+     */
+    private Version version;
+
+    private boolean running;
+
+    public RemoteCassandra(String host, int port, Path workingDirectory, Version version, String username, String password, Duration timeout)
+    {
+        this.host = host;
+        this.port = port;
+        this.workingDirectory = workingDirectory;
+        this.version = version;
+        this.username = username;
+        this.password = password;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public synchronized void start()
+            throws CassandraException
+    {
+        try {
+            NativeProtocolProbe.await(host, port, timeout);
+        }
+        catch (IllegalStateException e) {
+            throw new CassandraException("Cassandra on " + host + ":" + port + " is not available: " + e.getMessage(), e);
+        }
+
+        Version release;
+        try (CqlConnection connection = CqlConnection.open(host, port, username, password)) {
+            List<List<byte[]>> rows = connection.query("SELECT release_version FROM system.local");
+            if (rows.isEmpty() || rows.get(0).isEmpty() || rows.get(0).get(0) == null) {
+                throw new CassandraException("Cassandra on " + host + ":" + port + " has failed the health check: system.local is empty");
+            }
+            release = Version.parse(new String(rows.get(0).get(0), StandardCharsets.UTF_8));
+        }
+        catch (IOException | CqlException e) {
+            throw new CassandraException("Cassandra on " + host + ":" + port + " has failed the health check: " + e.getMessage(), e);
+        }
+
+        if (version != null && version.getMajor() != release.getMajor()) {
+            LOGGER.warn("Cassandra " + version + " has been configured, but " + host + ":" + port + " runs " + release + ".");
+        }
+        version = release;
+        running = true;
+        LOGGER.lifecycle("Attached to Cassandra " + release + " on " + host + ":" + port);
+    }
+
+    @Override
+    public synchronized void stop()
+            throws CassandraException
+    {
+        if (running) {
+            running = false;
+            LOGGER.lifecycle("Detached from Cassandra on " + host + ":" + port + " (it is not stopped - it is not owned by the build)");
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning()
+    {
+        return running;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "remote:" + host + ":" + port;
+    }
+
+    @Override
+    public synchronized Version getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Local directory of the build's own files (i.e. the pool leases) - Cassandra's files are on the other side.
+     */
+    @Override
+    public Path getWorkingDirectory()
+    {
+        return workingDirectory;
+    }
+
+    @Override
+    public Settings getSettings()
+            throws CassandraException
+    {
+        throw new CassandraException("The settings of Cassandra on " + host + ":" + port + " are not known to the build");
+    }
+
+}
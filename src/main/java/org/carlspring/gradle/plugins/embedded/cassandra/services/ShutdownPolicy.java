@@ -0,0 +1,21 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+/**
+ * How the instances are stopped - both are bounded by {@code shutdownTimeout}.
+ */
+public enum ShutdownPolicy
+{
+
+    /**
+     * Cassandra drains (flushes the memtables) when it is terminated. The process tree is killed when it hasn't exited
+     * within the timeout.
+     */
+    DRAIN,
+
+    /**
+     * The process tree is killed right away, nothing is flushed - for ephemeral instances (i.e. on a RAM disk) whose data
+     * is thrown away anyway. The default with {@code ramDisk}.
+     */
+    KILL
+
+}
@@ -0,0 +1,132 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records when each start up phase of an instance has completed (relative to the beginning of the start).
+ */
+public class StartupTimings
+{
+
+    public static final String DISTRIBUTION = "distribution";
+
+    public static final String CONFIGURATION = "configuration";
+
+    public static final String JVM = "jvm";
+
+    public static final String LISTENING = "listening";
+
+    public static final String CQL_READY = "cql";
+
+    private final CassandraCoordinates coordinates;
+
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    private volatile long startedAt;
+
+    public StartupTimings(CassandraCoordinates coordinates)
+    {
+        this.coordinates = coordinates;
+    }
+
+    public synchronized void begin()
+    {
+        phases.clear();
+        startedAt = System.nanoTime();
+    }
+
+    public synchronized void mark(String phase)
+    {
+        if (startedAt != 0 && !phases.containsKey(phase)) {
+            phases.put(phase, (System.nanoTime() - startedAt) / 1_000_000);
+        }
+    }
+
+    public synchronized boolean isMarked(String phase)
+    {
+        return phases.containsKey(phase);
+    }
+
+    public CassandraCoordinates getCoordinates()
+    {
+        return coordinates;
+    }
+
+    /**
+     * Watches the working directory and the native transport port from a background thread, because these phases
+     * happen inside of Cassandra#start().
+     */
+    public void watch(Path workingDirectory, Duration timeout)
+    {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        Thread watcher = new Thread(() -> {
+            Path systemLog = workingDirectory.resolve("logs/system.log");
+            while (!isMarked(LISTENING) && !isMarked(CQL_READY) && System.nanoTime() < deadline) {
+                if (!isMarked(JVM) && Files.exists(systemLog)) {
+                    mark(JVM);
+                }
+                if (NativeProtocolProbe.isListening(coordinates.getHost(), coordinates.getNativeTransportPort())) {
+                    mark(JVM);
+                    mark(LISTENING);
+                }
+
+                try {
+                    Thread.sleep(25);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "embedded-cassandra-startup-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    public synchronized long getTotal()
+    {
+        return phases.values().stream().mapToLong(Long::longValue).max().orElse(0);
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        long previous = 0;
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            sb.append(sb.length() == 0 ? "" : ", ").append(phase.getKey()).append(": ").append(phase.getValue() - previous).append("ms");
+            previous = phase.getValue();
+        }
+
+        return sb.toString();
+    }
+
+    public synchronized String toJson()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"index\":").append(coordinates.getIndex())
+          .append(",\"host\":\"").append(coordinates.getHost()).append('"')
+          .append(",\"nativeTransportPort\":").append(coordinates.getNativeTransportPort())
+          .append(",\"workingDirectory\":\"").append(coordinates.getWorkingDirectory().replace("\\", "\\\\")).append('"')
+          .append(",\"totalMillis\":").append(getTotal())
+          .append(",\"phases\":[");
+
+        long previous = 0;
+        boolean first = true;
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            sb.append(first ? "" : ",")
+              .append("{\"name\":\"").append(phase.getKey()).append('"')
+              .append(",\"completedAtMillis\":").append(phase.getValue())
+              .append(",\"durationMillis\":").append(phase.getValue() - previous)
+              .append('}');
+            previous = phase.getValue();
+            first = false;
+        }
+
+        return sb.append("]}").toString();
+    }
+
+}
@@ -0,0 +1,277 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import com.github.nosan.embedded.cassandra.Version;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code cassandra.yaml} settings for test throughput, instead of the production oriented defaults. The keys are resolved
+ * for the version which is started: Cassandra 4.1 has renamed most of the {@code *_in_ms}, {@code *_in_mb}, ... keys to
+ * ones with units in their values (i.e. {@code commitlog_sync_period: 10000ms}). Settings which don't exist in the version
+ * are left out and settings which have been configured explicitly (under either name) are never overridden - a
+ * configuration with both names is rejected by Cassandra. Configured properties are resolved for the version as well
+ * (see {@link #resolveKeys(Map, Version)}).
+ * <p>
+ * Durable writes are a keyspace option ({@code WITH durable_writes = false}) - the presets only relax the commit log
+ * syncing.
+ */
+public enum TuningPreset
+{
+
+    /**
+     * Larger (off heap) memtables which are flushed less often, more write threads, unthrottled compaction, higher batch
+     * size thresholds and materialized views (disabled by default since 4.0).
+     */
+    WRITE_HEAVY(List.of(Setting.of("memtable_allocation_type", "offheap_objects"),
+                        Setting.renamed("memtable_heap_space_in_mb", 256),
+                        Setting.renamed("memtable_offheap_space_in_mb", 256),
+                        Setting.of("memtable_flush_writers", 2),
+                        Setting.of("concurrent_writes", 64),
+                        Setting.of("concurrent_counter_writes", 64),
+                        Setting.of("concurrent_materialized_view_writes", 64),
+                        Setting.since(4, 0, "concurrent_materialized_view_builders", 2),
+                        Setting.renamedSince(4, 0, "enable_materialized_views", true),
+                        Setting.of("commitlog_sync", "periodic"),
+                        Setting.renamed("commitlog_sync_period_in_ms", 10000),
+                        Setting.renamed("compaction_throughput_mb_per_sec", 0),
+                        Setting.of("concurrent_compactors", 2),
+                        Setting.renamed("batch_size_warn_threshold_in_kb", 64),
+                        Setting.renamed("batch_size_fail_threshold_in_kb", 640),
+                        Setting.of("unlogged_batch_across_partitions_warn_threshold", 100),
+                        Setting.of("auto_snapshot", false))),
+
+    /**
+     * More read threads, larger key and chunk caches, compaction which doesn't compete with the reads and SASI indexes
+     * (disabled by default since 4.0).
+     */
+    READ_HEAVY(List.of(Setting.of("concurrent_reads", 64),
+                       Setting.renamed("key_cache_size_in_mb", 128),
+                       Setting.renamed("file_cache_size_in_mb", 256),
+                       Setting.renamed("index_summary_capacity_in_mb", 64),
+                       Setting.renamed("compaction_throughput_mb_per_sec", 16),
+                       Setting.of("concurrent_compactors", 1),
+                       Setting.renamedSince(4, 0, "enable_sasi_indexes", true),
+                       Setting.of("auto_snapshot", false))),
+
+    /**
+     * No waiting for commit log syncs, less GC pressure from memtables and throttled background work.
+     */
+    LOW_LATENCY(List.of(Setting.of("commitlog_sync", "periodic"),
+                        Setting.renamed("commitlog_sync_period_in_ms", 10000),
+                        Setting.of("memtable_allocation_type", "offheap_objects"),
+                        Setting.renamed("key_cache_size_in_mb", 64),
+                        Setting.renamed("compaction_throughput_mb_per_sec", 16),
+                        Setting.of("concurrent_compactors", 1),
+                        Setting.of("auto_snapshot", false)));
+
+    private final List<Setting> settings;
+
+    TuningPreset(List<Setting> settings)
+    {
+        this.settings = settings;
+    }
+
+    /**
+     * @return the config properties with the settings of the presets for the version - later presets win over earlier
+     * ones, the configured properties over all of them.
+     */
+    public static Map<String, Object> apply(List<TuningPreset> presets, Map<String, Object> configProperties, Version version)
+    {
+        if (presets.isEmpty()) {
+            return configProperties;
+        }
+
+        Map<String, Object> tuned = new LinkedHashMap<>();
+        for (TuningPreset preset : presets) {
+            for (Setting setting : preset.settings) {
+                if (setting.appliesTo(version) && !setting.isConfigured(configProperties)) {
+                    tuned.put(setting.key(version), setting.value(version));
+                }
+            }
+        }
+        tuned.putAll(configProperties);
+
+        return tuned;
+    }
+
+    /**
+     * @return the config properties with the legacy keys (i.e. the {@code *_in_ms} timeouts of
+     * {@code defaultTestSettings()}) renamed for 4.1 and later, whose {@code cassandra.yaml} has the new keys - Cassandra
+     * rejects a configuration with both names. A legacy key which is also configured under its new name is dropped.
+     */
+    public static Map<String, Object> resolveKeys(Map<String, Object> configProperties, Version version)
+    {
+        if (!hasRenamedKeys(version)) {
+            return configProperties;
+        }
+
+        Map<String, Object> resolved = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> property : configProperties.entrySet()) {
+            RenamedKey renamed = RenamedKey.of(property.getKey());
+            if (renamed == null) {
+                resolved.put(property.getKey(), property.getValue());
+            }
+            else if (!configProperties.containsKey(renamed.key)) {
+                resolved.put(renamed.key, renamed.value(property.getValue()));
+            }
+        }
+
+        return resolved;
+    }
+
+    private static boolean hasRenamedKeys(Version version)
+    {
+        return version.getMajor() > 4 || (version.getMajor() == 4 && version.getMinor() >= 1);
+    }
+
+    private enum Unit
+    {
+        NONE(""),
+        MILLISECONDS("ms"),
+        KIBIBYTES("KiB"),
+        MEBIBYTES("MiB"),
+        MEBIBYTES_PER_SECOND("MiB/s");
+
+        private final String suffix;
+
+        Unit(String suffix)
+        {
+            this.suffix = suffix;
+        }
+    }
+
+    /**
+     * The keys which have been renamed in 4.1 - the new keys take their values with units (flags have none).
+     */
+    private static final class RenamedKey
+    {
+
+        private static final List<RenamedKey> ALL = List.of(new RenamedKey("commitlog_sync_period_in_ms", "commitlog_sync_period", Unit.MILLISECONDS),
+                                                            new RenamedKey("commitlog_sync_group_window_in_ms", "commitlog_sync_group_window", Unit.MILLISECONDS),
+                                                            new RenamedKey("hints_flush_period_in_ms", "hints_flush_period", Unit.MILLISECONDS),
+                                                            new RenamedKey("request_timeout_in_ms", "request_timeout", Unit.MILLISECONDS),
+                                                            new RenamedKey("read_request_timeout_in_ms", "read_request_timeout", Unit.MILLISECONDS),
+                                                            new RenamedKey("range_request_timeout_in_ms", "range_request_timeout", Unit.MILLISECONDS),
+                                                            new RenamedKey("write_request_timeout_in_ms", "write_request_timeout", Unit.MILLISECONDS),
+                                                            new RenamedKey("counter_write_request_timeout_in_ms", "counter_write_request_timeout", Unit.MILLISECONDS),
+                                                            new RenamedKey("cas_contention_timeout_in_ms", "cas_contention_timeout", Unit.MILLISECONDS),
+                                                            new RenamedKey("truncate_request_timeout_in_ms", "truncate_request_timeout", Unit.MILLISECONDS),
+                                                            new RenamedKey("memtable_heap_space_in_mb", "memtable_heap_space", Unit.MEBIBYTES),
+                                                            new RenamedKey("memtable_offheap_space_in_mb", "memtable_offheap_space", Unit.MEBIBYTES),
+                                                            new RenamedKey("key_cache_size_in_mb", "key_cache_size", Unit.MEBIBYTES),
+                                                            new RenamedKey("file_cache_size_in_mb", "file_cache_size", Unit.MEBIBYTES),
+                                                            new RenamedKey("index_summary_capacity_in_mb", "index_summary_capacity", Unit.MEBIBYTES),
+                                                            new RenamedKey("compaction_throughput_mb_per_sec", "compaction_throughput", Unit.MEBIBYTES_PER_SECOND),
+                                                            new RenamedKey("batch_size_warn_threshold_in_kb", "batch_size_warn_threshold", Unit.KIBIBYTES),
+                                                            new RenamedKey("batch_size_fail_threshold_in_kb", "batch_size_fail_threshold", Unit.KIBIBYTES),
+                                                            new RenamedKey("enable_materialized_views", "materialized_views_enabled", Unit.NONE),
+                                                            new RenamedKey("enable_sasi_indexes", "sasi_indexes_enabled", Unit.NONE),
+                                                            new RenamedKey("enable_user_defined_functions", "user_defined_functions_enabled", Unit.NONE),
+                                                            new RenamedKey("enable_scripted_user_defined_functions", "scripted_user_defined_functions_enabled", Unit.NONE),
+                                                            new RenamedKey("enable_transient_replication", "transient_replication_enabled", Unit.NONE));
+
+        private final String legacyKey;
+
+        private final String key;
+
+        private final Unit unit;
+
+        private RenamedKey(String legacyKey, String key, Unit unit)
+        {
+            this.legacyKey = legacyKey;
+            this.key = key;
+            this.unit = unit;
+        }
+
+        static RenamedKey of(String legacyKey)
+        {
+            return ALL.stream().filter(k -> k.legacyKey.equals(legacyKey)).findFirst().orElse(null);
+        }
+
+        /**
+         * @return the value with the unit - values which are not plain numbers (i.e. flags) are kept.
+         */
+        Object value(Object value)
+        {
+            return unit != Unit.NONE && String.valueOf(value).matches("\\d+") ? value + unit.suffix : value;
+        }
+
+    }
+
+    private static final class Setting
+    {
+
+        private final String legacyKey;
+
+        private final String key;
+
+        private final Object value;
+
+        private final Unit unit;
+
+        private final int sinceMajor;
+
+        private final int sinceMinor;
+
+        private Setting(String legacyKey, String key, Object value, Unit unit, int sinceMajor, int sinceMinor)
+        {
+            this.legacyKey = legacyKey;
+            this.key = key;
+            this.value = value;
+            this.unit = unit;
+            this.sinceMajor = sinceMajor;
+            this.sinceMinor = sinceMinor;
+        }
+
+        static Setting of(String key, Object value)
+        {
+            return new Setting(key, key, value, Unit.NONE, 3, 0);
+        }
+
+        static Setting since(int major, int minor, String key, Object value)
+        {
+            return new Setting(key, key, value, Unit.NONE, major, minor);
+        }
+
+        /**
+         * A setting which has been renamed in 4.1 - the new key takes the value with its unit.
+         */
+        static Setting renamed(String legacyKey, long value)
+        {
+            return renamedSince(3, 0, legacyKey, value);
+        }
+
+        /**
+         * A renamed setting which only exists since {@code major.minor} (i.e. the feature flags of 4.0).
+         */
+        static Setting renamedSince(int major, int minor, String legacyKey, Object value)
+        {
+            RenamedKey renamed = RenamedKey.of(legacyKey);
+            return new Setting(legacyKey, renamed.key, value, renamed.unit, major, minor);
+        }
+
+        boolean appliesTo(Version version)
+        {
+            return version.getMajor() > sinceMajor || (version.getMajor() == sinceMajor && version.getMinor() >= sinceMinor);
+        }
+
+        boolean isConfigured(Map<String, Object> configProperties)
+        {
+            return configProperties.containsKey(legacyKey) || configProperties.containsKey(key);
+        }
+
+        String key(Version version)
+        {
+            return hasRenamedKeys(version) ? key : legacyKey;
+        }
+
+        Object value(Version version)
+        {
+            return hasRenamedKeys(version) && unit != Unit.NONE ? value + unit.suffix : value;
+        }
+
+    }
+
+}
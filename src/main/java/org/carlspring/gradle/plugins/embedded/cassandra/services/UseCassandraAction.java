@@ -0,0 +1,47 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.testing.Test;
+
+import java.util.List;
+
+/**
+ * First action of {@code Test} tasks with {@code useCassandra()} - only executed when the tests are actually run, so
+ * up-to-date and cached test tasks don't start Cassandra. The coordinates are passed to the forks as system properties
+ * (see {@link CassandraCoordinatesArgumentProvider}, evaluated right after this action) and as
+ * {@code CASSANDRA_*} environment variables. The task is released when it has finished
+ * (see {@link CassandraBuildService#onFinish}).
+ */
+public class UseCassandraAction
+        implements Action<Task>
+{
+
+    private final Provider<CassandraBuildService> service;
+
+    private final Provider<Boolean> enabled;
+
+    public UseCassandraAction(Provider<CassandraBuildService> service, Provider<Boolean> enabled)
+    {
+        this.service = service;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void execute(Task task)
+    {
+        if (!enabled.getOrElse(false)) {
+            return;
+        }
+
+        CassandraBuildService cassandra = service.get();
+        cassandra.acquire(task.getPath());
+
+        List<CassandraCoordinates> coordinates = cassandra.getCoordinates();
+        if (!coordinates.isEmpty()) {
+            coordinates.get(0).toEnvironment().forEach(((Test) task)::environment);
+        }
+    }
+
+}
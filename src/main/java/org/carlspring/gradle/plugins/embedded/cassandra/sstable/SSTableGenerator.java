@@ -0,0 +1,259 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.sstable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes CSV / JSON lines fixtures into SSTables with Cassandra's own {@code CQLSSTableWriter}.
+ * <p>
+ * Executed in a separate JVM with the {@code lib/} of the Cassandra distribution on the classpath, which is why the
+ * writer is accessed through reflection. Rows are inserted with {@code INSERT ... JSON ?}, so Cassandra converts the
+ * values to the column types. CSV files must have a header with the column names; empty values are inserted as null.
+ * <p>
+ * Arguments: {@code <outputDirectory> <keyspace> <table> <createTableStatement> <fixture>...}
+ */
+public final class SSTableGenerator
+{
+
+    public static final String CLUSTER_NOT_SUPPORTED = "Generated SSTables can't be installed into a cluster (nodes > 1) - the data would not " +
+                                                       "match the token ranges of the nodes. Load the data with a cqlScript instead.";
+
+    private SSTableGenerator()
+    {
+    }
+
+    public static void main(String[] args)
+            throws Exception
+    {
+        Path output = Path.of(args[0]);
+        String keyspace = args[1];
+        String table = args[2];
+        String schema = args[3];
+
+        Path tableDirectory = output.resolve(tableDirectory(keyspace, table));
+        Files.createDirectories(tableDirectory);
+
+        Class<?> writerClass = Class.forName("org.apache.cassandra.io.sstable.CQLSSTableWriter");
+        Object builder = writerClass.getMethod("builder").invoke(null);
+        builder = invoke(builder, "inDirectory", File.class, tableDirectory.toFile());
+        builder = invoke(builder, "forTable", String.class, schema);
+        builder = invoke(builder, "using", String.class, "INSERT INTO " + keyspace + "." + table + " JSON ?");
+        Object writer = builder.getClass().getMethod("build").invoke(builder);
+        Method addRow = writer.getClass().getMethod("addRow", List.class);
+
+        long rows = 0;
+        try {
+            for (int i = 4; i < args.length; i++) {
+                for (String json : readRows(Path.of(args[i]))) {
+                    addRow.invoke(writer, List.of(json));
+                    rows++;
+                }
+            }
+        }
+        finally {
+            writer.getClass().getMethod("close").invoke(writer);
+        }
+
+        Files.writeString(output.resolve("schema.cql"), schema(keyspace, table, schema));
+        System.out.println("Generated SSTables for " + keyspace + "." + table + " with " + rows + " rows in " + tableDirectory);
+    }
+
+    /**
+     * The data directory of a table is named after the table id - the id is derived from the name, so the schema
+     * created at start up matches the generated directory.
+     */
+    public static String tableDirectory(String keyspace, String table)
+    {
+        return "data/" + keyspace + "/" + table + "-" + tableId(keyspace, table).toString().replace("-", "");
+    }
+
+    public static UUID tableId(String keyspace, String table)
+    {
+        return UUID.nameUUIDFromBytes((keyspace + "." + table).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creating the table with the id of the generated directory makes Cassandra load the SSTables which are already
+     * in place - without going through the write path.
+     */
+    static String schema(String keyspace, String table, String createTable)
+    {
+        String statement = createTable.trim();
+        if (statement.endsWith(";")) {
+            statement = statement.substring(0, statement.length() - 1);
+        }
+        statement = statement.replaceFirst("(?i)^CREATE\\s+TABLE\\s+(?!IF\\s+NOT\\s+EXISTS)", "CREATE TABLE IF NOT EXISTS ");
+
+        String id = "ID = " + tableId(keyspace, table);
+        statement += statement.toUpperCase().matches("(?s).*\\)\\s*WITH\\s.*") ? " AND " + id : " WITH " + id;
+
+        return "CREATE KEYSPACE IF NOT EXISTS " + keyspace +
+               " WITH replication = {'class': 'SimpleStrategy', 'replication_factor': 1};\n" +
+               statement + ";\n";
+    }
+
+    private static Object invoke(Object target, String method, Class<?> type, Object value)
+            throws Exception
+    {
+        return target.getClass().getMethod(method, type).invoke(target, value);
+    }
+
+    private static List<String> readRows(Path fixture)
+            throws Exception
+    {
+        List<String> rows = new ArrayList<>();
+        String name = fixture.getFileName().toString().toLowerCase();
+
+        try (BufferedReader reader = Files.newBufferedReader(fixture, StandardCharsets.UTF_8)) {
+            if (name.endsWith(".csv")) {
+                List<List<String>> records = parseCsv(reader);
+                if (records.isEmpty()) {
+                    return rows;
+                }
+
+                List<String> columns = records.get(0);
+                for (List<String> record : records.subList(1, records.size())) {
+                    rows.add(toJson(columns, record));
+                }
+            }
+            else {
+                // JSON lines - one object per line.
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        rows.add(line.trim());
+                    }
+                }
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * RFC 4180 records - quoted values can contain commas, line breaks and doubled quotes. Blank lines are skipped.
+     */
+    static List<List<String>> parseCsv(BufferedReader reader)
+            throws IOException
+    {
+        List<List<String>> records = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        // Whether the current record has any content - a blank line is not a record with one empty value.
+        boolean content = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        current.append('"');
+                    }
+                    else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                }
+                else {
+                    current.append((char) c);
+                }
+            }
+            else if (c == '"') {
+                quoted = true;
+                content = true;
+            }
+            else if (c == ',') {
+                values.add(current.toString());
+                current.setLength(0);
+                content = true;
+            }
+            else if (c == '\n' || c == '\r') {
+                if (c == '\r') {
+                    reader.mark(1);
+                    if (reader.read() != '\n') {
+                        reader.reset();
+                    }
+                }
+                if (content || current.length() > 0) {
+                    values.add(current.toString());
+                    records.add(values);
+                }
+                values = new ArrayList<>();
+                current.setLength(0);
+                content = false;
+            }
+            else {
+                current.append((char) c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted value in record " + (records.size() + 1));
+        }
+        if (content || current.length() > 0) {
+            values.add(current.toString());
+            records.add(values);
+        }
+
+        return records;
+    }
+
+    static String toJson(List<String> columns, List<String> values)
+    {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < columns.size(); i++) {
+            String value = i < values.size() ? values.get(i) : "";
+            json.append(i == 0 ? "" : ",").append('"').append(escape(columns.get(i).trim())).append("\":");
+            if (value.isEmpty()) {
+                json.append("null");
+            }
+            else {
+                json.append('"').append(escape(value)).append('"');
+            }
+        }
+
+        return json.append('}').toString();
+    }
+
+    private static String escape(String value)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        sb.append(c);
+                    }
+            }
+        }
+
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,27 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.tasks;
+
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraBuildService;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Blocks until Cassandra started in the background (asyncStart = true) accepts connections.
+ */
+public abstract class AwaitCassandraTask
+        extends DefaultTask
+{
+
+    @Internal
+    public abstract Property<CassandraBuildService> getService();
+
+    @TaskAction
+    public void awaitCassandraDatabase()
+    {
+        if (getService().get().await() == null) {
+            throw new IllegalStateException("Cassandra has not been started - awaitCassandra must run after startCassandra.");
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.tasks;
+
+import org.carlspring.gradle.plugins.embedded.cassandra.benchmark.BenchmarkBaseline;
+import org.carlspring.gradle.plugins.embedded.cassandra.benchmark.BenchmarkResult;
+import org.carlspring.gradle.plugins.embedded.cassandra.benchmark.BenchmarkWorkload;
+import org.carlspring.gradle.plugins.embedded.cassandra.benchmark.CassandraBenchmark;
+import org.carlspring.gradle.plugins.embedded.cassandra.cql.CqlScriptParser;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraBuildService;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraCoordinates;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.options.Option;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs a CQL workload against the running instance (the first one of a pool / the seed of a cluster) and reports the
+ * throughput and latency percentiles. When a baseline file is configured, the results are compared with it and the task
+ * fails on regressions - the first run (or {@code --update-baseline}) writes the baseline.
+ * <p>
+ * Benchmarks have no outputs, so the task is never up-to-date.
+ */
+public abstract class BenchmarkCassandraTask
+        extends DefaultTask
+{
+
+    @Internal
+    public abstract Property<CassandraBuildService> getService();
+
+    /**
+     * CQL files creating the schema of the workload - defaults to {@code benchmark.kv (key bigint, value blob)}.
+     */
+    @InputFiles
+    @Optional
+    public abstract ConfigurableFileCollection getSchema();
+
+    @Input
+    public abstract Property<String> getWriteStatement();
+
+    @Input
+    public abstract Property<String> getReadStatement();
+
+    // Share of reads between 0.0 (writes only) and 1.0 (reads only).
+    @Input
+    public abstract Property<Double> getReadRatio();
+
+    // Requests in flight, spread over the connections.
+    @Input
+    public abstract Property<Integer> getConcurrency();
+
+    @Input
+    public abstract Property<Integer> getConnections();
+
+    @Input
+    public abstract Property<Duration> getWarmup();
+
+    @Input
+    public abstract Property<Duration> getDuration();
+
+    @Input
+    public abstract Property<Long> getKeys();
+
+    // Size of the random text/blob values in bytes.
+    @Input
+    public abstract Property<Integer> getValueSize();
+
+    @Internal
+    public abstract RegularFileProperty getBaselineFile();
+
+    // i.e. 0.2 - the throughput may drop and the latencies may grow by 20% before the task fails.
+    @Input
+    public abstract Property<Double> getMaxRegression();
+
+    @Input
+    @Option(option = "update-baseline", description = "Replaces the baseline with the results of this run")
+    public abstract Property<Boolean> getUpdateBaseline();
+
+    @Internal
+    public abstract DirectoryProperty getReportsDirectory();
+
+    @TaskAction
+    public void benchmarkCassandra()
+            throws IOException
+    {
+        CassandraBuildService service = getService().get();
+        List<CassandraCoordinates> coordinates = service.getCoordinates();
+        if (coordinates.isEmpty()) {
+            throw new IllegalStateException("Cassandra is not running - benchmarkCassandra must run after startCassandra.");
+        }
+
+        BenchmarkWorkload workload = new BenchmarkWorkload().writeStatement(getWriteStatement().get())
+                                                            .readStatement(getReadStatement().get())
+                                                            .readRatio(getReadRatio().get())
+                                                            .concurrency(getConcurrency().get())
+                                                            .connections(getConnections().get())
+                                                            .warmup(getWarmup().get())
+                                                            .duration(getDuration().get())
+                                                            .keys(getKeys().get())
+                                                            .valueSize(getValueSize().get());
+        if (!getSchema().isEmpty()) {
+            workload.schema(readSchema());
+        }
+
+        CassandraCoordinates instance = coordinates.get(0);
+        getLogger().lifecycle("Benchmarking Cassandra on " + instance.getHost() + ":" + instance.getNativeTransportPort() + " (" + workload + ")");
+        BenchmarkResult result = new CassandraBenchmark(instance,
+                                                        service.getParameters().getCqlUsername().get(),
+                                                        service.getParameters().getCqlPassword().get()).run(workload);
+
+        List<String> regressions = Collections.emptyList();
+        if (getBaselineFile().isPresent()) {
+            BenchmarkBaseline baseline = new BenchmarkBaseline(getBaselineFile().get().getAsFile().toPath());
+            if (getUpdateBaseline().getOrElse(false) || !baseline.exists()) {
+                baseline.save(result);
+                getLogger().lifecycle("Updated the benchmark baseline " + getBaselineFile().get().getAsFile());
+            }
+            else {
+                getLogger().lifecycle("Compared to the baseline " + getBaselineFile().get().getAsFile() + ":");
+                regressions = baseline.compare(result, getMaxRegression().get());
+            }
+        }
+
+        Path reportsDirectory = getReportsDirectory().get().getAsFile().toPath();
+        result.write(reportsDirectory, regressions);
+        getLogger().lifecycle(result.toString().stripTrailing());
+        getLogger().lifecycle("Benchmark report: " + reportsDirectory.resolve("benchmark.txt"));
+
+        if (result.getErrors() > 0) {
+            getLogger().warn(result.getErrors() + " requests have failed - their latencies are not included.");
+        }
+        if (!regressions.isEmpty()) {
+            throw new IllegalStateException("The Cassandra benchmark has regressed:\n  " + String.join("\n  ", regressions));
+        }
+    }
+
+    private List<String> readSchema()
+    {
+        List<String> statements = new ArrayList<>();
+        for (File file : getSchema().getFiles()) {
+            try {
+                statements.addAll(CqlScriptParser.parse(Files.readString(file.toPath())));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Failed to read the benchmark schema " + file, e);
+            }
+        }
+
+        return statements;
+    }
+
+}
@@ -0,0 +1,127 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.tasks;
+
+import com.github.nosan.embedded.cassandra.Version;
+import com.github.nosan.embedded.cassandra.WebCassandraDirectoryProvider;
+import org.carlspring.gradle.plugins.embedded.cassandra.sstable.SSTableGenerator;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.process.ExecOperations;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Generates SSTables from CSV / JSON lines fixtures offline, with the SSTable writer of the Cassandra distribution. The
+ * generated SSTables are placed in the data directory before Cassandra starts and the table is created with a matching
+ * id after the start, so the data is available without going through the write path.
+ */
+@CacheableTask
+public abstract class GenerateCassandraSSTablesTask
+        extends DefaultTask
+{
+
+    @Input
+    public abstract Property<String> getKeyspace();
+
+    @Input
+    public abstract Property<String> getTable();
+
+    /**
+     * The {@code CREATE TABLE} statement of the table.
+     */
+    @Input
+    public abstract Property<String> getSchema();
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getFixtures();
+
+    @Input
+    public abstract Property<String> getCassandraVersion();
+
+    @Internal
+    public abstract DirectoryProperty getDistributionCacheDirectory();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    /**
+     * Nodes of the shared instance - SSTables can't be installed into a cluster, where they would not match the token
+     * ranges of the nodes.
+     */
+    @Internal
+    public abstract Property<Integer> getNodes();
+
+    @Inject
+    protected abstract ExecOperations getExecOperations();
+
+    @Inject
+    protected abstract FileSystemOperations getFileSystemOperations();
+
+    @TaskAction
+    public void generate()
+            throws IOException
+    {
+        if (getNodes().getOrElse(1) > 1) {
+            throw new IllegalStateException(SSTableGenerator.CLUSTER_NOT_SUPPORTED);
+        }
+
+        Path output = getOutputDirectory().get().getAsFile().toPath();
+        getFileSystemOperations().delete(spec -> spec.delete(output.toFile()));
+        Files.createDirectories(output);
+
+        Path distribution = new WebCassandraDirectoryProvider(getDistributionCacheDirectory().get().getAsFile().toPath())
+                                    .getDirectory(Version.parse(getCassandraVersion().get()));
+
+        List<File> classpath = new ArrayList<>();
+        classpath.add(pluginClasspath());
+        try (Stream<Path> jars = Files.list(distribution.resolve("lib"))) {
+            classpath.addAll(jars.filter(p -> p.toString().endsWith(".jar")).map(Path::toFile).sorted().collect(Collectors.toList()));
+        }
+
+        List<String> args = new ArrayList<>();
+        args.add(output.toString());
+        args.add(getKeyspace().get());
+        args.add(getTable().get());
+        args.add(getSchema().get());
+        getFixtures().getFiles().stream().sorted().forEach(f -> args.add(f.getAbsolutePath()));
+
+        getExecOperations().javaexec(spec -> {
+            spec.classpath(classpath);
+            spec.getMainClass().set(SSTableGenerator.class.getName());
+            spec.args(args);
+            spec.jvmArgs("-Dcassandra.storagedir=" + getTemporaryDir().getAbsolutePath());
+        });
+    }
+
+    private static File pluginClasspath()
+    {
+        try {
+            return new File(SSTableGenerator.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        }
+        catch (URISyntaxException e) {
+            throw new UncheckedIOException(new IOException(e));
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.tasks;
+
+import com.github.nosan.embedded.cassandra.Version;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraBackend;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraWorkingDirectory;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Task;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Installs the Cassandra distribution into the working directory ahead of startCassandra. The task is up-to-date as long
+ * as the version is unchanged (and the working directory has not been deleted), so the distribution is neither
+ * extracted nor linked again. The configuration is applied by startCassandra, which only restores {@code conf/} when it
+ * has changed (see {@link CassandraWorkingDirectory}).
+ * <p>
+ * Skipped with the {@link CassandraBackend#REMOTE} backend - there is nothing to install.
+ */
+public abstract class PrepareCassandraTask
+        extends DefaultTask
+{
+
+    public static final String FILE_NAME = ".prepareCassandra";
+
+    public PrepareCassandraTask()
+    {
+        onlyIf(new EmbeddedBackend());
+    }
+
+    @Input
+    public abstract Property<String> getCassandraVersion();
+
+    // Shared between builds (under the Gradle user home) - not an input of this one.
+    @Internal
+    public abstract DirectoryProperty getDistributionCacheDirectory();
+
+    @Internal
+    public abstract DirectoryProperty getWorkingDirectory();
+
+    /**
+     * {@code <workingDirectory>/.prepareCassandra} - the version installed by this task. Not
+     * {@link CassandraWorkingDirectory#FILE_NAME}, which startCassandra rewrites whenever the configuration changes.
+     */
+    @OutputFile
+    public abstract RegularFileProperty getPreparedFile();
+
+    @Internal
+    public abstract Property<CassandraBackend> getBackend();
+
+    @TaskAction
+    public void prepareCassandra()
+            throws IOException
+    {
+        Path workingDirectory = getWorkingDirectory().get().getAsFile().toPath();
+        Path distributions = getDistributionCacheDirectory().isPresent() ? getDistributionCacheDirectory().get().getAsFile().toPath() : null;
+
+        CassandraWorkingDirectory prepared = new CassandraWorkingDirectory(CassandraWorkingDirectory.createInitializer(distributions));
+        if (prepared.prepareDistribution(workingDirectory, Version.parse(getCassandraVersion().get()))) {
+            getLogger().lifecycle("Installed Cassandra " + getCassandraVersion().get() + " into " + workingDirectory);
+        }
+        else {
+            getLogger().lifecycle("Cassandra " + getCassandraVersion().get() + " is already installed in " + workingDirectory);
+        }
+        Files.writeString(getPreparedFile().get().getAsFile().toPath(), getCassandraVersion().get(), StandardCharsets.UTF_8);
+    }
+
+    private static class EmbeddedBackend
+            implements Spec<Task>
+    {
+
+        @Override
+        public boolean isSatisfiedBy(Task task)
+        {
+            return ((PrepareCassandraTask) task).getBackend().getOrElse(CassandraBackend.EMBEDDED) == CassandraBackend.EMBEDDED;
+        }
+
+    }
+
+}
@@ -0,0 +1,83 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.tasks;
+
+import org.carlspring.gradle.plugins.embedded.cassandra.client.CassandraReset;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraBuildService;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraCoordinates;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.options.Option;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Resets the data of the running instance(s) without restarting them. Modes:
+ * <ul>
+ *     <li>{@code truncate} (default) - truncates all tables of non-system keyspaces</li>
+ *     <li>{@code drop} - drops all non-system keyspaces</li>
+ *     <li>{@code snapshot} - takes a named snapshot (requires {@code snapshotName})</li>
+ *     <li>{@code restore} - restores a named snapshot (requires {@code snapshotName})</li>
+ * </ul>
+ */
+public abstract class ResetCassandraTask
+        extends DefaultTask
+{
+
+    @Internal
+    public abstract Property<CassandraBuildService> getService();
+
+    @Input
+    @Option(option = "mode", description = "truncate, drop, snapshot or restore")
+    public abstract Property<String> getMode();
+
+    @Input
+    @Optional
+    @Option(option = "snapshot", description = "The name of the snapshot to take / restore")
+    public abstract Property<String> getSnapshotName();
+
+    @TaskAction
+    public void resetCassandraDatabase()
+    {
+        CassandraBuildService service = getService().get();
+        List<CassandraCoordinates> coordinates = service.getCoordinates();
+        if (coordinates.isEmpty()) {
+            throw new IllegalStateException("Cassandra is not running - resetCassandra must run after startCassandra.");
+        }
+
+        String mode = getMode().getOrElse("truncate");
+        for (CassandraCoordinates instance : coordinates) {
+            CassandraReset reset = new CassandraReset(instance.getHost(),
+                                                      instance.getNativeTransportPort(),
+                                                      service.getParameters().getCqlUsername().get(),
+                                                      service.getParameters().getCqlPassword().get(),
+                                                      Path.of(instance.getWorkingDirectory()),
+                                                      instance.getJmxPort());
+
+            long start = System.nanoTime();
+            switch (mode) {
+                case "truncate":
+                    reset.truncateAll();
+                    break;
+                case "drop":
+                    reset.dropAll();
+                    break;
+                case "snapshot":
+                    reset.snapshot(getSnapshotName().get());
+                    break;
+                case "restore":
+                    reset.restoreSnapshot(getSnapshotName().get());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown reset mode " + mode + " - expected truncate, drop, snapshot or restore.");
+            }
+
+            getLogger().lifecycle("Reset (" + mode + ") Cassandra in " + instance.getWorkingDirectory() + " in " +
+                                  (System.nanoTime() - start) / 1_000_000 + "ms");
+        }
+    }
+
+}
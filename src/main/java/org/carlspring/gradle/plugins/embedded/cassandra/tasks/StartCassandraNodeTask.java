@@ -0,0 +1,37 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.tasks;
+
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraBuildService;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.options.Option;
+
+/**
+ * Starts a single node of a running cluster (i.e. {@code ./gradlew startCassandraNode --node=2}).
+ */
+public abstract class StartCassandraNodeTask
+        extends DefaultTask
+{
+
+    @Internal
+    public abstract Property<CassandraBuildService> getService();
+
+    @Input
+    @Option(option = "node", description = "The index of the node (0 is the seed)")
+    public abstract Property<String> getNode();
+
+    @TaskAction
+    public void startCassandraNode()
+    {
+        CassandraBuildService service = getService().get();
+        int node = Integer.parseInt(getNode().get());
+        if (node < 0 || node >= service.getInstances().size()) {
+            throw new IllegalArgumentException("There is no node " + node + " - the cluster has " + service.getInstances().size() + " nodes.");
+        }
+
+        service.startNode(node);
+    }
+
+}
@@ -1,36 +1,41 @@
 package org.carlspring.gradle.plugins.embedded.cassandra.tasks;
 
-import com.github.nosan.embedded.cassandra.Cassandra;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraBuildService;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.Task;
 import org.gradle.api.provider.Property;
-import org.gradle.api.tasks.Input;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.TaskAction;
 
 public abstract class StopCassandraTask
         extends DefaultTask
 {
 
-    @Input
-    public abstract Property<Cassandra> getInstance();
+    public StopCassandraTask()
+    {
+        // Skipped (instead of waiting for the service) when Cassandra has not been started in this build.
+        onlyIf(new CassandraStarted());
+    }
+
+    @Internal
+    public abstract Property<CassandraBuildService> getService();
 
     @TaskAction
     public void stopCassandraDatabase()
     {
-        Cassandra server = getInstance().getOrNull();
-
-        if (server != null) {
-            try {
-                String running = getInstance().get().isRunning() ? "yes" : "no";
-                String workdir = getInstance().get().getWorkingDirectory().toString();
-                System.out.println("Stopping Cassandra in " + workdir + " (is running: " + running + ")");
-                System.out.println();
-                server.stop();
-            }
-            catch (Exception e) {
-                // nothing we can really do.
-                System.out.println("[ERROR] An error occurred while stopping Cassandra!");
-                e.printStackTrace();
-            }
+        // Stops the instance only when this was the last consumer in the build.
+        getService().get().release();
+    }
+
+    private static class CassandraStarted
+            implements Spec<Task>
+    {
+
+        @Override
+        public boolean isSatisfiedBy(Task task)
+        {
+            return ((StopCassandraTask) task).getService().get().hasInstances();
         }
 
     }
@@ -0,0 +1,101 @@
+package org.carlspring.gradle.plugins.embedded.cassandra;
+
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraBackend;
+import org.carlspring.gradle.plugins.embedded.cassandra.services.CassandraBuildService;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.internal.project.ProjectInternal;
+import org.gradle.api.services.BuildServiceRegistration;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EmbeddedCassandraPluginTest
+{
+
+    private static final List<String> VERSIONS = List.of("4.0.11", "4.1.3");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldRegisterServiceAndTestTaskPerVersionOfMatrix()
+    {
+        Project project = newProject(VERSIONS);
+        EmbeddedCassandraExtension extension = project.getExtensions().getByType(EmbeddedCassandraExtension.class);
+
+        for (String version : VERSIONS) {
+            CassandraBuildService.Params params = getParameters(project, CassandraBuildService.SERVICE_NAME + "-" + version);
+
+            assertEquals(version, params.getVersion().get());
+            assertEquals(directory.resolve("cassandra/my-example-" + version).toFile(), params.getWorkingDirectory().get().getAsFile());
+            assertEquals(project.getLayout().getBuildDirectory().dir("reports/cassandra/" + version).get().getAsFile(),
+                         params.getReportsDirectory().get().getAsFile());
+            // A single embedded node with its own ports - the instances of the matrix run next to each other.
+            assertTrue(params.getAllocatePorts().get(), version);
+            assertEquals(1, (int) params.getPoolSize().get());
+            assertEquals(1, (int) params.getNodes().get());
+            assertEquals(CassandraBackend.EMBEDDED, params.getBackend().get());
+            // Everything else is configured like the shared instance.
+            assertEquals(extension.getConfigProperties().get(), params.getConfigProperties().get());
+            assertEquals(extension.getEffectiveJvmOptions().get(), params.getJvmOptions().get());
+
+            org.gradle.api.tasks.testing.Test test = (org.gradle.api.tasks.testing.Test) project.getTasks()
+                                                                                        .getByName("testCassandra" + version.replace('.', '_'));
+            assertEquals(version, test.getExtensions().getByType(CassandraTestExtension.class).getVersion().get());
+            assertEquals(version, test.getSystemProperties().get("cassandra.version"));
+            assertEquals(version, test.getEnvironment().get("CASSANDRA_VERSION"));
+        }
+
+        CassandraBuildService.Params shared = getParameters(project, CassandraBuildService.SERVICE_NAME);
+        assertEquals(directory.resolve("cassandra/my-example").toFile(), shared.getWorkingDirectory().get().getAsFile());
+        assertEquals(Set.of("testCassandra4_0_11", "testCassandra4_1_3"), getDependencies(project.getTasks().getByName("testCassandraMatrix")));
+    }
+
+    @Test
+    public void shouldNotRegisterMatrixWithoutVersions()
+    {
+        Project project = newProject(List.of());
+
+        assertNull(project.getTasks().findByName("testCassandraMatrix"));
+        assertEquals(1, project.getGradle().getSharedServices().getRegistrations().size());
+    }
+
+    private Project newProject(List<String> versions)
+    {
+        Project project = ProjectBuilder.builder().withProjectDir(directory.toFile()).build();
+        project.getPluginManager().apply("java-library");
+        project.getPluginManager().apply(EmbeddedCassandraPlugin.class);
+
+        EmbeddedCassandraExtension extension = project.getExtensions().getByType(EmbeddedCassandraExtension.class);
+        extension.getWorkingDirectory().set(directory.resolve("cassandra/my-example"));
+        extension.defaultTestSettings();
+        extension.getVersions().set(versions);
+        // The matrix is registered once the build script has been evaluated.
+        ((ProjectInternal) project).evaluate();
+
+        return project;
+    }
+
+    private static CassandraBuildService.Params getParameters(Project project, String name)
+    {
+        BuildServiceRegistration<?, ?> registration = project.getGradle().getSharedServices().getRegistrations().getByName(name);
+
+        return (CassandraBuildService.Params) registration.getParameters();
+    }
+
+    private static Set<String> getDependencies(Task task)
+    {
+        return task.getTaskDependencies().getDependencies(task).stream().map(Task::getName).collect(Collectors.toSet());
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.benchmark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BenchmarkResultTest
+{
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldAggregateConnections()
+    {
+        BenchmarkResult result = new BenchmarkResult(new BenchmarkWorkload(), Duration.ofSeconds(2));
+        // Like CassandraBenchmark - every connection records into its own histograms.
+        for (int connection = 0; connection < 4; connection++) {
+            result.getReads().add(histogram(1 + connection * 100, 100 + connection * 100));
+            result.getWrites().add(histogram(1001 + connection * 50, 1050 + connection * 50));
+            result.addErrors(connection, connection == 0 ? Map.of() : Map.of("Timeout", (long) connection));
+        }
+
+        assertEquals(400, result.getReads().getTotalCount());
+        assertEquals(200, result.getWrites().getTotalCount());
+        assertEquals(6, result.getErrors());
+        assertEquals(300.0, result.getThroughput(), 1e-9);
+        assertEquals(200, result.getReads().getValueAtPercentile(50));
+        assertEquals(1, result.getReads().getMin());
+        assertEquals(1200, result.getWrites().getMax());
+        assertTrue(result.toString().contains("Error (6x): Timeout"), result.toString());
+    }
+
+    @Test
+    public void shouldReportPercentilesOfRecordedOperations()
+    {
+        BenchmarkResult result = new BenchmarkResult(new BenchmarkWorkload(), Duration.ofMillis(500));
+        result.getReads().add(histogram(1, 10_000));
+
+        Map<String, Double> metrics = result.getMetrics();
+
+        assertEquals(List.of("throughput", "read.p50", "read.p90", "read.p99", "read.p99.9", "read.p99.99"), List.copyOf(metrics.keySet()));
+        assertEquals(20_000.0, metrics.get("throughput"), 1e-9);
+        assertEquals(5000.0, metrics.get("read.p50"), 5);
+        assertEquals(9900.0, metrics.get("read.p99"), 10);
+        assertEquals(9990.0, metrics.get("read.p99.9"), 10);
+        // Without writes there is nothing to compare with a baseline.
+        assertFalse(metrics.keySet().stream().anyMatch(key -> key.startsWith("write.")));
+    }
+
+    @Test
+    public void shouldWriteReports() throws IOException
+    {
+        BenchmarkResult result = new BenchmarkResult(new BenchmarkWorkload().readRatio(1), Duration.ofSeconds(1));
+        result.getReads().add(histogram(1, 100));
+        result.addErrors(1, Map.of("Quote \"this\"", 1L));
+
+        Path reports = directory.resolve("reports");
+        result.write(reports, List.of("read.p99 regressed"));
+
+        String json = Files.readString(reports.resolve("benchmark.json"));
+        assertTrue(json.contains("\"throughput\":100.00"), json);
+        assertTrue(json.contains("\"read\":{\"count\":100,\"minMicros\":1,\"meanMicros\":50.50,\"maxMicros\":100,\"percentilesMicros\":" +
+                                 "{\"p50\":50,\"p90\":90,\"p99\":99,\"p99.9\":100,\"p99.99\":100}}"), json);
+        assertTrue(json.contains("\"write\":{\"count\":0,"), json);
+        assertTrue(json.endsWith(",\"regressions\":[\"read.p99 regressed\"]}\n"), json);
+        assertTrue(Files.readString(reports.resolve("benchmark.txt")).contains("(100 reads, 0 writes, 1 errors in 1000ms)"));
+        assertTrue(Files.readString(reports.resolve("benchmark-read.hgrm")).contains("#[Max     =        0.100, Total count    =          100]"));
+        assertFalse(Files.exists(reports.resolve("benchmark-write.hgrm")));
+    }
+
+    @Test
+    public void shouldFormatPercentiles()
+    {
+        assertEquals("50", BenchmarkResult.formatPercentile(50.0));
+        assertEquals("99", BenchmarkResult.formatPercentile(99.0));
+        assertEquals("99.9", BenchmarkResult.formatPercentile(99.9));
+        assertEquals("99.99", BenchmarkResult.formatPercentile(99.99));
+    }
+
+    private static LatencyHistogram histogram(long from, long to)
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = from; value <= to; value++) {
+            histogram.record(value);
+        }
+
+        return histogram;
+    }
+
+}
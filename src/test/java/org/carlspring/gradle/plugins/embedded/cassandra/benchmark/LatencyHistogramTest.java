@@ -0,0 +1,143 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.benchmark;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest
+{
+
+    @Test
+    public void shouldRecordSmallValuesExactly()
+    {
+        LatencyHistogram histogram = histogram(1, 1000);
+
+        assertEquals(1000, histogram.getTotalCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+        assertEquals(288.67, histogram.getStdDeviation(), 0.01);
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(500, histogram.getValueAtPercentile(50));
+        assertEquals(900, histogram.getValueAtPercentile(90));
+        assertEquals(990, histogram.getValueAtPercentile(99));
+        assertEquals(999, histogram.getValueAtPercentile(99.9));
+        assertEquals(1000, histogram.getValueAtPercentile(99.99));
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void shouldRecordLargeValuesWithinPrecision()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value : List.of(1_000_000L, 2_500_000L, 7_777_777L, 40_000_000L)) {
+            histogram.record(value);
+        }
+
+        assertWithinPrecision(1_000_000, histogram.getValueAtPercentile(25));
+        assertWithinPrecision(2_500_000, histogram.getValueAtPercentile(50));
+        assertWithinPrecision(7_777_777, histogram.getValueAtPercentile(75));
+        // The highest bucket is capped at the recorded maximum.
+        assertEquals(40_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void shouldMapEveryValueToItsBucket()
+    {
+        for (long value = 0; value < 1L << 40; value = value < 4096 ? value + 1 : value + value / 997) {
+            int index = LatencyHistogram.index(value);
+            long highest = LatencyHistogram.highestEquivalentValue(index);
+
+            assertTrue(value <= highest, "value " + value);
+            assertTrue(highest - value <= value / 1000, "value " + value + " in bucket up to " + highest);
+            // Buckets are contiguous - the next value starts the next bucket.
+            assertEquals(index + 1, LatencyHistogram.index(highest + 1), "value " + value);
+        }
+
+        assertEquals((1L << 40) - 1, LatencyHistogram.highestEquivalentValue(LatencyHistogram.index((1L << 40) - 1)));
+    }
+
+    @Test
+    public void shouldClampValuesOutOfRange()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getMin());
+        assertEquals((1L << 40) - 1, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals((1L << 40) - 1, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void shouldMergeHistograms()
+    {
+        LatencyHistogram histogram = histogram(1, 500);
+        histogram.add(histogram(501, 1000));
+        histogram.add(new LatencyHistogram());
+
+        assertEquals(1000, histogram.getTotalCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+        assertEquals(500, histogram.getValueAtPercentile(50));
+        assertEquals(990, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void shouldBeEmptyAfterReset()
+    {
+        LatencyHistogram histogram = histogram(1, 1000);
+        histogram.reset();
+
+        assertEmpty(histogram);
+        assertEmpty(new LatencyHistogram());
+
+        histogram.record(42);
+        assertEquals(42, histogram.getMin());
+        assertEquals(42, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void shouldWritePercentileDistribution()
+    {
+        String[] lines = histogram(1, 1000).toPercentileDistribution().split("\n");
+
+        assertTrue(lines[0].trim().startsWith("Value"), lines[0]);
+        assertEquals("       0.001 0.001000000000          1           1.00", lines[2]);
+        assertEquals("       1.000 1.000000000000       1000", lines[lines.length - 4]);
+        assertEquals("#[Mean    =        0.501, StdDeviation   =        0.289]", lines[lines.length - 3]);
+        assertEquals("#[Max     =        1.000, Total count    =         1000]", lines[lines.length - 2]);
+        assertEquals("#[Buckets =           30, SubBuckets     =         2048]", lines[lines.length - 1]);
+    }
+
+    private static LatencyHistogram histogram(long from, long to)
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = from; value <= to; value++) {
+            histogram.record(value);
+        }
+
+        return histogram;
+    }
+
+    private static void assertWithinPrecision(long expected, long actual)
+    {
+        assertTrue(actual >= expected && actual - expected <= expected / 1000, "expected ~" + expected + " but was " + actual);
+    }
+
+    private static void assertEmpty(LatencyHistogram histogram)
+    {
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean(), 0);
+        assertEquals(0, histogram.getStdDeviation(), 0);
+        assertEquals(0, histogram.getValueAtPercentile(99.9));
+    }
+
+}
@@ -0,0 +1,155 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.cql;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CqlConnectionTest
+{
+
+    @Test
+    public void shouldSendIncreasingClientTimestamps() throws Exception
+    {
+        List<String> statements = List.of("DELETE FROM t WHERE id = 1",
+                                          "INSERT INTO t (id, v) VALUES (1, 'a')",
+                                          "UPDATE t SET v = 'b' WHERE id = 1");
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            CompletableFuture<List<Query>> received = CompletableFuture.supplyAsync(() -> serve(server, statements.size() + 1));
+
+            try (CqlConnection connection = CqlConnection.open("127.0.0.1", server.getLocalPort(), "cassandra", "cassandra")) {
+                connection.executePipelined(statements, 16);
+                connection.execute("DELETE FROM t WHERE id = 1");
+            }
+
+            List<Query> queries = received.get(30, TimeUnit.SECONDS);
+            assertEquals(statements, List.of(queries.get(0).cql, queries.get(1).cql, queries.get(2).cql));
+            for (int i = 0; i < queries.size(); i++) {
+                assertEquals(0x20, queries.get(i).flags);
+                if (i > 0) {
+                    assertTrue(queries.get(i).timestamp > queries.get(i - 1).timestamp);
+                }
+            }
+            // Microseconds since the epoch.
+            assertTrue(Math.abs(queries.get(0).timestamp / 1000 - System.currentTimeMillis()) < TimeUnit.MINUTES.toMillis(1));
+        }
+    }
+
+    /**
+     * Accepts one connection, answers STARTUP with READY and the queries with void results - the pipelined ones in
+     * reverse order, like a server executing them in any order.
+     */
+    private static List<Query> serve(ServerSocket server, int expected)
+    {
+        try (Socket socket = server.accept()) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+
+            Frame startup = Frame.read(in);
+            respond(out, startup.streamId, (byte) 0x02, new byte[0]);
+
+            List<Query> queries = new ArrayList<>();
+            List<Integer> pending = new ArrayList<>();
+            while (queries.size() < expected) {
+                Frame frame = Frame.read(in);
+                queries.add(Query.parse(frame.body));
+                pending.add(frame.streamId);
+                if (queries.size() == expected - 1 || queries.size() == expected) {
+                    Collections.reverse(pending);
+                    for (int streamId : pending) {
+                        respond(out, streamId, (byte) 0x08, ByteBuffer.allocate(4).putInt(0x0001).array());
+                    }
+                    pending.clear();
+                }
+            }
+
+            return queries;
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void respond(DataOutputStream out, int streamId, byte opcode, byte[] body) throws IOException
+    {
+        out.writeByte(0x84);
+        out.writeByte(0);
+        out.writeShort(streamId);
+        out.writeByte(opcode);
+        out.writeInt(body.length);
+        out.write(body);
+        out.flush();
+    }
+
+    private static class Frame
+    {
+
+        private final int streamId;
+
+        private final byte[] body;
+
+        private Frame(int streamId, byte[] body)
+        {
+            this.streamId = streamId;
+            this.body = body;
+        }
+
+        private static Frame read(DataInputStream in) throws IOException
+        {
+            in.readByte();
+            in.readByte();
+            int streamId = in.readShort();
+            in.readByte();
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+
+            return new Frame(streamId, body);
+        }
+
+    }
+
+    private static class Query
+    {
+
+        private final String cql;
+
+        private final int flags;
+
+        private final long timestamp;
+
+        private Query(String cql, int flags, long timestamp)
+        {
+            this.cql = cql;
+            this.flags = flags;
+            this.timestamp = timestamp;
+        }
+
+        private static Query parse(byte[] body)
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(body);
+            byte[] cql = new byte[buffer.getInt()];
+            buffer.get(cql);
+            buffer.getShort();
+            int flags = buffer.get();
+
+            return new Query(new String(cql, StandardCharsets.UTF_8), flags, buffer.getLong());
+        }
+
+    }
+
+}
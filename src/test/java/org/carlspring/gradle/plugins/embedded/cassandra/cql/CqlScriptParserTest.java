@@ -0,0 +1,102 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.cql;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CqlScriptParserTest
+{
+
+    @Test
+    public void shouldSplitStatements()
+    {
+        List<String> statements = CqlScriptParser.parse("CREATE KEYSPACE test WITH replication = {'class': 'SimpleStrategy', 'replication_factor': 1};\n" +
+                                                        "\n" +
+                                                        "  USE test ;;\n" +
+                                                        "INSERT INTO users (id) VALUES (1)");
+
+        assertEquals(List.of("CREATE KEYSPACE test WITH replication = {'class': 'SimpleStrategy', 'replication_factor': 1}",
+                             "USE test",
+                             "INSERT INTO users (id) VALUES (1)"),
+                     statements);
+    }
+
+    @Test
+    public void shouldDropComments()
+    {
+        List<String> statements = CqlScriptParser.parse("-- users; and their roles\n" +
+                                                        "CREATE TABLE users (id int PRIMARY KEY); // it's a table;\n" +
+                                                        "/* multi\n" +
+                                                        "   line; comment */ INSERT INTO users (id) VALUES (1);\n" +
+                                                        "SELECT * FROM users WHERE id = 2 - 1; -- trailing comment without a line break");
+
+        assertEquals(List.of("CREATE TABLE users (id int PRIMARY KEY)",
+                             "INSERT INTO users (id) VALUES (1)",
+                             "SELECT * FROM users WHERE id = 2 - 1"),
+                     statements);
+    }
+
+    @Test
+    public void shouldKeepSemicolonsInQuotes()
+    {
+        List<String> statements = CqlScriptParser.parse("INSERT INTO t (id, v) VALUES (1, 'a; b -- c /* d */');\n" +
+                                                        "INSERT INTO t (id, v) VALUES (2, 'it''s; escaped');\n" +
+                                                        "CREATE TABLE \"Weird;Name\" (id int PRIMARY KEY);");
+
+        assertEquals(List.of("INSERT INTO t (id, v) VALUES (1, 'a; b -- c /* d */')",
+                             "INSERT INTO t (id, v) VALUES (2, 'it''s; escaped')",
+                             "CREATE TABLE \"Weird;Name\" (id int PRIMARY KEY)"),
+                     statements);
+    }
+
+    @Test
+    public void shouldKeepDollarQuotedBlocks()
+    {
+        String function = "CREATE FUNCTION f (input int) RETURNS NULL ON NULL INPUT RETURNS int LANGUAGE java " +
+                          "AS $$ int a = input; // not a comment\n return a + 1; $$";
+
+        List<String> statements = CqlScriptParser.parse(function + ";\nINSERT INTO t (v) VALUES ($$a;b$$);");
+
+        assertEquals(List.of(function, "INSERT INTO t (v) VALUES ($$a;b$$)"), statements);
+    }
+
+    @Test
+    public void shouldKeepBatchesTogether()
+    {
+        List<String> statements = CqlScriptParser.parse("BEGIN BATCH\n" +
+                                                        "  INSERT INTO t (id) VALUES (1);\n" +
+                                                        "  INSERT INTO t (id) VALUES (2);\n" +
+                                                        "APPLY BATCH;\n" +
+                                                        "begin unlogged batch INSERT INTO t (id) VALUES (3); apply batch;\n" +
+                                                        "INSERT INTO t (id) VALUES (4);");
+
+        assertEquals(List.of("BEGIN BATCH\n  INSERT INTO t (id) VALUES (1);\n  INSERT INTO t (id) VALUES (2);\nAPPLY BATCH",
+                             "begin unlogged batch INSERT INTO t (id) VALUES (3); apply batch",
+                             "INSERT INTO t (id) VALUES (4)"),
+                     statements);
+    }
+
+    @Test
+    public void shouldKeepUnterminatedQuotesUntilEnd()
+    {
+        assertEquals(List.of("INSERT INTO t (v) VALUES ('open; still open"),
+                     CqlScriptParser.parse("INSERT INTO t (v) VALUES ('open; still open"));
+        assertEquals(List.of("SELECT 1"), CqlScriptParser.parse("SELECT 1; /* unterminated; comment"));
+    }
+
+    @Test
+    public void shouldDetectSchemaChanges()
+    {
+        assertTrue(CqlScriptParser.isSchemaChange("create table t (id int PRIMARY KEY)"));
+        assertTrue(CqlScriptParser.isSchemaChange("  ALTER TABLE t ADD v text"));
+        assertTrue(CqlScriptParser.isSchemaChange("TRUNCATE t"));
+        assertTrue(CqlScriptParser.isSchemaChange("GRANT SELECT ON t TO r"));
+        assertFalse(CqlScriptParser.isSchemaChange("INSERT INTO t (id) VALUES (1)"));
+        assertFalse(CqlScriptParser.isSchemaChange("BEGIN BATCH INSERT INTO t (id) VALUES (1); APPLY BATCH"));
+    }
+
+}
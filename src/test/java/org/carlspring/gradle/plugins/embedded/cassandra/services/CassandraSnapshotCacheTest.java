@@ -0,0 +1,78 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CassandraSnapshotCacheTest
+{
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldIgnorePortsInKey()
+    {
+        String key = CassandraSnapshotCache.key("4.1.3",
+                                                Map.of("num_tokens", 1, "storage_port", 7000, "native_transport_port", 9042),
+                                                Map.of("cassandra.unsafesystem", true),
+                                                List.of("-Xmx1g"));
+        String randomPorts = CassandraSnapshotCache.key("4.1.3",
+                                                        Map.of("num_tokens", 1, "storage_port", 41234, "native_transport_port", 52345),
+                                                        Map.of("cassandra.unsafesystem", true, "cassandra.jmx.local.port", 43456),
+                                                        List.of("-Xmx1g"));
+
+        assertEquals(key, randomPorts);
+        assertTrue(key.startsWith("4.1.3-"));
+    }
+
+    @Test
+    public void shouldChangeKeyWithConfiguration()
+    {
+        String key = CassandraSnapshotCache.key("4.1.3", Map.of("num_tokens", 1), Map.of(), List.of("-Xmx1g"));
+
+        assertNotEquals(key, CassandraSnapshotCache.key("4.1.3", Map.of("num_tokens", 16), Map.of(), List.of("-Xmx1g")));
+        assertNotEquals(key, CassandraSnapshotCache.key("4.1.3", Map.of("num_tokens", 1), Map.of("cassandra.unsafesystem", true), List.of("-Xmx1g")));
+        assertNotEquals(key, CassandraSnapshotCache.key("4.1.3", Map.of("num_tokens", 1), Map.of(), List.of("-Xmx2g")));
+        assertNotEquals(key, CassandraSnapshotCache.key("4.0.11", Map.of("num_tokens", 1), Map.of(), List.of("-Xmx1g")));
+    }
+
+    @Test
+    public void shouldRestoreStoredSnapshotOnlyIntoFreshWorkingDirectory()
+            throws IOException
+    {
+        Path instance = directory.resolve("instance");
+        Files.createDirectories(instance.resolve("data/data/system"));
+        Files.writeString(instance.resolve("data/data/system/table.db"), "sstable");
+        Files.createDirectories(instance.resolve("data/commitlog"));
+        Files.writeString(instance.resolve("data/commitlog/segment.log"), "commitlog");
+        Files.createDirectories(instance.resolve("logs"));
+        Files.writeString(instance.resolve("logs/system.log"), "log");
+
+        CassandraSnapshotCache cache = new CassandraSnapshotCache(directory.resolve("cache"));
+        assertFalse(cache.exists("key"));
+        cache.store("key", instance);
+        assertTrue(cache.exists("key"));
+
+        Path fresh = directory.resolve("fresh");
+        assertTrue(cache.restore("key", fresh));
+        assertEquals("sstable", Files.readString(fresh.resolve("data/data/system/table.db")));
+        assertEquals("commitlog", Files.readString(fresh.resolve("data/commitlog/segment.log")));
+        assertFalse(Files.exists(fresh.resolve("logs")));
+
+        // Data which is already there is never overwritten.
+        assertFalse(cache.restore("key", fresh));
+        assertFalse(cache.restore("missing", directory.resolve("other")));
+    }
+
+}
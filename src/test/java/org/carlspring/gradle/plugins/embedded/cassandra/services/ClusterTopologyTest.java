@@ -0,0 +1,48 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClusterTopologyTest
+{
+
+    @Test
+    public void shouldGiveEveryNodeItsOwnLoopbackAddress()
+    {
+        assertEquals("127.0.0.1", ClusterTopology.address(0, true));
+        assertEquals("127.0.0.2", ClusterTopology.address(1, true));
+        assertEquals("127.0.0.3", ClusterTopology.address(2, true));
+        assertEquals("127.0.0.1", ClusterTopology.address(2, false));
+    }
+
+    @Test
+    public void shouldStartRingAtMinimumToken()
+    {
+        assertEquals(String.valueOf(Long.MIN_VALUE), ClusterTopology.initialToken(0, 1));
+        assertEquals(String.valueOf(Long.MIN_VALUE), ClusterTopology.initialToken(0, 3));
+        assertEquals("0", ClusterTopology.initialToken(1, 2));
+    }
+
+    @ParameterizedTest(name = "{0} nodes")
+    @ValueSource(ints = { 2, 3, 5, 7 })
+    public void shouldSpaceTokensEvenly(int nodes)
+    {
+        BigInteger range = BigInteger.ONE.shiftLeft(64);
+        BigInteger share = range.divide(BigInteger.valueOf(nodes));
+        for (int node = 1; node < nodes; node++) {
+            BigInteger previous = new BigInteger(ClusterTopology.initialToken(node - 1, nodes));
+            BigInteger token = new BigInteger(ClusterTopology.initialToken(node, nodes));
+            // Rounding may cost a token, never more.
+            assertTrue(token.subtract(previous).subtract(share).abs().compareTo(BigInteger.ONE) <= 0);
+            // Murmur3Partitioner tokens are longs.
+            assertTrue(token.bitLength() < 64);
+        }
+    }
+
+}
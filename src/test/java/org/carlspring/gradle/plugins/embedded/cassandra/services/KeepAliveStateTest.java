@@ -0,0 +1,151 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KeepAliveStateTest
+{
+
+    @TempDir
+    Path workingDirectory;
+
+    private Process process;
+
+    @AfterEach
+    public void destroyProcess()
+    {
+        if (process != null) {
+            process.destroyForcibly();
+        }
+    }
+
+    @Test
+    public void shouldRoundTripState()
+    {
+        KeepAliveState state = KeepAliveState.create(workingDirectory, ProcessHandle.current(), "hash", Duration.ofMinutes(5));
+        state.setPort("native_transport", 19042);
+        state.markInUse();
+        state.save();
+
+        KeepAliveState loaded = KeepAliveState.forWorkingDirectory(workingDirectory).orElseThrow();
+        assertEquals(workingDirectory.resolve(KeepAliveState.FILE_NAME), loaded.getFile());
+        assertEquals(ProcessHandle.current().pid(), loaded.getPid());
+        assertTrue(loaded.isRunning());
+        assertEquals("hash", loaded.getConfigHash());
+        assertEquals(Duration.ofMinutes(5), loaded.getIdleTimeout());
+        assertEquals(19042, loaded.getPort("native_transport", 9042));
+        assertEquals(7000, loaded.getPort("storage", 7000));
+        assertTrue(loaded.isInUse());
+        // Written atomically - no temporary file is left behind.
+        assertEquals(Optional.empty(), findTemporaryFile());
+    }
+
+    @Test
+    public void shouldIgnoreMissingAndBrokenState() throws IOException
+    {
+        assertFalse(KeepAliveState.forWorkingDirectory(workingDirectory).isPresent());
+
+        Files.writeString(workingDirectory.resolve(KeepAliveState.FILE_NAME), "pid=not-a-number\nidleTimeout=\n");
+        KeepAliveState state = KeepAliveState.forWorkingDirectory(workingDirectory).orElseThrow();
+        assertEquals(-1, state.getPid());
+        assertEquals(Duration.ofMinutes(30), state.getIdleTimeout());
+        assertFalse(state.isRunning());
+        assertFalse(state.isInUse());
+    }
+
+    @Test
+    public void shouldTellWhetherTheProcessIsRunning() throws IOException
+    {
+        assertTrue(KeepAliveState.create(workingDirectory, ProcessHandle.current(), "hash", Duration.ofMinutes(5)).isRunning());
+        assertFalse(writeState("pid=-1\n").isRunning());
+        assertFalse(writeState("pid=0\n").isRunning());
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    public void shouldNotTrustPidOfAnotherProcess() throws IOException
+    {
+        // The pid of the kept alive instance has been reused by a process which isn't Cassandra.
+        process = new ProcessBuilder("sleep", "600").start();
+        long started = process.toHandle().info().startInstant().orElseThrow().toEpochMilli();
+
+        KeepAliveState reused = writeState("pid=" + process.pid() + "\nstartInstant=" + (started - 60000) + "\n" +
+                                           "watchdogPid=" + process.pid() + "\nwatchdogStartInstant=" + (started - 60000) + "\n");
+        assertFalse(reused.isRunning());
+        assertFalse(reused.isWatchdogRunning());
+
+        reused.terminate();
+        assertTrue(process.isAlive());
+        assertFalse(Files.exists(reused.getFile()));
+
+        // Without a start time only a CassandraDaemon in the working directory is trusted.
+        KeepAliveState legacy = writeState("pid=" + process.pid() + "\n");
+        assertFalse(legacy.isRunning());
+        legacy.terminate();
+        assertTrue(process.isAlive());
+
+        KeepAliveState same = KeepAliveState.create(workingDirectory, process.toHandle(), "hash", Duration.ofMinutes(5));
+        assertTrue(same.isRunning());
+    }
+
+    @Test
+    public void shouldOnlyExceedIdleTimeoutWhenNotInUse() throws InterruptedException
+    {
+        KeepAliveState state = KeepAliveState.create(workingDirectory, ProcessHandle.current(), "hash", Duration.ZERO);
+        state.markInUse();
+        Thread.sleep(10);
+        assertFalse(state.isIdleTimeoutExceeded());
+
+        state.markIdle();
+        Thread.sleep(10);
+        assertTrue(state.isIdleTimeoutExceeded());
+
+        KeepAliveState patient = KeepAliveState.create(workingDirectory, ProcessHandle.current(), "hash", Duration.ofHours(1));
+        patient.markIdle();
+        assertFalse(patient.isIdleTimeoutExceeded());
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    public void shouldTerminateProcessAndRemoveState() throws IOException
+    {
+        process = new ProcessBuilder("sleep", "600").start();
+        KeepAliveState state = KeepAliveState.create(workingDirectory, process.toHandle(), "hash", Duration.ofMinutes(5));
+        state.save();
+
+        state.terminate();
+
+        assertFalse(process.isAlive());
+        assertFalse(Files.exists(state.getFile()));
+    }
+
+    private KeepAliveState writeState(String content) throws IOException
+    {
+        Files.writeString(workingDirectory.resolve(KeepAliveState.FILE_NAME), content);
+        return KeepAliveState.forWorkingDirectory(workingDirectory).orElseThrow();
+    }
+
+    private Optional<Path> findTemporaryFile()
+    {
+        try (var files = Files.list(workingDirectory)) {
+            return files.filter(f -> f.getFileName().toString().startsWith(KeepAliveState.FILE_NAME + ".tmp")).findFirst();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisabledOnOs(OS.WINDOWS)
+public class KeepAliveWatchdogTest
+{
+
+    @TempDir
+    Path workingDirectory;
+
+    private Process instance;
+
+    @AfterEach
+    public void destroyProcesses()
+    {
+        if (instance != null) {
+            instance.destroyForcibly();
+        }
+        KeepAliveState.forWorkingDirectory(workingDirectory)
+                      .flatMap(state -> ProcessHandle.of(state.getWatchdogPid()))
+                      .ifPresent(ProcessHandle::destroyForcibly);
+    }
+
+    @Test
+    public void shouldStopIdleInstance() throws Exception
+    {
+        instance = new ProcessBuilder("sleep", "600").start();
+        KeepAliveState state = KeepAliveState.create(workingDirectory, instance.toHandle(), "hash", Duration.ZERO);
+        state.markIdle();
+        state.save();
+
+        KeepAliveWatchdog.launch(state, workingDirectory.resolve("watchdog.log"));
+
+        assertTrue(instance.waitFor(30, TimeUnit.SECONDS));
+        // The state is removed once the instance is gone, right before the watchdog exits.
+        awaitWatchdog(state);
+        assertFalse(Files.exists(state.getFile()));
+        assertTrue(Files.readString(workingDirectory.resolve("watchdog.log")).contains("Stopping idle Cassandra (pid " + instance.pid() + ")"));
+    }
+
+    @Test
+    public void shouldKeepInstanceInUse() throws Exception
+    {
+        instance = new ProcessBuilder("sleep", "600").start();
+        KeepAliveState state = KeepAliveState.create(workingDirectory, instance.toHandle(), "hash", Duration.ZERO);
+        // In use by this JVM, like the build which has started it.
+        state.markInUse();
+        state.save();
+
+        KeepAliveWatchdog.launch(state, workingDirectory.resolve("watchdog.log"));
+
+        assertFalse(instance.waitFor(3, TimeUnit.SECONDS));
+        assertTrue(Files.exists(state.getFile()));
+        assertTrue(state.isWatchdogRunning());
+    }
+
+    @Test
+    public void shouldExitWhenInstanceIsGone() throws Exception
+    {
+        KeepAliveState state = KeepAliveState.create(workingDirectory, exitedProcess(), "hash", Duration.ofMinutes(5));
+        state.save();
+
+        KeepAliveWatchdog.launch(state, workingDirectory.resolve("watchdog.log"));
+
+        awaitWatchdog(state);
+        assertFalse(state.isWatchdogRunning());
+    }
+
+    @Test
+    public void shouldNotLaunchSecondWatchdog() throws Exception
+    {
+        KeepAliveState state = KeepAliveState.create(workingDirectory, exitedProcess(), "hash", Duration.ofMinutes(5));
+        // Any live process will do.
+        state.setWatchdog(ProcessHandle.current());
+
+        KeepAliveWatchdog.launch(state, workingDirectory.resolve("watchdog.log"));
+
+        assertEquals(ProcessHandle.current().pid(), state.getWatchdogPid());
+        assertFalse(Files.exists(workingDirectory.resolve("watchdog.log")));
+    }
+
+    @Test
+    public void shouldReturnWithoutState() throws InterruptedException
+    {
+        KeepAliveWatchdog.main(new String[]{ workingDirectory.resolve(KeepAliveState.FILE_NAME).toString() });
+    }
+
+    private static ProcessHandle exitedProcess() throws Exception
+    {
+        Process process = new ProcessBuilder("true").start();
+        process.waitFor();
+        return process.toHandle();
+    }
+
+    private static void awaitWatchdog(KeepAliveState state) throws Exception
+    {
+        Optional<ProcessHandle> watchdog = ProcessHandle.of(state.getWatchdogPid());
+        if (watchdog.isPresent()) {
+            watchdog.get().onExit().get(30, TimeUnit.SECONDS);
+        }
+    }
+
+}
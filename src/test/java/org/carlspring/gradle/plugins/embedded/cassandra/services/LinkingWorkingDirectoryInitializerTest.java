@@ -0,0 +1,157 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import com.github.nosan.embedded.cassandra.Version;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LinkingWorkingDirectoryInitializerTest
+{
+
+    private static final Version VERSION = Version.parse("4.1.3");
+
+    @TempDir
+    Path directory;
+
+    private Path distribution;
+
+    private Path workingDirectory;
+
+    @BeforeEach
+    public void setUp() throws IOException
+    {
+        distribution = directory.resolve("distributions/apache-cassandra-4.1.3");
+        write("bin/cassandra", "#!/bin/sh");
+        write("lib/cassandra.jar", "jar");
+        write("lib/sigar-bin/libsigar.so", "native");
+        write("conf/cassandra.yaml", "cluster_name: Test");
+        write("data/data/stale.db", "stale");
+        write("logs/system.log", "stale");
+        write("NOTICE.txt", "notice");
+
+        workingDirectory = directory.resolve("working");
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    public void shouldHardLinkReadOnlyFiles() throws IOException
+    {
+        Map<Path, String> before = snapshot(distribution);
+
+        newInitializer().init(workingDirectory, VERSION);
+
+        assertTrue(Files.isSameFile(distribution.resolve("lib/cassandra.jar"), workingDirectory.resolve("lib/cassandra.jar")));
+        assertTrue(Files.isSameFile(distribution.resolve("lib/sigar-bin/libsigar.so"), workingDirectory.resolve("lib/sigar-bin/libsigar.so")));
+        assertTrue(Files.isSameFile(distribution.resolve("NOTICE.txt"), workingDirectory.resolve("NOTICE.txt")));
+        assertFalse(Files.isSymbolicLink(workingDirectory.resolve("bin/cassandra")));
+        // Linked one by one - bin/ itself is a directory of the working directory.
+        assertFalse(Files.isSymbolicLink(workingDirectory.resolve("bin")));
+        assertEquals(before, snapshot(distribution));
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    public void shouldFallbackToSymbolicLinks() throws IOException
+    {
+        new LinkingWorkingDirectoryInitializer(v -> distribution, LinkingWorkingDirectoryInitializerTest::fail, symbolicLinker())
+                .init(workingDirectory, VERSION);
+
+        assertTrue(Files.isSymbolicLink(workingDirectory.resolve("lib/cassandra.jar")));
+        assertEquals(distribution.resolve("lib/cassandra.jar").toAbsolutePath(), Files.readSymbolicLink(workingDirectory.resolve("lib/cassandra.jar")));
+        assertEquals("jar", Files.readString(workingDirectory.resolve("lib/cassandra.jar")));
+        assertFalse(Files.isSymbolicLink(workingDirectory.resolve("conf/cassandra.yaml")));
+    }
+
+    @Test
+    public void shouldFallbackToCopies() throws IOException
+    {
+        new LinkingWorkingDirectoryInitializer(v -> distribution, LinkingWorkingDirectoryInitializerTest::fail, LinkingWorkingDirectoryInitializerTest::fail)
+                .init(workingDirectory, VERSION);
+
+        Path jar = workingDirectory.resolve("lib/cassandra.jar");
+        assertFalse(Files.isSymbolicLink(jar));
+        assertFalse(Files.isSameFile(distribution.resolve("lib/cassandra.jar"), jar));
+        assertEquals("jar", Files.readString(jar));
+        assertEquals("#!/bin/sh", Files.readString(workingDirectory.resolve("bin/cassandra")));
+    }
+
+    @Test
+    public void shouldCopyConfAndSkipDataAndLogs() throws IOException
+    {
+        newInitializer().init(workingDirectory, VERSION);
+
+        Path yaml = workingDirectory.resolve("conf/cassandra.yaml");
+        assertFalse(Files.isSymbolicLink(yaml));
+        assertFalse(Files.isSameFile(distribution.resolve("conf/cassandra.yaml"), yaml));
+        assertFalse(Files.exists(workingDirectory.resolve("data")));
+        assertFalse(Files.exists(workingDirectory.resolve("logs")));
+    }
+
+    @Test
+    public void shouldNeverWriteToDistribution() throws IOException
+    {
+        Map<Path, String> before = snapshot(distribution);
+        FileTime modified = Files.getLastModifiedTime(distribution.resolve("conf/cassandra.yaml"));
+
+        newInitializer().init(workingDirectory, VERSION);
+        // Cassandra (and the plugin) merge the configuration into conf/ in place.
+        Files.writeString(workingDirectory.resolve("conf/cassandra.yaml"), "cluster_name: Changed");
+        Files.createDirectories(workingDirectory.resolve("data/data"));
+        Files.writeString(workingDirectory.resolve("data/data/table.db"), "data");
+        // Initializing again (i.e. after conf/ has been deleted) keeps what is there.
+        newInitializer().init(workingDirectory, VERSION);
+
+        assertEquals(before, snapshot(distribution));
+        assertEquals(modified, Files.getLastModifiedTime(distribution.resolve("conf/cassandra.yaml")));
+        assertEquals("cluster_name: Changed", Files.readString(workingDirectory.resolve("conf/cassandra.yaml")));
+    }
+
+    private LinkingWorkingDirectoryInitializer newInitializer()
+    {
+        return new LinkingWorkingDirectoryInitializer(v -> distribution);
+    }
+
+    private void write(String file, String content) throws IOException
+    {
+        Path path = distribution.resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, content);
+    }
+
+    private static Map<Path, String> snapshot(Path root) throws IOException
+    {
+        Map<Path, String> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                files.put(root.relativize(path), Files.isDirectory(path) ? "<dir>" : Files.readString(path));
+            }
+        }
+
+        return files;
+    }
+
+    private static LinkingWorkingDirectoryInitializer.Linker symbolicLinker()
+    {
+        return (link, existing) -> Files.createSymbolicLink(link, existing.toAbsolutePath());
+    }
+
+    private static void fail(Path link, Path existing) throws IOException
+    {
+        throw new IOException("Not supported");
+    }
+
+}
@@ -0,0 +1,197 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PortAllocatorTest
+{
+
+    private static final long PID = ProcessHandle.current().pid();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldReserveDistinctFreePorts() throws IOException
+    {
+        PortAllocator allocator = new PortAllocator(directory);
+
+        List<Integer> ports = allocator.reserve(4);
+
+        assertEquals(4, new HashSet<>(ports).size());
+        for (int port : ports) {
+            assertTrue(port >= PortAllocator.MIN_PORT && port <= PortAllocator.MAX_PORT);
+            assertTrue(Files.readString(lock(port)).startsWith(PID + " "));
+        }
+
+        allocator.release(ports);
+        for (int port : ports) {
+            assertFalse(Files.exists(lock(port)));
+        }
+    }
+
+    @Test
+    public void shouldNotReservePortTwice()
+    {
+        int port = findFreePort();
+        PortAllocator allocator = new PortAllocator(directory);
+
+        assertTrue(allocator.tryReserve(port));
+        // Neither another allocator of this process nor one of another build.
+        assertFalse(new PortAllocator(directory).tryReserve(port));
+    }
+
+    @Test
+    public void shouldNotReserveBoundPort() throws IOException
+    {
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.bind(new InetSocketAddress(0));
+            int port = socket.getLocalPort();
+
+            assertFalse(new PortAllocator(directory).tryReserve(port));
+            assertFalse(Files.exists(lock(port)));
+        }
+    }
+
+    @Test
+    public void shouldRespectReservationOfLiveProcess() throws IOException
+    {
+        int port = findFreePort();
+        writeLock(port, parentPid());
+
+        assertFalse(new PortAllocator(directory).tryReserve(port));
+
+        // Not owned by this process - left alone.
+        new PortAllocator(directory).release(List.of(port));
+        assertTrue(Files.exists(lock(port)));
+    }
+
+    @Test
+    public void shouldTakeOverReservationOfDeadProcess() throws Exception
+    {
+        Process process = new ProcessBuilder(ProcessHandle.current().info().command().orElseThrow(), "-version").start();
+        process.waitFor();
+        int port = findFreePort();
+        writeLock(port, process.pid());
+
+        assertTrue(new PortAllocator(directory).tryReserve(port));
+        assertTrue(Files.readString(lock(port)).startsWith(PID + " "));
+    }
+
+    @Test
+    public void shouldRespectReservationOfLiveProcessOlderThanTtl() throws IOException
+    {
+        int port = findFreePort();
+        writeLock(port, parentPid());
+        Files.setLastModifiedTime(lock(port), FileTime.from(Instant.now().minus(PortAllocator.RESERVATION_TTL).minusSeconds(1)));
+
+        // A long running build may well not have started Cassandra yet.
+        assertFalse(new PortAllocator(directory).tryReserve(port));
+    }
+
+    @Test
+    public void shouldTakeOverReservationOfReusedPid() throws IOException
+    {
+        ProcessHandle parent = ProcessHandle.current().parent().orElseThrow();
+        Instant started = parent.info().startInstant().orElseThrow();
+        int port = findFreePort();
+        Files.createDirectories(directory);
+        Files.writeString(lock(port), parent.pid() + " " + started.minusSeconds(60).toEpochMilli());
+
+        assertTrue(new PortAllocator(directory).tryReserve(port));
+        assertTrue(Files.readString(lock(port)).startsWith(PID + " "));
+    }
+
+    @Test
+    public void shouldTakeOverStaleReservationOnlyOnce() throws Exception
+    {
+        Process process = new ProcessBuilder(ProcessHandle.current().info().command().orElseThrow(), "-version").start();
+        process.waitFor();
+        int port = findFreePort();
+        writeLock(port, process.pid());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> attempts = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                attempts.add(executor.submit(() -> {
+                    start.await();
+                    return new PortAllocator(directory).tryReserve(port);
+                }));
+            }
+            start.countDown();
+
+            int reserved = 0;
+            for (Future<Boolean> attempt : attempts) {
+                reserved += attempt.get(30, TimeUnit.SECONDS) ? 1 : 0;
+            }
+            assertEquals(1, reserved);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldWaitForReservationBeingWritten() throws IOException
+    {
+        int port = findFreePort();
+        Files.createDirectories(directory);
+        Files.writeString(lock(port), "");
+
+        assertFalse(new PortAllocator(directory).tryReserve(port));
+
+        // Unless its owner never finished writing it.
+        Files.setLastModifiedTime(lock(port), FileTime.from(Instant.now().minus(PortAllocator.RESERVATION_TTL).minusSeconds(1)));
+        assertTrue(new PortAllocator(directory).tryReserve(port));
+    }
+
+    private Path lock(int port)
+    {
+        return directory.resolve(port + ".lock");
+    }
+
+    private void writeLock(int port, long pid) throws IOException
+    {
+        Files.createDirectories(directory);
+        Files.writeString(lock(port), pid + " " + System.currentTimeMillis());
+    }
+
+    private static long parentPid()
+    {
+        return ProcessHandle.current().parent().orElseThrow().pid();
+    }
+
+    private static int findFreePort()
+    {
+        for (int port = PortAllocator.MIN_PORT; port <= PortAllocator.MAX_PORT; port++) {
+            if (PortAllocator.isFree(port)) {
+                return port;
+            }
+        }
+
+        throw new IllegalStateException("No free port");
+    }
+
+}
@@ -0,0 +1,137 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisabledOnOs(OS.WINDOWS)
+public class RamDiskDataDirectoryTest
+{
+
+    @TempDir
+    Path directory;
+
+    private Path ramDisk;
+
+    private Path workingDirectory;
+
+    @BeforeEach
+    public void setUp() throws IOException
+    {
+        ramDisk = Files.createDirectories(directory.resolve("shm"));
+        workingDirectory = directory.resolve("working");
+    }
+
+    @Test
+    public void shouldLinkDataDirectoryToRamDisk() throws IOException
+    {
+        assertTrue(new RamDiskDataDirectory(ramDisk, 0).prepare(workingDirectory));
+
+        Path data = workingDirectory.resolve("data");
+        assertTrue(Files.isSymbolicLink(data));
+        assertTrue(Files.readSymbolicLink(data).startsWith(ramDisk));
+        assertTrue(Files.isDirectory(data));
+
+        Files.createDirectories(data.resolve("commitlog"));
+        Files.writeString(data.resolve("commitlog/segment.log"), "commitlog");
+        assertEquals("commitlog", Files.readString(Files.readSymbolicLink(data).resolve("commitlog/segment.log")));
+    }
+
+    @Test
+    public void shouldKeepDataWhenRamDiskIsMissing() throws IOException
+    {
+        assertFalse(new RamDiskDataDirectory(directory.resolve("missing"), 0).prepare(workingDirectory));
+        assertFalse(Files.exists(workingDirectory.resolve("data")));
+    }
+
+    @Test
+    public void shouldKeepDataWhenRamDiskIsTooSmall() throws IOException
+    {
+        assertFalse(new RamDiskDataDirectory(ramDisk, Long.MAX_VALUE).prepare(workingDirectory));
+        assertFalse(Files.exists(workingDirectory.resolve("data")));
+        assertEquals(List.of(), list(ramDisk));
+    }
+
+    @Test
+    public void shouldDeleteDataOnCleanup() throws IOException
+    {
+        RamDiskDataDirectory ramDiskDirectory = new RamDiskDataDirectory(ramDisk, 0);
+        ramDiskDirectory.prepare(workingDirectory);
+        Files.writeString(workingDirectory.resolve("data/table.db"), "data");
+
+        ramDiskDirectory.cleanup(workingDirectory);
+
+        assertFalse(Files.exists(workingDirectory.resolve("data"), LinkOption.NOFOLLOW_LINKS));
+        assertEquals(List.of(), list(ramDisk));
+    }
+
+    @Test
+    public void shouldReplaceDataOfCrashedBuildInSameWorkingDirectory() throws IOException
+    {
+        RamDiskDataDirectory ramDiskDirectory = new RamDiskDataDirectory(ramDisk, 0);
+        ramDiskDirectory.prepare(workingDirectory);
+        Files.writeString(workingDirectory.resolve("data/stale.db"), "stale");
+
+        // No cleanup - the build was killed.
+        assertTrue(ramDiskDirectory.prepare(workingDirectory));
+
+        assertFalse(Files.exists(workingDirectory.resolve("data/stale.db")));
+        assertEquals(2, list(ramDisk).size());
+    }
+
+    @Test
+    public void shouldReplaceDataDirectoryOnDisk() throws IOException
+    {
+        Files.createDirectories(workingDirectory.resolve("data/data"));
+        Files.writeString(workingDirectory.resolve("data/data/table.db"), "disk");
+
+        assertTrue(new RamDiskDataDirectory(ramDisk, 0).prepare(workingDirectory));
+
+        assertTrue(Files.isSymbolicLink(workingDirectory.resolve("data")));
+        assertFalse(Files.exists(workingDirectory.resolve("data/data/table.db")));
+    }
+
+    @Test
+    public void shouldDeleteOrphansOfCrashedBuilds() throws IOException
+    {
+        RamDiskDataDirectory ramDiskDirectory = new RamDiskDataDirectory(ramDisk, 0);
+        Path cleaned = directory.resolve("cleaned");
+        Path running = directory.resolve("running");
+        ramDiskDirectory.prepare(cleaned);
+        ramDiskDirectory.prepare(running);
+        Path orphan = Files.readSymbolicLink(cleaned.resolve("data"));
+        Path kept = Files.readSymbolicLink(running.resolve("data"));
+
+        // The build crashed and its working directory was deleted (i.e. gradle clean).
+        CassandraSnapshotCache.deleteRecursively(cleaned);
+        ramDiskDirectory.prepare(workingDirectory);
+
+        assertFalse(Files.exists(orphan));
+        assertFalse(Files.exists(orphan.resolveSibling(orphan.getFileName() + ".owner")));
+        assertTrue(Files.isDirectory(kept));
+        assertTrue(Files.isSymbolicLink(running.resolve("data")));
+        assertEquals(4, list(ramDisk).size());
+    }
+
+    private static List<String> list(Path path) throws IOException
+    {
+        try (Stream<Path> paths = Files.list(path)) {
+            return paths.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+}
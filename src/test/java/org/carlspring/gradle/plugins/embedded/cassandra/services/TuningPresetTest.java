@@ -0,0 +1,212 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.services;
+
+import com.github.nosan.embedded.cassandra.Version;
+import org.carlspring.gradle.plugins.embedded.cassandra.EmbeddedCassandraExtension;
+import org.carlspring.gradle.plugins.embedded.cassandra.EmbeddedCassandraPlugin;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TuningPresetTest
+{
+
+    /**
+     * Suffixes Cassandra 4.1 has dropped from the renamed keys - the unit moved into the value.
+     */
+    private static final Pattern LEGACY_SUFFIX = Pattern.compile("_in_(ms|kb|mb)$|_mb_per_sec$");
+
+    /**
+     * Feature flags, which 4.1 has renamed from {@code enable_<feature>} to {@code <feature>_enabled}.
+     */
+    private static final Pattern LEGACY_FLAG = Pattern.compile("^enable_(\\w+)$");
+
+    private static final List<TuningPreset> ALL = List.of(TuningPreset.values());
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldUseLegacyKeysBefore41()
+    {
+        for (String version : List.of("3.11.16", "4.0.11")) {
+            Map<String, Object> tuned = TuningPreset.apply(List.of(TuningPreset.WRITE_HEAVY), Map.of(), Version.parse(version));
+
+            assertEquals(10000L, tuned.get("commitlog_sync_period_in_ms"), version);
+            assertEquals(256L, tuned.get("memtable_heap_space_in_mb"), version);
+            assertEquals(0L, tuned.get("compaction_throughput_mb_per_sec"), version);
+            assertEquals(64L, tuned.get("batch_size_warn_threshold_in_kb"), version);
+            assertFalse(tuned.containsKey("commitlog_sync_period"), version);
+            assertFalse(tuned.containsKey("memtable_heap_space"), version);
+        }
+    }
+
+    @Test
+    public void shouldUseRenamedKeysWithUnitsSince41()
+    {
+        for (String version : List.of("4.1.3", "5.0.0")) {
+            Map<String, Object> tuned = TuningPreset.apply(List.of(TuningPreset.WRITE_HEAVY), Map.of(), Version.parse(version));
+
+            assertEquals("10000ms", tuned.get("commitlog_sync_period"), version);
+            assertEquals("256MiB", tuned.get("memtable_heap_space"), version);
+            assertEquals("0MiB/s", tuned.get("compaction_throughput"), version);
+            assertEquals("64KiB", tuned.get("batch_size_warn_threshold"), version);
+            // Settings without a unit keep their value.
+            assertEquals(64, tuned.get("concurrent_writes"), version);
+            assertFalse(tuned.containsKey("commitlog_sync_period_in_ms"), version);
+            assertFalse(tuned.containsKey("memtable_heap_space_in_mb"), version);
+        }
+    }
+
+    @Test
+    public void shouldLeaveOutSettingsMissingInVersion()
+    {
+        assertFalse(TuningPreset.apply(ALL, Map.of(), Version.parse("3.11.16")).containsKey("concurrent_materialized_view_builders"));
+        assertEquals(2, TuningPreset.apply(ALL, Map.of(), Version.parse("4.0.11")).get("concurrent_materialized_view_builders"));
+    }
+
+    @Test
+    public void shouldRenameFeatureFlagsSince41()
+    {
+        Map<String, Object> legacy = TuningPreset.apply(ALL, Map.of(), Version.parse("4.0.11"));
+        assertEquals(true, legacy.get("enable_materialized_views"));
+        assertEquals(true, legacy.get("enable_sasi_indexes"));
+        assertFalse(legacy.containsKey("materialized_views_enabled"));
+
+        Map<String, Object> renamed = TuningPreset.apply(ALL, Map.of(), Version.parse("4.1.3"));
+        assertEquals(true, renamed.get("materialized_views_enabled"));
+        assertEquals(true, renamed.get("sasi_indexes_enabled"));
+        assertFalse(renamed.containsKey("enable_materialized_views"));
+        assertFalse(renamed.containsKey("enable_sasi_indexes"));
+
+        // Enabled by default before 4.0 - and unknown to older 3.11 releases.
+        Map<String, Object> old = TuningPreset.apply(ALL, Map.of(), Version.parse("3.11.16"));
+        assertFalse(old.containsKey("enable_materialized_views"));
+        assertFalse(old.containsKey("enable_sasi_indexes"));
+    }
+
+    @Test
+    public void shouldResolveConfiguredLegacyKeysForVersion()
+    {
+        Map<String, Object> configProperties = Map.of("commitlog_sync_period_in_ms", 5000,
+                                                      "enable_materialized_views", false,
+                                                      "compaction_throughput_mb_per_sec", "16",
+                                                      "num_tokens", 1);
+
+        assertSame(configProperties, TuningPreset.resolveKeys(configProperties, Version.parse("4.0.11")));
+
+        for (String version : List.of("4.1.3", "5.0.0")) {
+            Map<String, Object> resolved = TuningPreset.resolveKeys(configProperties, Version.parse(version));
+
+            assertEquals(Map.of("commitlog_sync_period", "5000ms",
+                                "materialized_views_enabled", false,
+                                "compaction_throughput", "16MiB/s",
+                                "num_tokens", 1),
+                         resolved,
+                         version);
+        }
+    }
+
+    @Test
+    public void shouldPreferNewNameWhenBothAreConfigured()
+    {
+        Map<String, Object> resolved = TuningPreset.resolveKeys(Map.of("commitlog_sync_period_in_ms", 5000,
+                                                                       "commitlog_sync_period", "2s"),
+                                                                Version.parse("4.1.3"));
+
+        assertEquals(Map.of("commitlog_sync_period", "2s"), resolved);
+    }
+
+    @Test
+    public void shouldLetLaterPresetsAndConfiguredPropertiesWin()
+    {
+        Map<String, Object> tuned = TuningPreset.apply(List.of(TuningPreset.WRITE_HEAVY, TuningPreset.READ_HEAVY),
+                                                       Map.of("concurrent_reads", 8),
+                                                       Version.parse("4.1.3"));
+
+        assertEquals("16MiB/s", tuned.get("compaction_throughput"));
+        assertEquals(1, tuned.get("concurrent_compactors"));
+        assertEquals(8, tuned.get("concurrent_reads"));
+    }
+
+    @Test
+    public void shouldNotOverrideConfiguredPropertiesUnderEitherName()
+    {
+        Map<String, Object> legacy = TuningPreset.apply(ALL, Map.of("key_cache_size_in_mb", 10), Version.parse("4.1.3"));
+        assertEquals(10, legacy.get("key_cache_size_in_mb"));
+        assertFalse(legacy.containsKey("key_cache_size"));
+
+        Map<String, Object> renamed = TuningPreset.apply(ALL, Map.of("key_cache_size", "10MiB"), Version.parse("4.0.11"));
+        assertEquals("10MiB", renamed.get("key_cache_size"));
+        assertFalse(renamed.containsKey("key_cache_size_in_mb"));
+    }
+
+    @Test
+    public void shouldNeverWriteBothNamesWithDefaultTestSettings()
+    {
+        Project project = ProjectBuilder.builder().withProjectDir(directory.toFile()).build();
+        project.getPluginManager().apply(EmbeddedCassandraPlugin.class);
+        EmbeddedCassandraExtension extension = project.getExtensions().getByType(EmbeddedCassandraExtension.class);
+        extension.defaultTestSettings();
+        Map<String, Object> configProperties = extension.getConfigProperties().get();
+
+        for (String version : List.of("3.11.16", "4.0.11", "4.1.3", "5.0.0")) {
+            for (List<TuningPreset> presets : List.of(List.of(TuningPreset.WRITE_HEAVY),
+                                                      List.of(TuningPreset.READ_HEAVY),
+                                                      List.of(TuningPreset.LOW_LATENCY),
+                                                      ALL)) {
+                // As the instances are created - the configured properties are resolved for the version first.
+                Version parsed = Version.parse(version);
+                Map<String, Object> tuned = TuningPreset.apply(presets, TuningPreset.resolveKeys(configProperties, parsed), parsed);
+
+                assertEquals(List.of(), duplicates(tuned), version + " " + presets);
+                // defaultTestSettings() wins over the presets - under the name of the version.
+                if (version.startsWith("4.1") || version.startsWith("5.")) {
+                    assertEquals("5000ms", tuned.get("commitlog_sync_period"), version + " " + presets);
+                    assertEquals("5000ms", tuned.get("request_timeout"), version + " " + presets);
+                    assertFalse(tuned.containsKey("commitlog_sync_period_in_ms"), version + " " + presets);
+                }
+                else {
+                    assertEquals(5000, tuned.get("commitlog_sync_period_in_ms"), version + " " + presets);
+                    assertFalse(tuned.containsKey("commitlog_sync_period"), version + " " + presets);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldKeepConfigurationWithoutPresets()
+    {
+        Map<String, Object> configProperties = Map.of("num_tokens", 1);
+
+        assertTrue(TuningPreset.apply(List.of(), configProperties, Version.parse("4.1.3")) == configProperties);
+    }
+
+    /**
+     * @return the legacy keys which are configured together with their 4.1 name.
+     */
+    private static List<String> duplicates(Map<String, Object> configProperties)
+    {
+        List<String> duplicates = new ArrayList<>();
+        for (String key : configProperties.keySet()) {
+            String renamed = LEGACY_FLAG.matcher(LEGACY_SUFFIX.matcher(key).replaceFirst("")).replaceFirst("$1_enabled");
+            if (!renamed.equals(key) && configProperties.containsKey(renamed)) {
+                duplicates.add(key);
+            }
+        }
+
+        return duplicates;
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.carlspring.gradle.plugins.embedded.cassandra.sstable;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SSTableGeneratorTest
+{
+
+    @Test
+    public void shouldParseQuotedValues() throws IOException
+    {
+        List<List<String>> records = parse("id,name,comment\n" +
+                                           "1,\"Doe, John\",\"says \"\"hi\"\"\"\n" +
+                                           "2,,\n");
+
+        assertEquals(3, records.size());
+        assertEquals(List.of("id", "name", "comment"), records.get(0));
+        assertEquals(List.of("1", "Doe, John", "says \"hi\""), records.get(1));
+        assertEquals(List.of("2", "", ""), records.get(2));
+    }
+
+    @Test
+    public void shouldKeepLineBreaksInQuotedValues() throws IOException
+    {
+        List<List<String>> records = parse("id,name\r\n" +
+                                           "1,\"first\r\nsecond\"\r\n" +
+                                           "2,\"a\n\nb\"\n");
+
+        assertEquals(3, records.size());
+        assertEquals(List.of("1", "first\r\nsecond"), records.get(1));
+        assertEquals(List.of("2", "a\n\nb"), records.get(2));
+    }
+
+    @Test
+    public void shouldSkipBlankLines() throws IOException
+    {
+        List<List<String>> records = parse("id,name\n\n1,a\n\r\n2,b");
+
+        assertEquals(List.of(List.of("id", "name"), List.of("1", "a"), List.of("2", "b")), records);
+    }
+
+    @Test
+    public void shouldRejectUnterminatedQuotes()
+    {
+        assertThrows(IllegalArgumentException.class, () -> parse("id,name\n1,\"open\n"));
+    }
+
+    @Test
+    public void shouldConvertRecordsToJson()
+    {
+        assertEquals("{\"id\":\"1\",\"name\":\"line\\nbreak \\\"quoted\\\"\",\"age\":null}",
+                     SSTableGenerator.toJson(List.of("id", " name ", "age"), List.of("1", "line\nbreak \"quoted\"")));
+    }
+
+    @Test
+    public void shouldCreateTableWithIdOfGeneratedDirectory()
+    {
+        String id = SSTableGenerator.tableId("test", "users").toString();
+        String schema = SSTableGenerator.schema("test", "users", "CREATE TABLE test.users (id int PRIMARY KEY, name text);");
+
+        assertTrue(schema.startsWith("CREATE KEYSPACE IF NOT EXISTS test WITH replication"));
+        assertTrue(schema.endsWith("CREATE TABLE IF NOT EXISTS test.users (id int PRIMARY KEY, name text) WITH ID = " + id + ";\n"));
+        assertTrue(SSTableGenerator.tableDirectory("test", "users").endsWith("users-" + id.replace("-", "")));
+    }
+
+    @Test
+    public void shouldAppendIdToExistingOptions()
+    {
+        String id = SSTableGenerator.tableId("test", "events").toString();
+        String schema = SSTableGenerator.schema("test", "events",
+                                                "create table if not exists test.events (id int, at timestamp, PRIMARY KEY (id, at)) " +
+                                                "WITH CLUSTERING ORDER BY (at DESC)");
+
+        assertTrue(schema.endsWith("create table if not exists test.events (id int, at timestamp, PRIMARY KEY (id, at)) " +
+                                   "WITH CLUSTERING ORDER BY (at DESC) AND ID = " + id + ";\n"));
+    }
+
+    private static List<List<String>> parse(String csv) throws IOException
+    {
+        return SSTableGenerator.parseCsv(new BufferedReader(new StringReader(csv)));
+    }
+
+}
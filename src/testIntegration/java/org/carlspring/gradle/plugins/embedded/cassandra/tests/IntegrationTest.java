@@ -3,23 +3,38 @@ package org.carlspring.gradle.plugins.embedded.cassandra.tests;
 import org.gradle.testkit.runner.BuildResult;
 import org.gradle.testkit.runner.GradleRunner;
 import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.EnabledOnOs;
 import org.junit.jupiter.api.condition.JRE;
+import org.junit.jupiter.api.condition.OS;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.ServerSocket;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class IntegrationTest
@@ -106,6 +121,7 @@ public class IntegrationTest
             "build-with-config.gradle.kts,settings.gradle.kts",
             "build-with-defaultTestSettings.gradle,settings.gradle",
             "build-with-defaultTestSettings.gradle.kts,settings.gradle.kts",
+            "build-with-minimal-footprint.gradle,settings.gradle",
     })
     public void shouldStartAndStopCassandra(String buildFile, String settingsFile) throws IOException
     {
@@ -124,6 +140,8 @@ public class IntegrationTest
         assertTrue(result.getOutput().contains("Starting Cassandra in"));
         assertTrue(result.getOutput().contains("Stopping Cassandra in"));
         assertTrue(result.getOutput().contains(projectDir.resolve("build/cassandra/my-example").toString()));
+        assertTrue(result.getOutput().contains("is ready in"));
+        assertTrue(Files.exists(projectDir.resolve("build/reports/cassandra/startup.json")));
         assertDefaultPorts(result.getOutput());
     }
 
@@ -179,6 +197,676 @@ public class IntegrationTest
         assertTrue(result.getOutput().contains("cassandra.native.transport.port = 18002"));
     }
 
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-multi-project.gradle,settings-multi-project.gradle",
+    })
+    public void shouldStartCassandraOnlyOnceForMultipleProjects(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+
+        // Run the build
+        BuildResult result = runner(projectDir, "customTask").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":module-a:startCassandra").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":module-a:customTask").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":module-a:stopCassandra").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":module-b:startCassandra").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":module-b:customTask").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":module-b:stopCassandra").getOutcome());
+        // The shared working directory is prepared once, by the project which configures the service.
+        assertEquals(TaskOutcome.SUCCESS, result.task(":module-a:prepareCassandra").getOutcome());
+        assertNull(result.task(":module-b:prepareCassandra"));
+
+        assertEquals(1, countOccurrences(result.getOutput(), "Starting Cassandra in"));
+        assertEquals(1, countOccurrences(result.getOutput(), "Stopping Cassandra in"));
+        assertTrue(result.getOutput().contains(projectDir.resolve("build/cassandra/my-example").toString()));
+        assertDefaultPorts(result.getOutput());
+
+        // Starting Cassandra rewrites .prepared.properties - the output of prepareCassandra stays the same.
+        result = runner(projectDir, "customTask").build();
+
+        assertEquals(TaskOutcome.UP_TO_DATE, result.task(":module-a:prepareCassandra").getOutcome());
+        assertEquals(1, countOccurrences(result.getOutput(), "Starting Cassandra in"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-async-start.gradle,settings.gradle",
+    })
+    public void shouldAwaitCassandraStartedInBackground(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+
+        BuildResult result = runner(projectDir, "customTask").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":startCassandra").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":awaitCassandra").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":stopCassandra").getOutcome());
+        // awaitCassandra returns once the instance accepts connections.
+        assertTrue(result.getOutput().indexOf("is ready in") < result.getOutput().indexOf("> Task :customTask"));
+        assertTrue(result.getOutput().contains("Stopping Cassandra in"));
+        assertDefaultPorts(result.getOutput());
+    }
+
+    // stopCassandra has to wait for the start in the background - without holding the lock the startup thread needs.
+    @Timeout(value = 10, unit = TimeUnit.MINUTES)
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-async-start.gradle,settings.gradle",
+    })
+    public void shouldStopCassandraStartingInBackgroundOnFailure(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+
+        BuildResult result = runner(projectDir, "customTaskSimulatingFailure").buildAndFail();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":startCassandra").getOutcome());
+        assertEquals(TaskOutcome.FAILED, result.task(":customTaskSimulatingFailure").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":stopCassandra").getOutcome());
+        assertTrue(result.getOutput().contains("is ready in"));
+        assertTrue(result.getOutput().contains("Stopping Cassandra in"));
+    }
+
+    // A pool is stopped by several threads at once - none of them may need the lock held by the one stopping the pool.
+    @Timeout(value = 10, unit = TimeUnit.MINUTES)
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-async-start.gradle,settings.gradle",
+    })
+    public void shouldRunPlainTestTaskAfterStartInBackground(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+        Path testSource = projectDir.resolve("src/test/java/CassandraReadyTest.java");
+        Files.createDirectories(testSource.getParent());
+        Files.writeString(testSource,
+                          "import java.net.Socket;\n" +
+                          "import org.junit.jupiter.api.Test;\n" +
+                          "public class CassandraReadyTest {\n" +
+                          "    @Test\n" +
+                          "    public void shouldConnect() throws Exception {\n" +
+                          "        try (Socket socket = new Socket(\"127.0.0.1\", 9042)) {\n" +
+                          "            System.out.println(\"connected to the native transport\");\n" +
+                          "        }\n" +
+                          "    }\n" +
+                          "}\n");
+
+        BuildResult result = runner(projectDir, "test").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":startCassandra").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":awaitCassandra").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":test").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":stopCassandra").getOutcome());
+        assertTrue(result.getOutput().contains("connected to the native transport"));
+        assertTrue(result.getOutput().indexOf("is ready in") < result.getOutput().indexOf("> Task :test"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-pool.gradle,settings.gradle",
+    })
+    public void shouldStopEveryInstanceOfPool(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+
+        BuildResult result = runner(projectDir, "customTask").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":startCassandra").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":stopCassandra").getOutcome());
+        assertEquals(2, countOccurrences(result.getOutput(), "Starting Cassandra in"));
+        assertEquals(2, countOccurrences(result.getOutput(), "Stopping Cassandra in"));
+        assertTrue(result.getOutput().contains(projectDir.resolve("build/cassandra/my-example-1").toString()));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-keep-alive.gradle,settings.gradle",
+    })
+    public void shouldReuseInstanceKeptAlive(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+
+        BuildResult result = runner(projectDir, "customTask").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":resetCassandra").getOutcome());
+        assertTrue(result.getOutput().contains("Keeping Cassandra in"));
+
+        // Not started by this build - its coordinates are handed out all the same.
+        result = runner(projectDir, "customTask").build();
+
+        assertTrue(result.getOutput().contains("Reusing Cassandra kept alive in"));
+        assertFalse(result.getOutput().contains("Starting Cassandra in"));
+        assertEquals(TaskOutcome.SUCCESS, result.task(":resetCassandra").getOutcome());
+
+        result = runner(projectDir, "customTask", "-PnoKeepAlive").build();
+
+        assertTrue(result.getOutput().contains("keepAlive is disabled"));
+        assertTrue(result.getOutput().contains("Stopping Cassandra in"));
+        assertFalse(Files.exists(projectDir.resolve("build/cassandra/my-example/.keep-alive.properties")));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-random-ports.gradle,settings.gradle",
+    })
+    public void shouldReserveRandomPortsOnlyWhileCassandraRuns(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+        Path locks = projectDir.resolve("build/ports");
+
+        // Configuring the build doesn't reserve anything.
+        runner(projectDir, "tasks", "--configuration-cache").build();
+
+        assertFalse(Files.exists(locks));
+
+        BuildResult result = runner(projectDir, "customTask", "--configuration-cache").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":stopCassandra").getOutcome());
+        assertFalse(result.getOutput().contains("cassandra.native.transport.port = 9042"));
+        // Storage, SSL storage, native transport and JMX.
+        assertTrue(result.getOutput().contains("reserved ports = 4"));
+        try (Stream<Path> files = Files.list(locks)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-warm-start.gradle,settings.gradle",
+    })
+    public void shouldRestoreWarmStartSnapshot(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+
+        // The first build bootstraps Cassandra and creates the snapshot.
+        BuildResult result = runner(projectDir, "customTask").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":startCassandra").getOutcome());
+        assertTrue(result.getOutput().contains("Creating warm start snapshot"));
+        // Restarted after the snapshot - and probed again before startCassandra returns.
+        assertTrue(result.getOutput().contains("is ready again in"));
+        assertTrue(result.getOutput().indexOf("is ready again in") < result.getOutput().indexOf("> Task :customTask"));
+
+        // The second build starts from a clean working directory and restores it.
+        result = runner(projectDir, "clean", "customTask").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":startCassandra").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":stopCassandra").getOutcome());
+        assertTrue(result.getOutput().contains("Restored warm start snapshot"));
+        assertFalse(result.getOutput().contains("Creating warm start snapshot"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-warm-start-pool.gradle,settings.gradle",
+    })
+    @Timeout(value = 10, unit = TimeUnit.MINUTES)
+    public void shouldRestoreWarmStartSnapshotIntoEveryInstanceWithRandomPorts(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+
+        BuildResult result = runner(projectDir, "customTask").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":startCassandra").getOutcome());
+        // One snapshot for the pool - the random ports of the instances are not part of the key.
+        assertEquals(1, countOccurrences(result.getOutput(), "Creating warm start snapshot"));
+        try (Stream<Path> snapshots = Files.list(projectDir.resolve("snapshots"))) {
+            assertEquals(1, snapshots.count());
+        }
+
+        // Other random ports, same snapshot.
+        result = runner(projectDir, "clean", "customTask").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":startCassandra").getOutcome());
+        assertEquals(2, countOccurrences(result.getOutput(), "Restored warm start snapshot"));
+        assertFalse(result.getOutput().contains("Creating warm start snapshot"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-cql-scripts.gradle,settings.gradle",
+    })
+    public void shouldApplyCqlScriptsOnlyOnce(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+        Files.createDirectories(projectDir.resolve("cql"));
+        Files.writeString(projectDir.resolve("cql/01-schema.cql"),
+                          "CREATE KEYSPACE test WITH replication = {'class': 'SimpleStrategy', 'replication_factor': 1};\n" +
+                          "CREATE TABLE test.users (id int PRIMARY KEY, name text); -- users\n");
+        Files.writeString(projectDir.resolve("cql/02-data.cql"),
+                          "INSERT INTO test.users (id, name) VALUES (1, 'one; with a semicolon');\n" +
+                          "INSERT INTO test.users (id, name) VALUES (2, 'two');\n");
+
+        BuildResult result = runner(projectDir, "customTask").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":startCassandra").getOutcome());
+        assertTrue(result.getOutput().contains("Executed 4 CQL statements"));
+
+        // The data directory is reused, so the scripts must not be applied again.
+        result = runner(projectDir, "customTask").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":startCassandra").getOutcome());
+        assertTrue(result.getOutput().contains("Skipping already applied CQL script"));
+        assertTrue(result.getOutput().contains("Executed 0 CQL statements"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-metrics.gradle,settings.gradle",
+    })
+    public void shouldWriteMetricsReport(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+
+        BuildResult result = runner(projectDir, "customTask").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":stopCassandra").getOutcome());
+        String json = Files.readString(projectDir.resolve("build/reports/cassandra/metrics.json"));
+        assertTrue(json.contains("\"gcPauseMaxMillis\""));
+        assertTrue(json.contains("\"violations\":[]"));
+        assertTrue(Files.readString(projectDir.resolve("build/reports/cassandra/metrics.txt")).contains("readLatencyP99Millis"));
+
+        // No Cassandra runs with less than 1MB of heap.
+        result = runner(projectDir, "customTask", "-PheapThreshold=1").buildAndFail();
+
+        assertEquals(TaskOutcome.FAILED, result.task(":stopCassandra").getOutcome());
+        assertTrue(result.getOutput().contains("Cassandra exceeded the configured metric thresholds"));
+        assertTrue(result.getOutput().contains("Stopping Cassandra in"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-tuned-logging.gradle,settings.gradle",
+    })
+    public void shouldUseTunedLoggingAndPrintOutputOnFailure(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+
+        BuildResult result = runner(projectDir, "customTask").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":stopCassandra").getOutcome());
+        Path workingDirectory = projectDir.resolve("build/cassandra/my-example");
+        String logback = Files.readString(workingDirectory.resolve("conf/logback.xml"));
+        assertTrue(logback.contains("AsyncAppender"));
+        assertTrue(logback.contains("<root level=\"WARN\">"));
+        assertTrue(Files.exists(workingDirectory.resolve("logs/system.log")));
+        assertFalse(Files.exists(workingDirectory.resolve("logs/debug.log")));
+
+        result = runner(projectDir, "customTask", "-PbrokenConfig").buildAndFail();
+
+        assertEquals(TaskOutcome.FAILED, result.task(":startCassandra").getOutcome());
+        assertTrue(result.getOutput().contains("has failed to start - the last"));
+        assertTrue(result.getOutput().contains("[my-example] ERROR"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-remote.gradle,settings.gradle",
+    })
+    public void shouldFailWhenRemoteCassandraIsNotAvailable(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        BuildResult result = runner(projectDir, "customTask", "-PremotePort=" + port).buildAndFail();
+
+        // Nothing is installed (or started) for a remote node.
+        assertEquals(TaskOutcome.SKIPPED, result.task(":prepareCassandra").getOutcome());
+        assertEquals(TaskOutcome.FAILED, result.task(":startCassandra").getOutcome());
+        assertTrue(result.getOutput().contains("Cassandra on 127.0.0.1:" + port + " is not available"));
+        assertFalse(Files.exists(projectDir.resolve("build/cassandra/my-example/bin")));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-shutdown-policy.gradle,settings.gradle",
+    })
+    public void shouldKillCassandraWithoutDraining(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+
+        BuildResult result = runner(projectDir, "customTask").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":stopCassandra").getOutcome());
+        assertFalse(result.getOutput().contains("has not stopped within"));
+        // Killed - Cassandra has not drained (which is logged on a regular shutdown).
+        String log = Files.readString(projectDir.resolve("build/cassandra/my-example/logs/system.log"));
+        assertFalse(log.contains("DRAINED"));
+        String workingDirectory = projectDir.resolve("build/cassandra/my-example").toAbsolutePath() + File.separator;
+        assertTrue(ProcessHandle.allProcesses()
+                                .noneMatch(p -> p.info().commandLine().map(c -> c.contains(workingDirectory)).orElse(false)));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-tuning-presets.gradle,settings.gradle",
+    })
+    public void shouldApplyTuningPresets(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+
+        BuildResult result = runner(projectDir, "customTask").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":stopCassandra").getOutcome());
+        assertTrue(result.getOutput().contains("Applied the tuning presets [WRITE_HEAVY]"));
+        String yaml = Files.readString(projectDir.resolve("build/cassandra/my-example/conf/cassandra.yaml"));
+        // The key (and the unit) depend on the version - 4.1 has renamed batch_size_warn_threshold_in_kb.
+        assertTrue(Pattern.compile("(?m)^batch_size_warn_threshold(_in_kb: 64|: 64KiB)$").matcher(yaml).find());
+        assertTrue(yaml.contains("concurrent_writes: 48"));
+        // Configured by defaultTestSettings() under the legacy name - resolved for the version, not overridden (or
+        // duplicated) by the preset.
+        if (yaml.contains("batch_size_warn_threshold: 64KiB")) {
+            assertTrue(yaml.contains("commitlog_sync_period: 5000ms"));
+            assertFalse(Pattern.compile("(?m)^commitlog_sync_period_in_ms:").matcher(yaml).find());
+        }
+        else {
+            assertTrue(yaml.contains("commitlog_sync_period_in_ms: 5000"));
+            assertFalse(yaml.contains("commitlog_sync_period: "));
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-benchmark.gradle,settings.gradle",
+    })
+    public void shouldBenchmarkCassandra(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+
+        BuildResult result = runner(projectDir, "benchmarkCassandra").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":benchmarkCassandra").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":stopCassandra").getOutcome());
+        assertTrue(result.getOutput().contains("Preloaded 1000 keys"));
+        assertTrue(result.getOutput().contains("Updated the benchmark baseline"));
+        assertTrue(Files.readString(projectDir.resolve("benchmark-baseline.properties")).contains("read.p99="));
+        assertTrue(Files.exists(projectDir.resolve("build/reports/cassandra/benchmark.json")));
+        assertTrue(Files.readString(projectDir.resolve("build/reports/cassandra/benchmark-read.hgrm")).contains("#[Max"));
+
+        result = runner(projectDir, "benchmarkCassandra").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":benchmarkCassandra").getOutcome());
+        assertTrue(result.getOutput().contains("Compared to the baseline"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-sstables.gradle,settings.gradle",
+    })
+    public void shouldInstallGeneratedSSTables(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+        Path fixture = projectDir.resolve("fixtures/users.csv");
+        Files.createDirectories(fixture.getParent());
+        Files.writeString(fixture,
+                          "id,name\n" +
+                          "1,Alice\n" +
+                          "2,\"Bob \"\"the builder\"\"\"\n" +
+                          "3,\"multi\nline\"\n" +
+                          "\n" +
+                          "4,\n");
+
+        BuildResult result = runner(projectDir, "customTask").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":usersFixture").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":customTask").getOutcome());
+        assertTrue(result.getOutput().contains("Installed SSTables"));
+        assertTrue(result.getOutput().contains("rows = 4"));
+        assertTrue(result.getOutput().contains("user = Alice"));
+        assertTrue(result.getOutput().contains("user = Bob \"the builder\""));
+        assertTrue(result.getOutput().contains("user = multi|line"));
+        assertTrue(result.getOutput().contains("user = null"));
+
+        // The SSTables can't be installed into a cluster - nothing is generated or started.
+        result = runner(projectDir, "clean", "customTask", "-Pnodes=2").buildAndFail();
+
+        assertEquals(TaskOutcome.FAILED, result.task(":usersFixture").getOutcome());
+        assertTrue(result.getOutput().contains("Generated SSTables can't be installed into a cluster"));
+        assertFalse(result.getOutput().contains("Starting Cassandra in"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-test-client.gradle,settings.gradle",
+    })
+    public void shouldOnlyChangeTestTasksUsingCassandra(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+        Path testSources = projectDir.resolve("src/test/java");
+        Files.createDirectories(testSources);
+        Files.writeString(testSources.resolve("CassandraClientTest.java"),
+                          "import org.junit.jupiter.api.Test;\n" +
+                          "import static org.junit.jupiter.api.Assertions.assertNotNull;\n" +
+                          "import static org.junit.jupiter.api.Assertions.assertThrows;\n" +
+                          "public class CassandraClientTest {\n" +
+                          "    @Test\n" +
+                          "    public void shouldOnlyGetClient() throws Exception {\n" +
+                          "        assertNotNull(System.getProperty(\"cassandra.native.transport.port\"));\n" +
+                          "        Class.forName(\"org.carlspring.gradle.plugins.embedded.cassandra.client.CassandraReset\");\n" +
+                          "        assertThrows(ClassNotFoundException.class,\n" +
+                          "                     () -> Class.forName(\"org.carlspring.gradle.plugins.embedded.cassandra.EmbeddedCassandraPlugin\"));\n" +
+                          "        System.out.println(\"client test passed\");\n" +
+                          "    }\n" +
+                          "}\n");
+        Files.writeString(testSources.resolve("PlainTest.java"),
+                          "import org.junit.jupiter.api.Test;\n" +
+                          "import static org.junit.jupiter.api.Assertions.assertNull;\n" +
+                          "import static org.junit.jupiter.api.Assertions.assertThrows;\n" +
+                          "public class PlainTest {\n" +
+                          "    @Test\n" +
+                          "    public void shouldBeLeftAlone() {\n" +
+                          "        assertNull(System.getProperty(\"cassandra.native.transport.port\"));\n" +
+                          "        assertNull(System.getenv(\"CASSANDRA_NATIVE_TRANSPORT_PORT\"));\n" +
+                          "        assertThrows(ClassNotFoundException.class,\n" +
+                          "                     () -> Class.forName(\"org.carlspring.gradle.plugins.embedded.cassandra.client.CassandraReset\"));\n" +
+                          "        System.out.println(\"plain test passed\");\n" +
+                          "    }\n" +
+                          "}\n");
+
+        BuildResult result = runner(projectDir, "plainTest").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":plainTest").getOutcome());
+        assertTrue(result.getOutput().contains("plain test passed"));
+        assertNull(result.task(":cassandraTestClientJar"));
+        assertFalse(result.getOutput().contains("Starting Cassandra in"));
+
+        result = runner(projectDir, "test").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":test").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":cassandraTestClientJar").getOutcome());
+        assertTrue(result.getOutput().contains("client test passed"));
+        assertTrue(result.getOutput().contains("Starting Cassandra in"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-use-cassandra.gradle,settings.gradle",
+    })
+    public void shouldStartCassandraOnDemandForTests(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+        Path testSource = projectDir.resolve("src/test/java/CassandraCoordinatesTest.java");
+        Files.createDirectories(testSource.getParent());
+        Files.writeString(testSource,
+                          "import org.junit.jupiter.api.Test;\n" +
+                          "import static org.junit.jupiter.api.Assertions.assertNotNull;\n" +
+                          "public class CassandraCoordinatesTest {\n" +
+                          "    @Test\n" +
+                          "    public void shouldReceiveCoordinates() {\n" +
+                          "        assertNotNull(System.getProperty(\"cassandra.native.transport.port\"));\n" +
+                          "        assertNotNull(System.getenv(\"CASSANDRA_NATIVE_TRANSPORT_PORT\"));\n" +
+                          "        System.out.println(\"fork port = \" + System.getenv(\"CASSANDRA_NATIVE_TRANSPORT_PORT\"));\n" +
+                          "    }\n" +
+                          "}\n");
+
+        BuildResult result = runner(projectDir, "test").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":test").getOutcome());
+        assertTrue(result.getOutput().contains("fork port = "));
+        assertTrue(result.getOutput().contains("Starting Cassandra in"));
+        assertTrue(result.getOutput().contains("Stopping Cassandra in"));
+
+        // Up-to-date tests don't need Cassandra.
+        result = runner(projectDir, "test").build();
+
+        assertEquals(TaskOutcome.UP_TO_DATE, result.task(":test").getOutcome());
+        assertFalse(result.getOutput().contains("Starting Cassandra in"));
+    }
+
+    @EnabledOnOs(OS.LINUX)
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-cluster.gradle,settings.gradle",
+    })
+    public void shouldStartClusterAndRestartNode(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+        Path testSource = projectDir.resolve("src/test/java/CassandraClusterTest.java");
+        Files.createDirectories(testSource.getParent());
+        Files.writeString(testSource,
+                          "import org.junit.jupiter.api.Test;\n" +
+                          "import static org.junit.jupiter.api.Assertions.assertEquals;\n" +
+                          "public class CassandraClusterTest {\n" +
+                          "    @Test\n" +
+                          "    public void shouldReceiveContactPoints() {\n" +
+                          "        assertEquals(\"2\", System.getProperty(\"cassandra.cluster.size\"));\n" +
+                          "        System.out.println(\"contact points = \" + System.getProperty(\"cassandra.contact.points\"));\n" +
+                          "    }\n" +
+                          "}\n");
+
+        BuildResult result = runner(projectDir, "test").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":test").getOutcome());
+        assertTrue(result.getOutput().contains("Cluster of 2 nodes is up"));
+        assertTrue(result.getOutput().contains("contact points = 127.0.0.1:9042,127.0.0.2:9042"));
+        assertEquals(2, countOccurrences(result.getOutput(), "Stopping Cassandra in"));
+
+        // Tasks given on the command line run in that order.
+        result = runner(projectDir, "startCassandra", "stopCassandraNode", "--node=1", "startCassandraNode", "--node=1",
+                        "stopCassandra").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":stopCassandraNode").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":startCassandraNode").getOutcome());
+        assertTrue(result.getOutput().contains("Stopping node 1 in"));
+        assertEquals(2, countOccurrences(result.getOutput(), "Starting Cassandra in " + projectDir.toAbsolutePath().resolve("build/cassandra/my-example-node1")));
+        assertEquals(TaskOutcome.SUCCESS, result.task(":stopCassandra").getOutcome());
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-version-matrix.gradle,settings.gradle",
+    })
+    public void shouldRunTestsAgainstVersionMatrix(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+        Path testSource = projectDir.resolve("src/test/java/CassandraVersionTest.java");
+        Files.createDirectories(testSource.getParent());
+        Files.writeString(testSource,
+                          "import org.junit.jupiter.api.Test;\n" +
+                          "import static org.junit.jupiter.api.Assertions.assertEquals;\n" +
+                          "public class CassandraVersionTest {\n" +
+                          "    @Test\n" +
+                          "    public void shouldReceiveVersion() {\n" +
+                          "        assertEquals(System.getenv(\"CASSANDRA_VERSION\"), System.getProperty(\"cassandra.version\"));\n" +
+                          "        System.out.println(\"cassandra \" + System.getProperty(\"cassandra.version\") + \" on port \" +\n" +
+                          "                           System.getProperty(\"cassandra.native.transport.port\"));\n" +
+                          "    }\n" +
+                          "}\n");
+
+        BuildResult result = runner(projectDir, "testCassandraMatrix", "--dry-run").build();
+
+        assertTrue(result.getOutput().contains(":testCassandra4_0_11 SKIPPED"));
+        assertTrue(result.getOutput().contains(":testCassandra4_1_3 SKIPPED"));
+        assertFalse(result.getOutput().contains(":startCassandra"));
+
+        // Every version runs on its own instance - with its own distribution, working directory and ports.
+        result = runner(projectDir, "testCassandraMatrix").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":testCassandra4_0_11").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":testCassandra4_1_3").getOutcome());
+        assertNull(result.task(":startCassandra"));
+        Map<String, String> ports = new HashMap<>();
+        Matcher matcher = Pattern.compile("cassandra (\\S+) on port (\\d+)").matcher(result.getOutput());
+        while (matcher.find()) {
+            ports.put(matcher.group(1), matcher.group(2));
+        }
+        assertEquals(Set.of("4.0.11", "4.1.3"), ports.keySet());
+        assertEquals(2, Set.copyOf(ports.values()).size());
+        for (String version : ports.keySet()) {
+            Path workingDirectory = projectDir.resolve("build/cassandra/my-example-" + version);
+            assertTrue(result.getOutput().contains("Starting Cassandra in " + workingDirectory.toAbsolutePath()), version);
+            assertTrue(Files.exists(workingDirectory.resolve("lib/apache-cassandra-" + version + ".jar")), version);
+        }
+        assertEquals(2, countOccurrences(result.getOutput(), "Stopping Cassandra in"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-no-config.gradle,settings.gradle",
+    })
+    public void shouldReusePreparedWorkingDirectory(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+
+        BuildResult result = runner(projectDir, "customTask").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":prepareCassandra").getOutcome());
+        assertTrue(Files.exists(projectDir.resolve("build/cassandra/.prepared.properties")));
+        assertTrue(Files.exists(projectDir.resolve("build/cassandra/.prepareCassandra")));
+
+        result = runner(projectDir, "customTask").build();
+
+        assertEquals(TaskOutcome.UP_TO_DATE, result.task(":prepareCassandra").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":startCassandra").getOutcome());
+        assertTrue(result.getOutput().contains("Reusing the prepared working directory"));
+        assertDefaultPorts(result.getOutput());
+
+        // Nothing has been started - there is nothing to stop.
+        result = runner(projectDir, "stopCassandra").build();
+
+        assertEquals(TaskOutcome.SKIPPED, result.task(":stopCassandra").getOutcome());
+        assertFalse(result.getOutput().contains("Stopping Cassandra in"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource({
+            "build-with-defaultTestSettings.gradle,settings.gradle",
+            "build-with-defaultTestSettings.gradle.kts,settings.gradle.kts",
+    })
+    public void shouldReuseConfigurationCache(String buildFile, String settingsFile) throws IOException
+    {
+        Path projectDir = generateProject(settingsFile, buildFile);
+
+        BuildResult result = runner(projectDir, "customTask", "--configuration-cache").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":startCassandra").getOutcome());
+        assertTrue(result.getOutput().contains("Configuration cache entry stored."));
+
+        result = runner(projectDir, "customTask", "--configuration-cache").build();
+
+        assertEquals(TaskOutcome.SUCCESS, result.task(":startCassandra").getOutcome());
+        assertEquals(TaskOutcome.SUCCESS, result.task(":stopCassandra").getOutcome());
+        assertTrue(result.getOutput().contains("Reusing configuration cache."));
+        assertTrue(result.getOutput().contains("Stopping Cassandra in"));
+        assertDefaultPorts(result.getOutput());
+    }
+
+    private int countOccurrences(String output, String text)
+    {
+        int count = 0;
+        int index = output.indexOf(text);
+        while (index != -1) {
+            count++;
+            index = output.indexOf(text, index + text.length());
+        }
+
+        return count;
+    }
+
     public void assertDefaultPorts(String output)
     {
         assertTrue(output.contains("cassandra.storage.port = 7000"));
@@ -186,6 +874,19 @@ public class IntegrationTest
         assertTrue(output.contains("cassandra.native.transport.port = 9042"));
     }
 
+    /**
+     * @return a runner of the generated project with the plugin under test - call build() or buildAndFail() on it.
+     */
+    private GradleRunner runner(Path projectDir, String... arguments)
+    {
+        List<String> withStacktrace = new ArrayList<>(Arrays.asList(arguments));
+        withStacktrace.add("--stacktrace");
+
+        return GradleRunner.create().forwardOutput().withPluginClasspath().withDebug(true)
+                           .withArguments(withStacktrace)
+                           .withProjectDir(projectDir.toFile());
+    }
+
     private Path generateProject(String settingsFile, String buildFile) throws IOException
     {
         // Setup the test build directory
@@ -213,7 +914,11 @@ public class IntegrationTest
         Files.createDirectories(projectDir);
 
         InputStream settingsFileIs = IntegrationTest.class.getClassLoader().getResourceAsStream(settingsFile);
-        writeFile(projectDir.resolve(settingsFile), settingsFileIs);
+        Path settingsFilePath = projectDir.resolve("settings.gradle");
+        if (settingsFile.endsWith(".gradle.kts")) {
+            settingsFilePath = projectDir.resolve("settings.gradle.kts");
+        }
+        writeFile(settingsFilePath, settingsFileIs);
 
         InputStream buildFileIs = IntegrationTest.class.getClassLoader().getResourceAsStream(buildFile);
         Path buildFilePath = projectDir.resolve("build.gradle");
@@ -27,7 +27,7 @@ tasks.register<Task>("customTask") {
 }
 
 cassandra {
-    cassandra4JVMAutoFix = false
-    workingDirectory = Path.of("${project.buildDir}/cassandra/my-example")
+    cassandra4JVMAutoFix.set(false)
+    workingDirectory.set(Path.of("${project.buildDir}/cassandra/my-example"))
     defaultTestSettings()
 }
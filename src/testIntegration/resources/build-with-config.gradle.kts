@@ -36,15 +36,15 @@ tasks.register<Task>("customTaskSimulatingFailure") {
 }
 
 cassandra {
-    workingDirectory = Path.of("${project.buildDir}/cassandra/my-example")
+    workingDirectory.set(Path.of("${project.buildDir}/cassandra/my-example"))
 
-    jvmOptions = listOf("-Xms2048m", "-Xmx2048m");
+    jvmOptions.set(listOf("-Xms2048m", "-Xmx2048m"))
 
     val customConfigProperties = hashMapOf<String, Any?>()
     customConfigProperties["authenticator"] = "PasswordAuthenticator"
     customConfigProperties["authorizer"] = "CassandraAuthorizer"
     customConfigProperties["num_tokens"] = 1
-    configProperties = customConfigProperties
+    configProperties.set(customConfigProperties)
 
     val customSystemProperties = hashMapOf<String, Any?>()
     customSystemProperties["cassandra.skip_wait_for_gossip_to_settle"] = 0
@@ -54,6 +54,6 @@ cassandra {
     customSystemProperties["cassandra.allocate_tokens_for_local_replication_factor"] = "nil"
     customSystemProperties["num_tokens"] = 1
     customSystemProperties["allocate_tokens_for_local_replication_factor"] = 1
-    systemProperties = customSystemProperties
+    systemProperties.set(customSystemProperties)
 
 }
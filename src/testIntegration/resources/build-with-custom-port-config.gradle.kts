@@ -25,7 +25,7 @@ tasks.register<Task>("customTask") {
 }
 
 cassandra {
-    workingDirectory = Path.of("${project.buildDir}/cassandra/my-example")
+    workingDirectory.set(Path.of("${project.buildDir}/cassandra/my-example"))
     defaultTestSettings()
     configProperties.put("storage_port", 18000) // default is 7000
     configProperties.put("ssl_storage_port", 18001) // default is 7001
@@ -36,7 +36,7 @@ tasks.register<Task>("customTaskSimulatingFailure") {
 }
 
 cassandra {
-    workingDirectory = Path.of("${project.buildDir}/cassandra/my-example")
+    workingDirectory.set(Path.of("${project.buildDir}/cassandra/my-example"))
     defaultTestSettings()
     // append more settings.
 }